@@ -0,0 +1,82 @@
+package study.querydsl.benchmark;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.QuerydslApplication;
+import study.querydsl.repository.support.MemberColumnStore;
+import study.querydsl.repository.support.UsernameGramWriter;
+import study.querydsl.service.TeamStatsService;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 벤치마크용 스프링 컨텍스트. 임베디드 H2(mem) 에 회원 members 명을 teams 개 팀으로 나눠서 넣는다.
+ * JDBC 로 바로 넣으므로 엔티티 이벤트로 채워지는 것(username gram 색인, team_stats, 열 스토어) 은 넣은 뒤에 따로 채운다.
+ */
+public class BenchmarkContext {
+
+    public static final int TEAMS = 10;
+
+    private static final int BATCH = 10_000;
+
+    public static ConfigurableApplicationContext start(int members) {
+        return start(members, new String[0]);
+    }
+
+    /**
+     * properties 는 기본 설정 뒤에 붙어서 같은 키면 덮어쓴다
+     */
+    public static ConfigurableApplicationContext start(int members, String... properties) {
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(QuerydslApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.profiles.active=bench",
+                        "spring.datasource.url=jdbc:h2:mem:bench;DB_CLOSE_DELAY=-1",
+                        "spring.jpa.properties.hibernate.use_sql_comments=false",
+                        "logging.level.org.hibernate.SQL=warn",
+                        // 쿼리 비용을 재는 벤치마크라 결과 캐시는 끈다
+                        "querydsl.cache.search.enabled=false",
+                        "decorator.datasource.p6spy.enable-logging=false")
+                .properties(properties)
+                .run();
+        seed(context.getBean(JdbcTemplate.class), members);
+        derive(context, members);
+        context.getBean(JdbcTemplate.class).execute("analyze");
+        return context;
+    }
+
+    private static void seed(JdbcTemplate jdbcTemplate, int members) {
+        for (int i = 1; i <= TEAMS; i++) {
+            jdbcTemplate.update("insert into team (id, name) values (?, ?)", i, "team" + i);
+        }
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 1; i <= members; i++) {
+            rows.add(new Object[]{i, "member" + i, i % 100, i % TEAMS + 1});
+            if (rows.size() == BATCH) {
+                jdbcTemplate.batchUpdate("insert into member (id, username, age, team_id) values (?, ?, ?, ?)", rows);
+                rows.clear();
+            }
+        }
+        jdbcTemplate.batchUpdate("insert into member (id, username, age, team_id) values (?, ?, ?, ?)", rows);
+    }
+
+    private static void derive(ConfigurableApplicationContext context, int members) {
+        TransactionTemplate transactionTemplate = context.getBean(TransactionTemplate.class);
+        EntityManager em = context.getBean(EntityManager.class);
+        for (long start = 1; start <= members; start += BATCH) {
+            long from = start;
+            long to = Math.min(members, start + BATCH - 1);
+            transactionTemplate.executeWithoutResult(status -> UsernameGramWriter.reindexRange(em, from, to));
+        }
+        context.getBean(TeamStatsService.class).reconcile();
+        if (context.getEnvironment().getProperty("querydsl.column-store.enabled", Boolean.class, false)
+                && !context.getBean(MemberColumnStore.class).warm()) {
+            throw new IllegalStateException("member column store not warmed");
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package study.querydsl.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.context.ConfigurableApplicationContext;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.repository.MemberRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 화면 하나가 보내는 검색 조건 conditions 개 (팀별 목록 반, 회원 한 명씩 반)
+ * searchBatch 한 번 vs search 를 조건마다 (조건마다 트랜잭션, /v1/members 를 여러 번 부르던 방식에서 HTTP 를 뺀 것)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class MemberBatchSearchBenchmark {
+
+    @Param({"10000"})
+    int members;
+
+    @Param({"20", "50"})
+    int conditions;
+
+    ConfigurableApplicationContext context;
+    MemberRepository memberRepository;
+    List<MemberSearchCondition> batch;
+
+    @Setup
+    public void setup() {
+        context = BenchmarkContext.start(members);
+        memberRepository = context.getBean(MemberRepository.class);
+
+        batch = new ArrayList<>();
+        for (int i = 0; i < conditions; i++) {
+            MemberSearchCondition condition = new MemberSearchCondition();
+            if (i % 2 == 0) {
+                condition.setTeamName("team" + (i / 2 % BenchmarkContext.TEAMS + 1));
+                condition.setAgeGoe(95);
+            } else {
+                condition.setUsername("member" + (i * 37 % members + 1));
+            }
+            batch.add(condition);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Map<Integer, List<MemberTeamDto>> batch() {
+        return memberRepository.searchBatch(batch);
+    }
+
+    @Benchmark
+    public void singleCalls(Blackhole bh) {
+        for (MemberSearchCondition condition : batch) {
+            bh.consume(memberRepository.search(condition));
+        }
+    }
+}
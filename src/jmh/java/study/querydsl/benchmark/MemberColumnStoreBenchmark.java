@@ -0,0 +1,120 @@
+package study.querydsl.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.repository.MemberRepository;
+import study.querydsl.repository.MemberSearchTemplates;
+import study.querydsl.repository.support.MemberColumnStore;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 같은 검색 조건을 JPA(SQL) 와 메모리 열 스토어(MemberColumnStore) 로 답하는 비용
+ * - jpa*         : MemberSearchTemplates 로 content (+ count) 쿼리, 결과 캐시 없음
+ * - columnStore* : 스토어만
+ * - repository*  : 스토어가 채워진 상태의 MemberRepository (트랜잭션, 메트릭 포함)
+ * shape : team-age = 팀 + 나이 범위(10%), username = username 같음, age = 나이 범위(10%, age 색인)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class MemberColumnStoreBenchmark {
+
+    @Param({"1000", "100000"})
+    int members;
+
+    @Param({"team-age", "username", "age"})
+    String shape;
+
+    ConfigurableApplicationContext context;
+    MemberRepository memberRepository;
+    MemberSearchTemplates searchTemplates;
+    MemberColumnStore columnStore;
+    TransactionTemplate readOnlyTransaction;
+    MemberSearchCondition condition;
+    Pageable pageable = PageRequest.of(0, 20);
+
+    @Setup
+    public void setup() {
+        context = BenchmarkContext.start(members,
+                "querydsl.column-store.enabled=true",
+                "querydsl.column-store.refresh-interval=0",
+                // 적재한 뒤 JdbcTemplate insert 때문에 예약된 다시 채우기가 측정 중에 돌지 않게
+                "querydsl.column-store.rewarm-delay=1h");
+        memberRepository = context.getBean(MemberRepository.class);
+        searchTemplates = context.getBean(MemberSearchTemplates.class);
+        columnStore = context.getBean(MemberColumnStore.class);
+        readOnlyTransaction = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        readOnlyTransaction.setReadOnly(true);
+
+        condition = new MemberSearchCondition();
+        switch (shape) {
+            case "team-age":
+                condition.setTeamName("team3");
+                condition.setAgeGoe(20);
+                condition.setAgeLoe(29);
+                break;
+            case "username":
+                condition.setUsername("member" + (members / 2));
+                break;
+            default:
+                condition.setAgeGoe(20);
+                condition.setAgeLoe(29);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<MemberTeamDto> jpaSearch() {
+        return readOnlyTransaction.execute(status -> searchTemplates.fetch(condition));
+    }
+
+    @Benchmark
+    public List<MemberTeamDto> columnStoreSearch() {
+        return columnStore.search(condition);
+    }
+
+    @Benchmark
+    public List<MemberTeamDto> repositorySearch() {
+        return memberRepository.search(condition);
+    }
+
+    @Benchmark
+    public Page<MemberTeamDto> jpaSearchPage() {
+        return readOnlyTransaction.execute(status -> new PageImpl<>(
+                searchTemplates.fetch(condition, pageable.getOffset(), pageable.getPageSize()),
+                pageable,
+                searchTemplates.count(condition)));
+    }
+
+    @Benchmark
+    public Page<MemberTeamDto> columnStoreSearchPage() {
+        return columnStore.searchPage(condition, pageable);
+    }
+
+    @Benchmark
+    public Page<MemberTeamDto> repositorySearchPage() {
+        return memberRepository.searchPageComplex(condition, pageable);
+    }
+}
@@ -0,0 +1,74 @@
+package study.querydsl.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.web.MemberColumnarHttpMessageConverter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 회원 검색 응답(Page&lt;MemberTeamDto&gt;) 한 페이지를 형식별로 직렬화하는 비용. 한 번 호출 = 한 페이지
+ * json(지금 응답) vs smile(application/x-jackson-smile) vs columnar(application/vnd.querydsl.columnar)
+ * 본문 크기(byte) 는 각 벤치마크의 반환값이다
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class MemberSerializationBenchmark {
+
+    @Param({"20", "1000"})
+    int rows;
+
+    ObjectMapper json = Jackson2ObjectMapperBuilder.json().build();
+    ObjectMapper smile = Jackson2ObjectMapperBuilder.smile().build();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    Page<MemberTeamDto> page;
+
+    @Setup
+    public void setup() {
+        List<MemberTeamDto> content = new ArrayList<>();
+        for (int i = 0; i < rows; i++) {
+            long teamId = i % BenchmarkContext.TEAMS + 1;
+            content.add(new MemberTeamDto((long) i + 1, "member" + (i + 1), i % 100, teamId, "team" + teamId));
+        }
+        page = new PageImpl<>(content, PageRequest.of(0, rows), rows * 10L);
+    }
+
+    @Benchmark
+    public int json() throws IOException {
+        out.reset();
+        json.writeValue(out, page);
+        return out.size();
+    }
+
+    @Benchmark
+    public int smile() throws IOException {
+        out.reset();
+        smile.writeValue(out, page);
+        return out.size();
+    }
+
+    @Benchmark
+    public int columnar() throws IOException {
+        out.reset();
+        MemberColumnarHttpMessageConverter.write(json.getFactory(), page, out);
+        return out.size();
+    }
+}
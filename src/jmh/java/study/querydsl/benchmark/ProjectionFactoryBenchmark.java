@@ -0,0 +1,124 @@
+package study.querydsl.benchmark;
+
+import com.querydsl.core.types.FactoryExpression;
+import com.querydsl.core.types.Projections;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import study.querydsl.dto.MemberDto;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.dto.QMemberTeamDto;
+import study.querydsl.dto.UserDto;
+import study.querydsl.repository.support.MethodHandleProjections;
+
+import java.util.concurrent.TimeUnit;
+
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+/**
+ * 쿼리 없이 결과 행(Object[]) rows 개를 DTO 로 바꾸는 비용만 잰다. 한 번 호출 = rows 개 생성
+ * Querydsl Projections(리플렉션) vs MethodHandleProjections
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ProjectionFactoryBenchmark {
+
+    @Param({"1000000"})
+    int rows;
+
+    Object[][] memberRows;
+    Object[][] memberTeamRows;
+
+    FactoryExpression<MemberDto> bean = Projections.bean(MemberDto.class, member.username, member.age);
+    FactoryExpression<MemberDto> fields = Projections.fields(MemberDto.class, member.username, member.age);
+    FactoryExpression<UserDto> fieldsAlias = Projections.fields(UserDto.class, member.username.as("name"), member.age);
+    FactoryExpression<MemberDto> constructor = Projections.constructor(MemberDto.class, member.username, member.age);
+    FactoryExpression<MemberTeamDto> queryProjection = new QMemberTeamDto(
+            member.id, member.username, member.age, team.id, team.name);
+
+    FactoryExpression<MemberDto> methodHandleBean = MethodHandleProjections.bean(
+            MemberDto.class, member.username, member.age);
+    FactoryExpression<MemberDto> methodHandleFields = MethodHandleProjections.fields(
+            MemberDto.class, member.username, member.age);
+    FactoryExpression<UserDto> methodHandleFieldsAlias = MethodHandleProjections.fields(
+            UserDto.class, member.username.as("name"), member.age);
+    FactoryExpression<MemberDto> methodHandleConstructor = MethodHandleProjections.constructor(
+            MemberDto.class, member.username, member.age);
+    FactoryExpression<MemberTeamDto> methodHandleMemberTeam = MethodHandleProjections.constructor(
+            MemberTeamDto.class, member.id, member.username, member.age, team.id, team.name);
+
+    @Setup
+    public void setup() {
+        memberRows = new Object[rows][];
+        memberTeamRows = new Object[rows][];
+        for (int i = 0; i < rows; i++) {
+            long teamId = i % BenchmarkContext.TEAMS + 1;
+            memberRows[i] = new Object[]{"member" + i, i % 100};
+            memberTeamRows[i] = new Object[]{(long) i, "member" + i, i % 100, teamId, "team" + teamId};
+        }
+    }
+
+    @Benchmark
+    public void bean(Blackhole bh) {
+        create(bean, memberRows, bh);
+    }
+
+    @Benchmark
+    public void methodHandleBean(Blackhole bh) {
+        create(methodHandleBean, memberRows, bh);
+    }
+
+    @Benchmark
+    public void fields(Blackhole bh) {
+        create(fields, memberRows, bh);
+    }
+
+    @Benchmark
+    public void methodHandleFields(Blackhole bh) {
+        create(methodHandleFields, memberRows, bh);
+    }
+
+    @Benchmark
+    public void fieldsAlias(Blackhole bh) {
+        create(fieldsAlias, memberRows, bh);
+    }
+
+    @Benchmark
+    public void methodHandleFieldsAlias(Blackhole bh) {
+        create(methodHandleFieldsAlias, memberRows, bh);
+    }
+
+    @Benchmark
+    public void constructor(Blackhole bh) {
+        create(constructor, memberRows, bh);
+    }
+
+    @Benchmark
+    public void methodHandleConstructor(Blackhole bh) {
+        create(methodHandleConstructor, memberRows, bh);
+    }
+
+    @Benchmark
+    public void queryProjectionMemberTeam(Blackhole bh) {
+        create(queryProjection, memberTeamRows, bh);
+    }
+
+    @Benchmark
+    public void methodHandleMemberTeam(Blackhole bh) {
+        create(methodHandleMemberTeam, memberTeamRows, bh);
+    }
+
+    private static void create(FactoryExpression<?> projection, Object[][] rows, Blackhole bh) {
+        for (Object[] row : rows) {
+            bh.consume(projection.newInstance(row));
+        }
+    }
+}
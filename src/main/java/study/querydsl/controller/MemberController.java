@@ -1,27 +1,77 @@
 package study.querydsl.controller;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import study.querydsl.dto.KeysetPage;
+import study.querydsl.dto.MemberImportFailure;
+import study.querydsl.dto.MemberImportResult;
 import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.dto.MemberTeamDto;
-import study.querydsl.repository.MemberJapRepository;
 import study.querydsl.repository.MemberRepository;
+import study.querydsl.repository.MemberSearchBatch;
+import study.querydsl.service.MemberImportException;
+import study.querydsl.service.MemberImportService;
+import study.querydsl.service.MemberSearchService;
+import study.querydsl.service.MemberStreamService;
+import study.querydsl.web.AdmissionRejectedException;
+import study.querydsl.web.AdmissionService;
 
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequiredArgsConstructor
 public class MemberController {
 
-    private final MemberJapRepository memberJapRepository;
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
     private final MemberRepository memberRepository;
+    private final MemberSearchService memberSearchService;
+    private final MemberStreamService memberStreamService;
+    private final MemberImportService memberImportService;
+    private final MemberSearchBatch memberSearchBatch;
+    private final AdmissionService admissionService;
 
     @GetMapping("/v1/members")
     public List<MemberTeamDto> searchMemberV1(MemberSearchCondition condition) {
-        return memberJapRepository.search(condition);
+        return memberSearchService.search(condition);
+    }
+
+    /**
+     * 검색 조건 목록을 받아서 요청 순서(0 부터) 를 키로 /v1/members 와 같은 결과를 돌려준다.
+     * 조건은 본문에 있어서 입장 제한(unfiltered, cost) 은 바인딩하고 검사한 뒤 조건마다 본다
+     */
+    @PostMapping(value = "/v1/members/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public Map<Integer, List<MemberTeamDto>> searchMemberBatchV1(@RequestBody List<MemberSearchCondition> conditions,
+                                                                 HttpServletRequest request) {
+        memberSearchBatch.check(conditions);
+        admissionService.admitConditions(request, conditions);
+        return memberRepository.searchBatch(conditions);
+    }
+
+    @GetMapping(value = "/v1/members/stream", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> streamMemberV1(MemberSearchCondition condition) {
+        StreamingResponseBody body = out -> memberStreamService.writeNdjson(condition, out);
+        return ResponseEntity.ok().contentType(NDJSON).body(body);
     }
 
     @GetMapping("/v2/members")
@@ -31,6 +81,63 @@ public class MemberController {
 
     @GetMapping("/v3/members")
     public Page<MemberTeamDto> searchMemberV3(MemberSearchCondition condition, Pageable pageable) {
-        return memberRepository.searchPageComplex(condition, pageable);
+        return memberSearchService.searchPageComplex(condition, pageable);
+    }
+
+    @GetMapping("/v5/members")
+    public Page<MemberTeamDto> searchMemberV5(MemberSearchCondition condition, Pageable pageable) {
+        return memberSearchService.searchPageParallel(condition, pageable);
+    }
+
+    /**
+     * 전체 건수를 보여주지 않는 무한 스크롤용. count 쿼리를 실행하지 않는다.
+     * estimate=true 면 DB 통계로 어림한 estimatedTotal 을 함께 준다.
+     */
+    @GetMapping("/v6/members")
+    public Slice<MemberTeamDto> searchMemberV6(MemberSearchCondition condition, Pageable pageable,
+                                               @RequestParam(defaultValue = "false") boolean estimate) {
+        return estimate
+                ? memberSearchService.searchSliceEstimated(condition, pageable)
+                : memberSearchService.searchSlice(condition, pageable);
+    }
+
+    @GetMapping("/v4/members")
+    public KeysetPage<MemberTeamDto> searchMemberV4(MemberSearchCondition condition,
+                                                    @RequestParam(required = false) String cursor,
+                                                    Pageable pageable) {
+        return memberRepository.searchKeyset(condition, cursor, pageable);
+    }
+
+    @PostMapping(value = "/members/import", consumes = "text/csv")
+    public MemberImportResult importMembersCsv(InputStream body) {
+        return memberImportService.importCsv(body);
+    }
+
+    @PostMapping(value = "/members/import", consumes = "application/x-ndjson")
+    public MemberImportResult importMembersNdjson(InputStream body) throws IOException {
+        return memberImportService.importNdjson(body);
+    }
+
+    /**
+     * 앞서 커밋된 건수와 실패한 줄을 돌려준다. 잘못된 입력이면 400
+     */
+    @ExceptionHandler(MemberImportException.class)
+    public ResponseEntity<MemberImportFailure> importFailed(MemberImportException e) {
+        HttpStatus status = e.isInvalidInput() ? HttpStatus.BAD_REQUEST : HttpStatus.INTERNAL_SERVER_ERROR;
+        return ResponseEntity.status(status).body(e.toFailure());
+    }
+
+    @ExceptionHandler(AdmissionRejectedException.class)
+    public ResponseEntity<String> admissionRejected(AdmissionRejectedException e) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .contentType(MediaType.TEXT_PLAIN)
+                .body(e.getMessage());
+    }
+
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    @ExceptionHandler({IllegalArgumentException.class, InvalidDataAccessApiUsageException.class})
+    public String badRequest(RuntimeException e) {
+        return NestedExceptionUtils.getMostSpecificCause(e).getMessage();
     }
 }
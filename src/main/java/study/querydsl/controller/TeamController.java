@@ -0,0 +1,60 @@
+package study.querydsl.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+import study.querydsl.dto.MemberDto;
+import study.querydsl.dto.TeamMembersDto;
+import study.querydsl.dto.TeamStatsDto;
+import study.querydsl.repository.TeamRepository;
+import study.querydsl.service.TeamStatsService;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.springframework.util.StringUtils.hasText;
+
+@RestController
+@RequiredArgsConstructor
+public class TeamController {
+
+    private final TeamStatsService teamStatsService;
+    private final TeamRepository teamRepository;
+
+    @GetMapping("/teams")
+    public Page<TeamMembersDto> teams(Pageable pageable) {
+        return teamRepository.findAllWithMembers(pageable).map(team -> new TeamMembersDto(
+                team.getId(),
+                team.getName(),
+                team.getMembers().stream()
+                        .map(member -> new MemberDto(member.getUsername(), member.getAge()))
+                        .collect(Collectors.toList())));
+    }
+
+    @GetMapping("/teams/stats")
+    public List<TeamStatsDto> teamStats(@RequestParam(required = false) String teamName) {
+        return hasText(teamName) ? teamStatsService.findByTeamName(teamName) : teamStatsService.findAll();
+    }
+
+    @GetMapping("/teams/{teamId}/stats")
+    public ResponseEntity<TeamStatsDto> teamStats(@PathVariable Long teamId) {
+        return ResponseEntity.of(teamStatsService.findByTeamId(teamId));
+    }
+
+    // 지원하지 않는 정렬 속성
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    @ExceptionHandler({IllegalArgumentException.class, InvalidDataAccessApiUsageException.class})
+    public String badRequest(RuntimeException e) {
+        return NestedExceptionUtils.getMostSpecificCause(e).getMessage();
+    }
+}
@@ -0,0 +1,40 @@
+package study.querydsl.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * primary 와 복제본 커넥션 풀의 여유를 본다. 요청 하나가 커넥션을 하나 더 쓰려고 할 때(CountQueryExecutor)
+ * 풀에 여유가 없으면 자기 커넥션을 들고 다른 커넥션을 기다리게 되므로, 그 전에 확인한다.
+ */
+public class ConnectionPools {
+
+    private final HikariDataSource primary;
+    private final Map<String, HikariDataSource> pools = new LinkedHashMap<>();
+
+    ConnectionPools(HikariDataSource primary, ReplicaSelector replicaSelector) {
+        this.primary = primary;
+        pools.put(ReplicaRoutingDataSource.PRIMARY, primary);
+        replicaSelector.dataSources().forEach((name, dataSource) -> pools.put((String) name, (HikariDataSource) dataSource));
+    }
+
+    HikariDataSource primary() {
+        return primary;
+    }
+
+    /**
+     * target(ReplicaRouting.currentTarget) 풀에 노는 커넥션이 있거나 더 만들 수 있으면 true. 모르는 풀이면 true
+     */
+    public boolean hasIdleConnection(String target) {
+        HikariDataSource pool = pools.get(target);
+        // 커넥션을 한 번도 잡기 전에는 풀이 없다
+        HikariPoolMXBean state = pool == null ? null : pool.getHikariPoolMXBean();
+        if (state == null) {
+            return true;
+        }
+        return state.getIdleConnections() > 0 || state.getTotalConnections() < pool.getMaximumPoolSize();
+    }
+}
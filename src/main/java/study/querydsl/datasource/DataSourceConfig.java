@@ -0,0 +1,56 @@
+package study.querydsl.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.transaction.TransactionManagerCustomizers;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+
+/**
+ * spring.datasource 는 primary(쓰기), querydsl.datasource.replicas 는 읽기 전용 복제본.
+ * 복제본이 없으면 모든 요청이 primary 로 간다.
+ */
+@Configuration
+@EnableConfigurationProperties(ReplicaProperties.class)
+public class DataSourceConfig {
+
+    @Bean
+    public ReplicaSelector replicaSelector(ReplicaProperties replicaProperties) {
+        return new ReplicaSelector(replicaProperties);
+    }
+
+    /**
+     * primary 풀은 DataSource 빈으로 따로 두지 않는다 (p6spy 가 두 번 감싸지 않게). 라우팅 DataSource 가 여기서 꺼내 쓴다
+     */
+    @Bean
+    public ConnectionPools connectionPools(DataSourceProperties dataSourceProperties, ReplicaSelector replicaSelector,
+                                           Environment environment) {
+        HikariDataSource primary = dataSourceProperties.initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .build();
+        // 직접 만든 풀에는 spring.datasource.hikari.* 가 자동으로 붙지 않는다 (maximum-pool-size 는 입장 제한도 쓴다)
+        Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(primary));
+        primary.setPoolName(ReplicaRoutingDataSource.PRIMARY);
+        return new ConnectionPools(primary, replicaSelector);
+    }
+
+    @Bean
+    public DataSource dataSource(ConnectionPools connectionPools, ReplicaSelector replicaSelector) {
+        return new ReplicaRoutingDataSource(connectionPools.primary(), replicaSelector);
+    }
+
+    @Bean
+    public PlatformTransactionManager transactionManager(ObjectProvider<TransactionManagerCustomizers> transactionManagerCustomizers) {
+        ReplicaAwareTransactionManager transactionManager = new ReplicaAwareTransactionManager();
+        transactionManagerCustomizers.ifAvailable(customizers -> customizers.customize(transactionManager));
+        return transactionManager;
+    }
+}
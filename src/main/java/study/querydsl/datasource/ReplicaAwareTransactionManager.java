@@ -0,0 +1,37 @@
+package study.querydsl.datasource;
+
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * readOnly 플래그는 원래 doBegin 이 끝난 뒤에 설정되는데, Hibernate 는 doBegin 안에서 커넥션을 잡는다.
+ * (LazyConnectionDataSourceProxy 로 미루는 방법은 p6spy 가 getConnection 에서 getMetaData 를 호출해서 쓸 수 없다)
+ * 커넥션을 잡기 전에 플래그를 먼저 설정해서 ReplicaRoutingDataSource 가 볼 수 있게 한다.
+ * 트랜잭션이 어디로 라우팅됐는지는 끝날 때까지 ReplicaRouting 에 남긴다.
+ */
+class ReplicaAwareTransactionManager extends JpaTransactionManager {
+
+    @Override
+    protected void doBegin(Object transaction, TransactionDefinition definition) {
+        boolean readOnly = TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(definition.isReadOnly());
+        ReplicaRouting.begin();
+        try {
+            super.doBegin(transaction, definition);
+        } catch (RuntimeException | Error e) {
+            ReplicaRouting.end();
+            TransactionSynchronizationManager.setCurrentTransactionReadOnly(readOnly);
+            throw e;
+        }
+    }
+
+    @Override
+    protected void doCleanupAfterCompletion(Object transaction) {
+        try {
+            super.doCleanupAfterCompletion(transaction);
+        } finally {
+            ReplicaRouting.end();
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package study.querydsl.datasource;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@ConfigurationProperties("querydsl.datasource")
+public class ReplicaProperties {
+
+    private List<Replica> replicas = new ArrayList<>();
+
+    // 이보다 뒤처진 복제본에는 읽기를 보내지 않는다
+    private Duration maxLag = Duration.ofSeconds(5);
+    private Duration healthCheckInterval = Duration.ofSeconds(5);
+    private Duration healthCheckTimeout = Duration.ofSeconds(1);
+
+    @Data
+    public static class Replica {
+        private String name;
+        private String url;
+        private String username;
+        private String password;
+        private String driverClassName;
+        // 복제 지연(ms) 한 건을 돌려주는 쿼리, 없으면 지연 0 으로 본다
+        // ex) postgres: select extract(epoch from now() - pg_last_xact_replay_timestamp()) * 1000
+        private String lagQuery;
+    }
+}
@@ -0,0 +1,77 @@
+package study.querydsl.datasource;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.function.Supplier;
+
+/**
+ * 현재 스레드의 트랜잭션이 어느 데이터소스로 라우팅됐는지 기억한다.
+ * 복제본은 max-lag 만큼 뒤처질 수 있으므로, 커밋 때 비워지는 캐시(count / 검색 결과) 는 복제본에서 읽은 값을 저장하면 안 된다.
+ * 트랜잭션마다 ReplicaAwareTransactionManager 가 begin / end 하고 ReplicaRoutingDataSource 가 고른 키를 기록한다.
+ * REQUIRES_NEW 처럼 트랜잭션이 겹칠 수 있어서 스택으로 둔다.
+ * 다른 스레드에서 같은 곳을 읽어야 하면(content 와 count) currentTarget 을 넘겨 readFrom 으로 고정한다.
+ */
+public final class ReplicaRouting {
+
+    private static final ThreadLocal<Deque<String>> TARGETS = ThreadLocal.withInitial(ArrayDeque::new);
+    private static final ThreadLocal<String> PINNED = new ThreadLocal<>();
+
+    private ReplicaRouting() {
+    }
+
+    /**
+     * 현재 트랜잭션이 복제본에서 읽고 있으면 true. 트랜잭션 밖이면 primary 로 보므로 false
+     */
+    public static boolean isReadingFromReplica() {
+        String target = TARGETS.get().peek();
+        return target != null && !ReplicaRoutingDataSource.PRIMARY.equals(target);
+    }
+
+    /**
+     * 현재 트랜잭션이 읽는 곳(primary 또는 복제본 이름). 트랜잭션 밖이면 null
+     */
+    public static String currentTarget() {
+        return TARGETS.get().peek();
+    }
+
+    /**
+     * call 안에서 시작하는 읽기 전용 트랜잭션은 복제본을 고르지 않고 target 으로 간다. target 이 null 이면 고르던 대로
+     */
+    public static <T> T readFrom(String target, Supplier<T> call) {
+        String previous = PINNED.get();
+        PINNED.set(target);
+        try {
+            return call.get();
+        } finally {
+            if (previous == null) {
+                PINNED.remove();
+            } else {
+                PINNED.set(previous);
+            }
+        }
+    }
+
+    static String pinned() {
+        return PINNED.get();
+    }
+
+    static void begin() {
+        TARGETS.get().push(ReplicaRoutingDataSource.PRIMARY);
+    }
+
+    static void routed(String target) {
+        Deque<String> targets = TARGETS.get();
+        if (!targets.isEmpty()) {
+            targets.pop();
+            targets.push(target);
+        }
+    }
+
+    static void end() {
+        Deque<String> targets = TARGETS.get();
+        targets.poll();
+        if (targets.isEmpty()) {
+            TARGETS.remove();
+        }
+    }
+}
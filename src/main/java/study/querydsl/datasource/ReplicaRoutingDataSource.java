@@ -0,0 +1,41 @@
+package study.querydsl.datasource;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.Map;
+
+/**
+ * 읽기 전용 트랜잭션이면 복제본, 그 외에는 primary 로 보낸다.
+ * 커넥션은 트랜잭션 시작(doBegin) 때 잡히므로 ReplicaAwareTransactionManager 가 그 전에 readOnly 를 알려 줘야 한다.
+ */
+class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    static final String PRIMARY = "primary";
+
+    private final ReplicaSelector replicaSelector;
+
+    ReplicaRoutingDataSource(DataSource primary, ReplicaSelector replicaSelector) {
+        this.replicaSelector = replicaSelector;
+        setDefaultTargetDataSource(primary);
+        Map<Object, Object> targets = replicaSelector.dataSources();
+        targets.put(PRIMARY, primary);
+        setTargetDataSources(targets);
+        afterPropertiesSet();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        String target = null;
+        if (TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            // 다른 스레드의 트랜잭션과 같은 곳을 읽어야 하면(ReplicaRouting.readFrom) 고르지 않는다
+            target = ReplicaRouting.pinned() != null ? ReplicaRouting.pinned() : replicaSelector.select();
+        }
+        if (target == null) {
+            target = PRIMARY;
+        }
+        ReplicaRouting.routed(target);
+        return target;
+    }
+}
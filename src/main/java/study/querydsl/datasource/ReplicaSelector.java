@@ -0,0 +1,155 @@
+package study.querydsl.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * 복제본 커넥션 풀과 상태를 관리한다.
+ * health-check-interval 마다 커넥션 검사와 lag-query 를 돌려서
+ * 살아 있고 지연이 max-lag 이하인 복제본만 읽기 후보로 둔다. 후보가 없으면 primary 로 읽는다.
+ */
+@Slf4j
+public class ReplicaSelector implements DisposableBean {
+
+    private final List<Replica> replicas;
+    private final long maxLagMillis;
+    private final int timeoutSeconds;
+    private final AtomicInteger next = new AtomicInteger();
+    private final ScheduledExecutorService scheduler;
+    private volatile List<Replica> available = List.of();
+
+    public ReplicaSelector(ReplicaProperties properties) {
+        this.replicas = properties.getReplicas().stream()
+                .map(replica -> new Replica(replica, properties))
+                .collect(Collectors.toList());
+        this.maxLagMillis = properties.getMaxLag().toMillis();
+        this.timeoutSeconds = (int) Math.max(1, properties.getHealthCheckTimeout().getSeconds());
+
+        checkReplicas();
+        if (replicas.isEmpty()) {
+            this.scheduler = null;
+            return;
+        }
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "replica-health-check");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = properties.getHealthCheckInterval().toMillis();
+        scheduler.scheduleWithFixedDelay(this::checkReplicas, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    Map<Object, Object> dataSources() {
+        Map<Object, Object> dataSources = new LinkedHashMap<>();
+        for (Replica replica : replicas) {
+            dataSources.put(replica.name, replica.dataSource);
+        }
+        return dataSources;
+    }
+
+    /**
+     * 읽기 후보 중 하나를 돌아가며 고른다. 후보가 없으면 null
+     */
+    String select() {
+        List<Replica> candidates = available;
+        if (candidates.isEmpty()) {
+            return null;
+        }
+        return candidates.get(Math.floorMod(next.getAndIncrement(), candidates.size())).name;
+    }
+
+    public List<String> availableReplicas() {
+        return available.stream().map(replica -> replica.name).collect(Collectors.toList());
+    }
+
+    public synchronized void checkReplicas() {
+        List<Replica> healthy = new ArrayList<>();
+        for (Replica replica : replicas) {
+            boolean wasAvailable = replica.available;
+            replica.check(timeoutSeconds, maxLagMillis);
+            if (replica.available != wasAvailable) {
+                log.warn("replica {} {} (lag={}ms)", replica.name,
+                        replica.available ? "available" : "unavailable", replica.lagMillis);
+            }
+            if (replica.available) {
+                healthy.add(replica);
+            }
+        }
+        available = List.copyOf(healthy);
+    }
+
+    @Override
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        for (Replica replica : replicas) {
+            replica.dataSource.close();
+        }
+    }
+
+    private static final class Replica {
+
+        private final String name;
+        private final HikariDataSource dataSource;
+        private final String lagQuery;
+        private volatile boolean available;
+        private volatile long lagMillis;
+
+        Replica(ReplicaProperties.Replica replica, ReplicaProperties properties) {
+            this.name = replica.getName();
+            this.lagQuery = replica.getLagQuery();
+            this.dataSource = DataSourceBuilder.create()
+                    .type(HikariDataSource.class)
+                    .driverClassName(replica.getDriverClassName())
+                    .url(replica.getUrl())
+                    .username(replica.getUsername())
+                    .password(replica.getPassword())
+                    .build();
+            dataSource.setPoolName(name);
+            dataSource.setReadOnly(true);
+            // 죽은 복제본 때문에 검사나 요청이 오래 묶이지 않게
+            dataSource.setConnectionTimeout(Math.max(250, properties.getHealthCheckTimeout().toMillis()));
+        }
+
+        void check(int timeoutSeconds, long maxLagMillis) {
+            try (Connection connection = dataSource.getConnection()) {
+                if (!connection.isValid(timeoutSeconds)) {
+                    available = false;
+                    return;
+                }
+                lagMillis = lagQuery == null ? 0 : queryLag(connection, timeoutSeconds);
+                available = lagMillis <= maxLagMillis;
+            } catch (SQLException | RuntimeException e) {
+                log.debug("replica {} health check failed", name, e);
+                available = false;
+            }
+        }
+
+        private long queryLag(Connection connection, int timeoutSeconds) throws SQLException {
+            try (Statement statement = connection.createStatement()) {
+                statement.setQueryTimeout(timeoutSeconds);
+                try (ResultSet rs = statement.executeQuery(lagQuery)) {
+                    return rs.next() ? rs.getLong(1) : Long.MAX_VALUE;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package study.querydsl.dto;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
+
+import java.util.List;
+
+/**
+ * count 쿼리 대신 통계로 어림한 전체 건수를 함께 돌려주는 Slice. 마지막 페이지에서는 정확한 값이다.
+ */
+public class EstimatedSlice<T> extends SliceImpl<T> {
+
+    private final long estimatedTotal;
+
+    public EstimatedSlice(List<T> content, Pageable pageable, boolean hasNext, long estimatedTotal) {
+        super(content, pageable, hasNext);
+        this.estimatedTotal = estimatedTotal;
+    }
+
+    public long getEstimatedTotal() {
+        return estimatedTotal;
+    }
+}
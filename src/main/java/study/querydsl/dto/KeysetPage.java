@@ -0,0 +1,17 @@
+package study.querydsl.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class KeysetPage<T> {
+    // nextCursor 는 다음 페이지 요청에 그대로 넘기는 불투명 토큰 (마지막 페이지면 null)
+
+    private final List<T> content;
+    private final String nextCursor;
+
+    public boolean isHasNext() {
+        return nextCursor != null;
+    }
+}
@@ -0,0 +1,17 @@
+package study.querydsl.dto;
+
+import lombok.Data;
+
+@Data
+public class MemberBulkResult {
+
+    private final int chunks;
+    private final long rows;
+    private final long elapsedMillis;
+    private final double rowsPerSecond;
+
+    public static MemberBulkResult of(int chunks, long rows, long elapsedNanos) {
+        double seconds = elapsedNanos / 1_000_000_000.0;
+        return new MemberBulkResult(chunks, rows, elapsedNanos / 1_000_000, seconds > 0 ? rows / seconds : rows);
+    }
+}
@@ -0,0 +1,15 @@
+package study.querydsl.dto;
+
+import lombok.Data;
+
+/**
+ * 가져오기가 중간에 실패했을 때의 응답. committedRows 건(입력 앞쪽부터) 은 이미 커밋되어 남아 있다.
+ * line 은 잘못된 입력 줄, 또는 쓰다가 실패해서 롤백된 chunk 의 첫 줄 (1 부터)
+ */
+@Data
+public class MemberImportFailure {
+
+    private final long committedRows;
+    private final long line;
+    private final String message;
+}
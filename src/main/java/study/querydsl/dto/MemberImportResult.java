@@ -0,0 +1,16 @@
+package study.querydsl.dto;
+
+import lombok.Data;
+
+@Data
+public class MemberImportResult {
+
+    private final long rows;
+    private final long elapsedMillis;
+    private final double rowsPerSecond;
+
+    public static MemberImportResult of(long rows, long elapsedNanos) {
+        double seconds = elapsedNanos / 1_000_000_000.0;
+        return new MemberImportResult(rows, elapsedNanos / 1_000_000, seconds > 0 ? rows / seconds : rows);
+    }
+}
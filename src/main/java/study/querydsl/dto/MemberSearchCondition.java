@@ -2,13 +2,29 @@ package study.querydsl.dto;
 
 import lombok.Data;
 
+import static org.springframework.util.StringUtils.hasText;
+
 @Data
 public class MemberSearchCondition {
     // 회원명, 팀명, 나이(ageGoe, ageLoe) 크거나 같거나, 작거나 같거나
 
     private String username;
+    // username 비교 방식 (같음 / 앞부분 / 포함)
+    private UsernameMatch usernameMatch = UsernameMatch.EXACT;
     private String teamName;
     private Integer ageGoe;
     private Integer ageLoe;
 
+    /**
+     * 캐시 키 용도. 검색에서 무시되는 빈 문자열을 null 로 맞춘 복사본
+     */
+    public MemberSearchCondition normalized() {
+        MemberSearchCondition normalized = new MemberSearchCondition();
+        normalized.setUsername(hasText(username) ? username : null);
+        normalized.setUsernameMatch(hasText(username) && usernameMatch != null ? usernameMatch : UsernameMatch.EXACT);
+        normalized.setTeamName(hasText(teamName) ? teamName : null);
+        normalized.setAgeGoe(ageGoe);
+        normalized.setAgeLoe(ageLoe);
+        return normalized;
+    }
 }
@@ -1,16 +1,19 @@
 package study.querydsl.dto;
 
 import com.querydsl.core.annotations.QueryProjection;
-import lombok.Data;
+import lombok.Value;
 
-@Data
+/**
+ * 검색 결과 캐시(MemberSearchCache) 와 SingleFlight 가 같은 인스턴스를 여러 요청에 나눠 주므로 바꿀 수 없게 둔다
+ */
+@Value
 public class MemberTeamDto {
 
-    private Long memberId;
-    private String username;
-    private int age;
-    private Long teamId;
-    private String teamName;
+    Long memberId;
+    String username;
+    int age;
+    Long teamId;
+    String teamName;
 
     @QueryProjection
     public MemberTeamDto(Long memberId, String username, int age, Long teamId, String teamName) {
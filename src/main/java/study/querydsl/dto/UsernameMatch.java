@@ -0,0 +1,13 @@
+package study.querydsl.dto;
+
+/**
+ * MemberSearchCondition.username 비교 방식
+ */
+public enum UsernameMatch {
+    // username = ?
+    EXACT,
+    // username like '?%' (username 인덱스 범위 검색)
+    PREFIX,
+    // username like '%?%' (member_username_gram 으로 후보를 좁힌 뒤 비교, 3글자 이상)
+    CONTAINS
+}
@@ -1,6 +1,9 @@
 package study.querydsl.entity;
 
 import lombok.*;
+import org.hibernate.Hibernate;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import javax.persistence.*;
 
@@ -8,9 +11,19 @@ import javax.persistence.*;
 @Getter @Setter
 @NoArgsConstructor(access = AccessLevel.PROTECTED)
 @ToString(of = {"id", "username", "age"})
+@SequenceGenerator(name = "member_seq_generator", sequenceName = "member_seq", allocationSize = 50)
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "member")
+// MemberSearchCondition 조합별 인덱스 (검증: MemberSearchExplainTest)
+// 선두 컬럼이 동등 조건, 다음이 age 범위 조건이고, 나머지 컬럼까지 넣어서 검색 결과 컬럼을 인덱스만으로 읽는다
+@Table(indexes = {
+        @Index(name = "idx_member_username_age", columnList = "username, age, team_id"),
+        @Index(name = "idx_member_team_age", columnList = "team_id, age, username"),
+        @Index(name = "idx_member_age", columnList = "age, username, team_id")
+})
 public class Member {
 
-    @Id @GeneratedValue
+    // allocationSize 만큼 id 를 미리 받아와서 insert 마다 시퀀스를 조회하지 않는다 (pooled)
+    @Id @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "member_seq_generator")
     private Long id;
     private String username;
     private int age;
@@ -36,6 +49,11 @@ public class Member {
     }
 
     public void changeTeam(Team team) {
+        // 초기화되지 않은 컬렉션에서 remove 하면 이전 팀의 회원 전체를 읽는다. 이미 읽은 컬렉션에서만 뺀다.
+        // 2차 캐시(team-members) 의 이전 / 새 팀 컬렉션은 hibernate.cache.auto_evict_collection_cache 가 커밋할 때 비운다
+        if (this.team != null && Hibernate.isInitialized(this.team) && Hibernate.isInitialized(this.team.getMembers())) {
+            this.team.getMembers().remove(this);
+        }
         this.team = team;
         team.getMembers().add(this);
     }
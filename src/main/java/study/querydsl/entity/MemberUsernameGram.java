@@ -0,0 +1,49 @@
+package study.querydsl.entity;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+import org.hibernate.annotations.Immutable;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.IdClass;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.io.Serializable;
+
+/**
+ * 회원 이름의 3글자 조각(trigram) 색인. username 포함 검색에서 LIKE '%x%' 로 member 를 훑지 않고
+ * (gram, member_id) 기본 키로 후보 회원을 찾는다. member 에 FK 를 걸지 않아서 회원 삭제 순서에 묶이지 않는다.
+ * UsernameGramListener 가 회원이 바뀔 때 같은 트랜잭션에서 다시 만든다.
+ */
+@Entity
+@Immutable
+@Getter
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@ToString
+@IdClass(MemberUsernameGram.Key.class)
+@Table(name = "member_username_gram",
+        indexes = @Index(name = "idx_member_username_gram_member", columnList = "member_id"))
+public class MemberUsernameGram {
+
+    @Id
+    @Column(length = 3)
+    private String gram;
+
+    @Id
+    @Column(name = "member_id")
+    private Long memberId;
+
+    @EqualsAndHashCode
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private String gram;
+        private Long memberId;
+    }
+}
@@ -1,11 +1,17 @@
 package study.querydsl.entity;
 
 import lombok.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.OneToMany;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -14,13 +20,19 @@ import java.util.List;
 @Setter
 @NoArgsConstructor(access = AccessLevel.PROTECTED)
 @ToString(of = {"id", "name", "age"})
+@SequenceGenerator(name = "team_seq_generator", sequenceName = "team_seq", allocationSize = 50)
+// 팀은 거의 바뀌지 않으므로 2차 캐시에 둔다 (리전 정책은 application.conf)
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "team")
+@Table(indexes = @Index(name = "idx_team_name", columnList = "name"))
 public class Team {
 
     @Id
-    @GeneratedValue
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "team_seq_generator")
     private Long id;
     private String name;
 
+    // 컬렉션 캐시에는 member id 만 들어가므로 Member 도 캐시해야 N+1 이 생기지 않는다
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "team-members")
     @OneToMany(mappedBy = "team")
     private List<Member> members = new ArrayList<>();
 
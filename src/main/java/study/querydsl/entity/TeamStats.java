@@ -0,0 +1,34 @@
+package study.querydsl.entity;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+import org.hibernate.annotations.Immutable;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * 팀별 회원 나이 집계 (count, sum, min, max). 회원이 바뀔 때마다 TeamStatsListener 가 증분으로 갱신하고,
+ * 벌크 연산처럼 엔티티 이벤트를 거치지 않은 변경은 TeamStatsService.reconcile 이 다시 맞춘다.
+ * 갱신은 네이티브 SQL 로만 하므로 엔티티로는 읽기만 한다.
+ */
+@Entity
+@Immutable
+@Getter
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@ToString
+@Table(name = "team_stats")
+public class TeamStats {
+
+    @Id
+    @Column(name = "team_id")
+    private Long teamId;
+    private long memberCount;
+    private long ageSum;
+    private Integer minAge;
+    private Integer maxAge;
+}
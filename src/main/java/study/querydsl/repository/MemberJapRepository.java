@@ -2,20 +2,28 @@ package study.querydsl.repository;
 
 import com.querydsl.core.BooleanBuilder;
 import com.querydsl.core.types.Predicate;
-import com.querydsl.core.types.dsl.BooleanExpression;
 import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.hibernate.annotations.QueryHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.dto.MemberTeamDto;
-import study.querydsl.dto.QMemberTeamDto;
 import study.querydsl.entity.Member;
+import study.querydsl.repository.support.MemberSearchCache;
+import study.querydsl.repository.support.UsernameGrams;
 
 import javax.persistence.EntityManager;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 import static org.springframework.util.StringUtils.hasText;
 import static study.querydsl.entity.QMember.member;
+import static study.querydsl.repository.MemberPredicates.ageGoe;
+import static study.querydsl.repository.MemberPredicates.ageLoe;
+import static study.querydsl.repository.MemberPredicates.teamNameEq;
+import static study.querydsl.repository.MemberPredicates.usernameMatches;
 import static study.querydsl.entity.QTeam.team;
 
 @Repository
@@ -23,10 +31,20 @@ public class MemberJapRepository {
 
     private final EntityManager em;
     private final JPAQueryFactory queryFactory;
-
-    public MemberJapRepository(EntityManager em, JPAQueryFactory queryFactory) {
+    private final MemberSearchTemplates searchTemplates;
+    private final MemberSearchCache searchCache;
+    private final UsernameGrams usernameGrams;
+
+    public MemberJapRepository(EntityManager em,
+                               JPAQueryFactory queryFactory,
+                               MemberSearchTemplates searchTemplates,
+                               MemberSearchCache searchCache,
+                               UsernameGrams usernameGrams) {
         this.em = em;
         this.queryFactory = queryFactory;
+        this.searchTemplates = searchTemplates;
+        this.searchCache = searchCache;
+        this.usernameGrams = usernameGrams;
     }
 
     public void save(Member member) {
@@ -38,23 +56,27 @@ public class MemberJapRepository {
         return Optional.ofNullable(findMember);
     }
 
+    @Transactional(readOnly = true)
     public List<Member> findAll() {
         return em.createQuery("select m from Member m", Member.class)
                 .getResultList();
     }
 
+    @Transactional(readOnly = true)
     public List<Member> findAll_Querydsl() {
         return queryFactory
                 .selectFrom(member)
                 .fetch();
     }
 
+    @Transactional(readOnly = true)
     public List<Member> findByUsername(String username) {
         return em.createQuery("select m from Member m where m.username = :username", Member.class)
                 .setParameter("username", username)
                 .getResultList();
     }
 
+    @Transactional(readOnly = true)
     public List<Member> findByUsername_Querydsl(String username) {
         return queryFactory
                 .selectFrom(member)
@@ -62,12 +84,13 @@ public class MemberJapRepository {
                 .fetch();
     }
 
+    @Transactional(readOnly = true)
     public List<MemberTeamDto> searchByBuilder(MemberSearchCondition condition) {
 
         BooleanBuilder builder = new BooleanBuilder();
 
         if (hasText(condition.getUsername())) {
-            builder.and(member.username.eq(condition.getUsername()));
+            builder.and(usernameMatches(condition.getUsername(), condition.getUsernameMatch(), usernameGrams.drivingGram(condition)));
         }
 
         if (hasText(condition.getTeamName())) {
@@ -82,53 +105,36 @@ public class MemberJapRepository {
         }
 
         return queryFactory
-                .select(new QMemberTeamDto(
-                        member.id.as("memberId"),
-                        member.username,
-                        member.age,
-                        team.id.as("teamId"),
-                        team.name.as("teamName")
-                ))
+                .select(MemberSearchTemplates.PROJECTION)
                 .from(member)
                 .leftJoin(member.team, team)
                 .where(builder)
                 .fetch();
     }
 
+    @Transactional(readOnly = true)
     public List<MemberTeamDto> search(MemberSearchCondition condition) {
+        return searchCache.get(condition, Pageable.unpaged(), () -> searchTemplates.fetch(condition));
+    }
+
+    /**
+     * fetch() 와 달리 결과를 한 번에 올리지 않고 JDBC 커서(ScrollableResults)로 fetchSize 씩 읽는다.
+     * 트랜잭션 안에서 호출하고, 다 쓴 Stream 은 반드시 close 해야 커넥션이 반환된다.
+     */
+    public Stream<MemberTeamDto> searchStream(MemberSearchCondition condition, int fetchSize) {
         return queryFactory
-                .select(new QMemberTeamDto(
-                        member.id.as("memberId"),
-                        member.username,
-                        member.age,
-                        team.id.as("teamId"),
-                        team.name.as("teamName")
-                ))
+                .select(MemberSearchTemplates.PROJECTION)
                 .from(member)
                 .leftJoin(member.team, team)
                 .where(
-                        userNameEq(condition.getUsername()),
+                        usernameMatches(condition.getUsername(), condition.getUsernameMatch(), usernameGrams.drivingGram(condition)),
                         teamNameEq(condition.getTeamName()),
                         ageGoe(condition.getAgeGoe()),
                         ageLoe(condition.getAgeLoe())
                 )
-                .fetch();
-    }
-
-    private BooleanExpression userNameEq(String username) {
-        return hasText(username) ? member.username.eq(username) : null;
-    }
-
-    private BooleanExpression teamNameEq(String teamName) {
-        return hasText(teamName) ? team.name.eq(teamName) : null;
-    }
-
-    private BooleanExpression ageGoe(Integer ageGoe) {
-        return ageGoe != null ? member.age.goe(ageGoe) : null;
-    }
-
-    private BooleanExpression ageLoe(Integer ageLoe) {
-        return ageLoe != null ? member.age.loe(ageLoe) : null;
+                .setHint(QueryHints.FETCH_SIZE, fetchSize)
+                .setHint(QueryHints.READ_ONLY, true)
+                .stream();
     }
 
 }
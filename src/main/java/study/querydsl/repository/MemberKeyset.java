@@ -0,0 +1,94 @@
+package study.querydsl.repository;
+
+import com.querydsl.core.types.OrderSpecifier;
+import com.querydsl.core.types.dsl.BooleanExpression;
+import org.springframework.data.domain.Sort;
+import study.querydsl.dto.MemberTeamDto;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static study.querydsl.entity.QMember.member;
+
+/**
+ * 키셋(seek) 페이징 정렬 기준
+ * 1. 정렬이 없으면 member.id 순서
+ * 2. age 정렬이면 (age, member.id) 순서, member.id 가 같은 age 안에서 순서를 고정한다
+ * 커서는 마지막 행의 키 값을 정렬 기준과 함께 인코딩한 문자열
+ */
+class MemberKeyset {
+
+    private static final String ID = "memberId";
+    private static final String AGE = "age";
+
+    private final boolean byAge;
+    private final boolean desc;
+
+    private MemberKeyset(boolean byAge, boolean desc) {
+        this.byAge = byAge;
+        this.desc = desc;
+    }
+
+    static MemberKeyset of(Sort sort) {
+        if (sort.isUnsorted()) {
+            return new MemberKeyset(false, false);
+        }
+        Sort.Order order = sort.iterator().next();
+        if (sort.stream().count() > 1 || !(ID.equals(order.getProperty()) || AGE.equals(order.getProperty()))) {
+            throw new IllegalArgumentException("keyset paging supports a single sort on " + ID + " or " + AGE + ": " + sort);
+        }
+        return new MemberKeyset(AGE.equals(order.getProperty()), order.isDescending());
+    }
+
+    OrderSpecifier<?>[] orderBy() {
+        OrderSpecifier<Long> id = desc ? member.id.desc() : member.id.asc();
+        if (!byAge) {
+            return new OrderSpecifier<?>[]{id};
+        }
+        return new OrderSpecifier<?>[]{desc ? member.age.desc() : member.age.asc(), id};
+    }
+
+    BooleanExpression after(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        String[] keys = decode(cursor);
+        try {
+            long id = Long.parseLong(keys[keys.length - 1]);
+            if (!byAge) {
+                return desc ? member.id.lt(id) : member.id.gt(id);
+            }
+            int age = Integer.parseInt(keys[1]);
+            return desc
+                    ? member.age.lt(age).or(member.age.eq(age).and(member.id.lt(id)))
+                    : member.age.gt(age).or(member.age.eq(age).and(member.id.gt(id)));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid cursor: " + cursor, e);
+        }
+    }
+
+    String cursorOf(MemberTeamDto last) {
+        String raw = byAge
+                ? prefix() + ":" + last.getAge() + ":" + last.getMemberId()
+                : prefix() + ":" + last.getMemberId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String[] decode(String cursor) {
+        String raw;
+        try {
+            raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("invalid cursor: " + cursor, e);
+        }
+        String[] keys = raw.split(":");
+        if (!keys[0].equals(prefix()) || keys.length != (byAge ? 3 : 2)) {
+            throw new IllegalArgumentException("cursor does not match the requested sort: " + cursor);
+        }
+        return keys;
+    }
+
+    private String prefix() {
+        return (byAge ? "a" : "i") + (desc ? "d" : "a");
+    }
+}
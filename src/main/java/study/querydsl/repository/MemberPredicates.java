@@ -0,0 +1,68 @@
+package study.querydsl.repository;
+
+import com.querydsl.core.types.dsl.BooleanExpression;
+import com.querydsl.jpa.JPAExpressions;
+import study.querydsl.dto.UsernameMatch;
+import study.querydsl.repository.support.UsernameGrams;
+
+import static org.springframework.util.StringUtils.hasText;
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QMemberUsernameGram.memberUsernameGram;
+import static study.querydsl.entity.QTeam.team;
+
+/**
+ * MemberSearchCondition 의 각 필드를 조건으로 바꾼다. 값이 없으면 null 을 돌려줘서 where 에서 무시된다.
+ */
+public final class MemberPredicates {
+
+    private MemberPredicates() {
+    }
+
+    /**
+     * CONTAINS 는 drivingGram(UsernameGrams.drivingGram) 을 가진 회원으로 좁힌 뒤 like 로 거른다.
+     * 조인이 아니라 서브쿼리라서 벌크 update / delete 에도 쓸 수 있다
+     */
+    public static BooleanExpression usernameMatches(String username, UsernameMatch match, String drivingGram) {
+        if (!hasText(username)) {
+            return null;
+        }
+        switch (match == null ? UsernameMatch.EXACT : match) {
+            case PREFIX:
+                return member.username.goe(username)
+                        .and(member.username.lt(UsernameGrams.prefixUpperBound(username)))
+                        .and(member.username.like(UsernameGrams.likePattern(username, match), UsernameGrams.LIKE_ESCAPE));
+            case CONTAINS:
+                return member.id.in(JPAExpressions
+                                .select(memberUsernameGram.memberId)
+                                .from(memberUsernameGram)
+                                .where(memberUsernameGram.gram.eq(drivingGram)))
+                        .and(member.username.like(UsernameGrams.likePattern(username, match), UsernameGrams.LIKE_ESCAPE));
+            default:
+                return member.username.eq(username);
+        }
+    }
+
+    /**
+     * member.team 을 team 으로 조인한 쿼리에서 쓴다
+     */
+    public static BooleanExpression teamNameEq(String teamName) {
+        return hasText(teamName) ? team.name.eq(teamName) : null;
+    }
+
+    /**
+     * 조인을 쓸 수 없는 벌크 update / delete 용. 팀 이름을 서브쿼리로 푼다
+     */
+    public static BooleanExpression teamNameIn(String teamName) {
+        return hasText(teamName)
+                ? member.team.id.in(JPAExpressions.select(team.id).from(team).where(team.name.eq(teamName)))
+                : null;
+    }
+
+    public static BooleanExpression ageGoe(Integer ageGoe) {
+        return ageGoe != null ? member.age.goe(ageGoe) : null;
+    }
+
+    public static BooleanExpression ageLoe(Integer ageLoe) {
+        return ageLoe != null ? member.age.loe(ageLoe) : null;
+    }
+}
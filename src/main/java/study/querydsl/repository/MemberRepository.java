@@ -1,11 +1,13 @@
 package study.querydsl.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.transaction.annotation.Transactional;
 import study.querydsl.entity.Member;
 
 import java.util.List;
 
 public interface MemberRepository extends JpaRepository<Member, Long>, MemberRepositoryCusTom {
     // select m from Member m where m.username = ?
+    @Transactional(readOnly = true)
     List<Member> findByUsername(String username);
 }
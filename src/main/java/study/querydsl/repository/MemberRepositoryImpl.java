@@ -1,134 +1,234 @@
 package study.querydsl.repository;
 
-import com.querydsl.core.QueryResults;
-import com.querydsl.core.types.dsl.BooleanExpression;
-import com.querydsl.jpa.impl.JPAQuery;
 import com.querydsl.jpa.impl.JPAQueryFactory;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.data.support.PageableExecutionUtils;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import study.querydsl.dto.EstimatedSlice;
+import study.querydsl.dto.KeysetPage;
 import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.dto.MemberTeamDto;
-import study.querydsl.dto.QMemberTeamDto;
-import study.querydsl.entity.Member;
+import study.querydsl.repository.support.CountQueryExecutor;
+import study.querydsl.repository.support.MemberColumnStore;
+import study.querydsl.repository.support.MemberCountCache;
+import study.querydsl.repository.support.MemberCountEstimator;
+import study.querydsl.repository.support.MemberSearchCache;
+import study.querydsl.repository.support.UsernameGrams;
 
 import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
-import static org.springframework.util.StringUtils.hasText;
 import static study.querydsl.entity.QMember.member;
+import static study.querydsl.repository.MemberPredicates.ageGoe;
+import static study.querydsl.repository.MemberPredicates.ageLoe;
+import static study.querydsl.repository.MemberPredicates.teamNameEq;
+import static study.querydsl.repository.MemberPredicates.usernameMatches;
 import static study.querydsl.entity.QTeam.team;
 
+// 조회 전용이므로 복제본으로 보낸다 (study.querydsl.datasource)
+@Transactional(readOnly = true)
 public class MemberRepositoryImpl implements MemberRepositoryCusTom {
 
     private final JPAQueryFactory queryFactory;
-
-    public MemberRepositoryImpl(EntityManager em) {
+    private final MemberSearchTemplates searchTemplates;
+    private final MemberCountCache countCache;
+    private final MemberSearchCache searchCache;
+    private final CountQueryExecutor countQueryExecutor;
+    private final MemberCountEstimator countEstimator;
+    private final UsernameGrams usernameGrams;
+    private final MemberSearchBatch searchBatch;
+    private final MemberColumnStore columnStore;
+
+    public MemberRepositoryImpl(EntityManager em,
+                                MemberSearchTemplates searchTemplates,
+                                MemberCountCache countCache,
+                                MemberSearchCache searchCache,
+                                CountQueryExecutor countQueryExecutor,
+                                MemberCountEstimator countEstimator,
+                                UsernameGrams usernameGrams,
+                                MemberSearchBatch searchBatch,
+                                MemberColumnStore columnStore) {
         this.queryFactory = new JPAQueryFactory(em);
+        this.searchTemplates = searchTemplates;
+        this.countCache = countCache;
+        this.searchCache = searchCache;
+        this.countQueryExecutor = countQueryExecutor;
+        this.countEstimator = countEstimator;
+        this.usernameGrams = usernameGrams;
+        this.searchBatch = searchBatch;
+        this.columnStore = columnStore;
     }
 
 
+    /**
+     * 메모리 열 스토어(MemberColumnStore) 가 채워져 있으면 SQL 없이 답하고, 아니면 DB 로 조회한다
+     */
     @Override
     public List<MemberTeamDto> search(MemberSearchCondition condition) {
-        return queryFactory
-                .select(new QMemberTeamDto(
-                        member.id.as("memberId"),
-                        member.username,
-                        member.age,
-                        team.id.as("teamId"),
-                        team.name.as("teamName")
-                ))
-                .from(member)
-                .leftJoin(member.team, team)
-                .where(
-                        userNameEq(condition.getUsername()),
-                        teamNameEq(condition.getTeamName()),
-                        ageGoe(condition.getAgeGoe()),
-                        ageLoe(condition.getAgeLoe())
-                )
-                .fetch();
+        List<MemberTeamDto> stored = columnStore.search(condition);
+        if (stored != null) {
+            return stored;
+        }
+        return searchCache.get(condition, Pageable.unpaged(), () -> searchTemplates.fetch(condition));
     }
 
     @Override
     public Page<MemberTeamDto> searchPageSimple(MemberSearchCondition condition, Pageable pageable) {
-        QueryResults<MemberTeamDto> results = queryFactory
-                .select(new QMemberTeamDto(
-                        member.id.as("memberId"),
-                        member.username,
-                        member.age,
-                        team.id.as("teamId"),
-                        team.name.as("teamName")
-                ))
-                .from(member)
-                .leftJoin(member.team, team)
-                .where(
-                        userNameEq(condition.getUsername()),
-                        teamNameEq(condition.getTeamName()),
-                        ageGoe(condition.getAgeGoe()),
-                        ageLoe(condition.getAgeLoe())
-                )
-                .offset(pageable.getOffset())
-                .limit(pageable.getPageSize())
-                .fetchResults();
-
-        List<MemberTeamDto> content = results.getResults();
-        long total = results.getTotal();
-        return  new PageImpl<>(content, pageable, total);
+        long total = searchTemplates.count(condition);
+        List<MemberTeamDto> content = total > pageable.getOffset()
+                ? searchTemplates.fetch(condition, pageable.getOffset(), pageable.getPageSize())
+                : Collections.emptyList();
+        return new PageImpl<>(content, pageable, total);
     }
 
     @Override
     public Page<MemberTeamDto> searchPageComplex(MemberSearchCondition condition, Pageable pageable) {
+        Page<MemberTeamDto> stored = columnStore.searchPage(condition, pageable);
+        if (stored != null) {
+            return stored;
+        }
+        List<MemberTeamDto> content = fetchPage(condition, pageable);
+        return PageableExecutionUtils.getPage(content, pageable,
+                () -> countCache.get(condition, () -> searchTemplates.count(condition)));
+    }
+
+    /**
+     * searchPageComplex 와 같지만 count 쿼리를 다른 커넥션에서 content 쿼리와 동시에 실행한다.
+     * 응답 시간이 두 쿼리의 합이 아니라 긴 쪽이 된다. count 가 필요 없는 페이지면 실행 중인 count 를 취소한다.
+     * 커밋 안 된 변경이 있을 수 있는 읽기/쓰기 트랜잭션 안에서는 다른 커넥션에서 보이지 않으므로 순서대로 실행한다.
+     */
+    @Override
+    public Page<MemberTeamDto> searchPageParallel(MemberSearchCondition condition, Pageable pageable) {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return searchPageComplex(condition, pageable);
+        }
+
+        CountQueryExecutor.CountQuery countQuery = countQueryExecutor.submit(
+                () -> countCache.get(condition, () -> searchTemplates.count(condition)));
+        try {
+            List<MemberTeamDto> content = fetchPage(condition, pageable);
+            return PageableExecutionUtils.getPage(content, pageable, countQuery::join);
+        } finally {
+            countQuery.cancel();
+        }
+    }
+
+    /**
+     * count 쿼리 없이 pageSize + 1 건을 읽어서 다음 페이지가 있는지만 판단한다 (무한 스크롤)
+     */
+    @Override
+    public Slice<MemberTeamDto> searchSlice(MemberSearchCondition condition, Pageable pageable) {
+        if (pageable.isUnpaged()) {
+            return new SliceImpl<>(search(condition), pageable, false);
+        }
+        int pageSize = pageable.getPageSize();
+        List<MemberTeamDto> content = searchCache.get(condition, pageable.getOffset(), pageSize + 1, pageable.getSort(),
+                () -> searchTemplates.fetch(condition, pageable.getOffset(), pageSize + 1));
+
+        if (content.size() <= pageSize) {
+            return new SliceImpl<>(content, pageable, false);
+        }
+        return new SliceImpl<>(new ArrayList<>(content.subList(0, pageSize)), pageable, true);
+    }
+
+    /**
+     * searchSlice 에 통계로 어림한 전체 건수를 붙인다 (MemberCountEstimator).
+     * 마지막 페이지까지 읽었으면 어림하지 않고 정확한 값을 쓴다.
+     */
+    @Override
+    public EstimatedSlice<MemberTeamDto> searchSliceEstimated(MemberSearchCondition condition, Pageable pageable) {
+        Slice<MemberTeamDto> slice = searchSlice(condition, pageable);
+        long read = (pageable.isPaged() ? pageable.getOffset() : 0) + slice.getNumberOfElements();
+
+        long estimatedTotal;
+        if (!slice.hasNext() && (slice.hasContent() || read == 0)) {
+            estimatedTotal = read;
+        } else {
+            // 이미 읽은 만큼은 있다
+            estimatedTotal = Math.max(countEstimator.estimate(condition), slice.hasNext() ? read + 1 : 0);
+        }
+        return new EstimatedSlice<>(slice.getContent(), slice.getPageable(), slice.hasNext(), estimatedTotal);
+    }
+
+    /**
+     * offset 대신 마지막으로 읽은 키 다음부터 조회한다 (페이지 번호는 사용하지 않음)
+     * limit + 1 건을 읽어서 다음 페이지 존재 여부를 판단
+     */
+    @Override
+    public KeysetPage<MemberTeamDto> searchKeyset(MemberSearchCondition condition, String cursor, Pageable pageable) {
+        MemberKeyset keyset = MemberKeyset.of(pageable.getSort());
+        int pageSize = pageable.getPageSize();
+
         List<MemberTeamDto> content = queryFactory
-                .select(new QMemberTeamDto(
-                        member.id.as("memberId"),
-                        member.username,
-                        member.age,
-                        team.id.as("teamId"),
-                        team.name.as("teamName")
-                ))
+                .select(MemberSearchTemplates.PROJECTION)
                 .from(member)
                 .leftJoin(member.team, team)
                 .where(
-                        userNameEq(condition.getUsername()),
+                        usernameMatches(condition.getUsername(), condition.getUsernameMatch(), usernameGrams.drivingGram(condition)),
                         teamNameEq(condition.getTeamName()),
                         ageGoe(condition.getAgeGoe()),
-                        ageLoe(condition.getAgeLoe())
+                        ageLoe(condition.getAgeLoe()),
+                        keyset.after(cursor)
                 )
-                .offset(pageable.getOffset())
-                .limit(pageable.getPageSize())
+                .orderBy(keyset.orderBy())
+                .limit(pageSize + 1)
                 .fetch();
 
-        JPAQuery<Member> countQuery = queryFactory
-                .select(member)
-                .from(member)
-                .leftJoin(member.team, team)
-                .where(
-                        userNameEq(condition.getUsername()),
-                        teamNameEq(condition.getTeamName()),
-                        ageGoe(condition.getAgeGoe()),
-                        ageLoe(condition.getAgeLoe())
-                );
-
-
-//        return  new PageImpl<>(content, pageable, total);
-        return PageableExecutionUtils.getPage(content, pageable, () -> countQuery.fetchCount());
-    }
-
-
-    private BooleanExpression userNameEq(String username) {
-        return hasText(username) ? member.username.eq(username) : null;
+        if (content.size() <= pageSize) {
+            return new KeysetPage<>(content, null);
+        }
+        List<MemberTeamDto> page = new ArrayList<>(content.subList(0, pageSize));
+        return new KeysetPage<>(page, keyset.cursorOf(page.get(pageSize - 1)));
     }
 
-    private BooleanExpression teamNameEq(String teamName) {
-        return hasText(teamName) ? team.name.eq(teamName) : null;
-    }
-
-    private BooleanExpression ageGoe(Integer ageGoe) {
-        return ageGoe != null ? member.age.goe(ageGoe) : null;
+    /**
+     * 검색 조건 여러 개의 search 결과를 요청 순서(index) 별로 돌려준다. 화면 하나에서 /v1/members 를 조건마다 부르던 것을 한 번에.
+     * 한 트랜잭션(커넥션 하나) 에서 같은 조건은 한 번만 본다. search 와 같은 순서로 열 스토어가 답할 수 있는 조건은 SQL 없이,
+     * 캐시에 있는 조건은 조회 없이, 나머지는 MemberSearchBatch 로 묶어서 읽는다.
+     * 같은 조건이 여러 번 오면 같은 (수정할 수 없는) 목록을 나눠 쓴다.
+     * 조건 목록은 검사(MemberSearchBatch.check) 가 끝난 것이어야 한다 (POST /v1/members/batch 는 컨트롤러가 입장 제한 전에 검사한다)
+     */
+    @Override
+    public Map<Integer, List<MemberTeamDto>> searchBatch(List<MemberSearchCondition> conditions) {
+        List<MemberSearchCondition> normalized = new ArrayList<>(conditions.size());
+        for (MemberSearchCondition condition : conditions) {
+            normalized.add(condition.normalized());
+        }
+
+        Map<MemberSearchCondition, List<MemberTeamDto>> results = new HashMap<>();
+        Set<MemberSearchCondition> rest = new LinkedHashSet<>();
+        for (MemberSearchCondition condition : new LinkedHashSet<>(normalized)) {
+            List<MemberTeamDto> stored = columnStore.search(condition);
+            if (stored != null) {
+                results.put(condition, Collections.unmodifiableList(stored));
+            } else {
+                rest.add(condition);
+            }
+        }
+        if (!rest.isEmpty()) {
+            results.putAll(searchCache.getAll(rest, searchBatch::fetch));
+        }
+        Map<Integer, List<MemberTeamDto>> byIndex = new LinkedHashMap<>();
+        for (int i = 0; i < normalized.size(); i++) {
+            byIndex.put(i, results.get(normalized.get(i)));
+        }
+        return byIndex;
     }
 
-    private BooleanExpression ageLoe(Integer ageLoe) {
-        return ageLoe != null ? member.age.loe(ageLoe) : null;
+    private List<MemberTeamDto> fetchPage(MemberSearchCondition condition, Pageable pageable) {
+        return searchCache.get(condition, pageable,
+                () -> searchTemplates.fetch(condition, pageable.getOffset(), pageable.getPageSize()));
     }
 }
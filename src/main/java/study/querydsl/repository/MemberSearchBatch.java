@@ -0,0 +1,166 @@
+package study.querydsl.repository;
+
+import com.querydsl.jpa.impl.JPAQuery;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.dto.UsernameMatch;
+import study.querydsl.repository.support.UsernameGrams;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+import static study.querydsl.repository.MemberPredicates.ageGoe;
+import static study.querydsl.repository.MemberPredicates.ageLoe;
+import static study.querydsl.repository.MemberPredicates.teamNameEq;
+import static study.querydsl.repository.MemberPredicates.usernameMatches;
+
+/**
+ * 검색 조건 여러 개를 되도록 적은 쿼리로 읽는다 (MemberRepositoryImpl.searchBatch).
+ * JPQL 에는 UNION ALL 이 없어서 조건 표시를 붙여 한 쿼리로 합치는 대신, 값 하나만 다른 조건끼리 IN 으로 묶는다.
+ * 1. team.name 만 다른 조건들 -> team.name in (...) 한 번, 행의 teamName 으로 나눈다
+ * 2. 나머지 중 username(같음) 만 다른 조건들 -> username in (...) 한 번, 행의 username 으로 나눈다
+ * 3. 그래도 남은 조건은 MemberSearchTemplates 로 하나씩
+ * 화면 하나가 팀별 / 회원별 목록을 여러 개 띄우는 경우가 대부분이라 1, 2 로 거의 묶인다.
+ */
+@Component
+public class MemberSearchBatch {
+
+    private final JPAQueryFactory queryFactory;
+    private final MemberSearchTemplates searchTemplates;
+    private final UsernameGrams usernameGrams;
+    private final int maxConditions;
+
+    public MemberSearchBatch(EntityManager em,
+                             MemberSearchTemplates searchTemplates,
+                             UsernameGrams usernameGrams,
+                             @Value("${querydsl.search.batch.max-conditions:100}") int maxConditions) {
+        this.queryFactory = new JPAQueryFactory(em);
+        this.searchTemplates = searchTemplates;
+        this.usernameGrams = usernameGrams;
+        this.maxConditions = maxConditions;
+    }
+
+    public void check(List<MemberSearchCondition> conditions) {
+        if (conditions == null) {
+            throw new IllegalArgumentException("conditions required");
+        }
+        if (conditions.size() > maxConditions) {
+            throw new IllegalArgumentException("too many conditions: " + conditions.size() + " (max " + maxConditions + ")");
+        }
+        for (int i = 0; i < conditions.size(); i++) {
+            if (conditions.get(i) == null) {
+                throw new IllegalArgumentException("condition " + i + " is null");
+            }
+        }
+    }
+
+    /**
+     * 정규화된(MemberSearchCondition.normalized) 서로 다른 조건마다 결과를 돌려준다
+     */
+    public Map<MemberSearchCondition, List<MemberTeamDto>> fetch(List<MemberSearchCondition> conditions) {
+        Map<MemberSearchCondition, List<MemberTeamDto>> result = new HashMap<>();
+
+        List<MemberSearchCondition> rest = new ArrayList<>();
+        for (List<MemberSearchCondition> group : groupBy(conditions, condition -> condition.getTeamName() != null,
+                condition -> copy(condition, condition.getUsername(), null), rest)) {
+            fetchIn(group, true, result);
+        }
+
+        List<MemberSearchCondition> single = new ArrayList<>();
+        for (List<MemberSearchCondition> group : groupBy(rest,
+                condition -> condition.getUsername() != null && condition.getUsernameMatch() == UsernameMatch.EXACT,
+                condition -> copy(condition, null, condition.getTeamName()), single)) {
+            fetchIn(group, false, result);
+        }
+
+        for (MemberSearchCondition condition : single) {
+            result.put(condition, searchTemplates.fetch(condition));
+        }
+        return result;
+    }
+
+    /**
+     * mergeable 인 조건을 key(묶을 값을 뺀 나머지 조건) 로 모은다. 둘 이상인 묶음만 돌려주고 나머지는 rest 에 넣는다
+     */
+    private static List<List<MemberSearchCondition>> groupBy(List<MemberSearchCondition> conditions,
+                                                             Predicate<MemberSearchCondition> mergeable,
+                                                             Function<MemberSearchCondition, MemberSearchCondition> key,
+                                                             List<MemberSearchCondition> rest) {
+        Map<MemberSearchCondition, List<MemberSearchCondition>> groups = new LinkedHashMap<>();
+        for (MemberSearchCondition condition : conditions) {
+            if (mergeable.test(condition)) {
+                groups.computeIfAbsent(key.apply(condition), k -> new ArrayList<>()).add(condition);
+            } else {
+                rest.add(condition);
+            }
+        }
+        List<List<MemberSearchCondition>> merged = new ArrayList<>();
+        for (List<MemberSearchCondition> group : groups.values()) {
+            if (group.size() > 1) {
+                merged.add(group);
+            } else {
+                rest.addAll(group);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * 묶음 안의 조건은 team.name(byTeamName) 이나 username 만 다르다. in (...) 으로 한 번 읽고 행의 값으로 조건마다 나눈다
+     */
+    private void fetchIn(List<MemberSearchCondition> group, boolean byTeamName,
+                         Map<MemberSearchCondition, List<MemberTeamDto>> result) {
+        Map<String, List<MemberTeamDto>> byValue = new HashMap<>();
+        for (MemberSearchCondition condition : group) {
+            List<MemberTeamDto> rows = new ArrayList<>();
+            byValue.put(byTeamName ? condition.getTeamName() : condition.getUsername(), rows);
+            result.put(condition, rows);
+        }
+
+        MemberSearchCondition first = group.get(0);
+        JPAQuery<MemberTeamDto> query = queryFactory
+                .select(MemberSearchTemplates.PROJECTION)
+                .from(member);
+        if (byTeamName) {
+            query.join(member.team, team)
+                    .where(team.name.in(byValue.keySet()),
+                            usernameMatches(first.getUsername(), first.getUsernameMatch(), usernameGrams.drivingGram(first)));
+        } else {
+            // 팀 이름 조건이 없으면 팀 없는 회원도 나와야 한다 (MemberSearchTemplates 와 같은 조인)
+            (first.getTeamName() != null ? query.join(member.team, team) : query.leftJoin(member.team, team))
+                    .where(member.username.in(byValue.keySet()),
+                            teamNameEq(first.getTeamName()));
+        }
+        List<MemberTeamDto> rows = query
+                .where(ageGoe(first.getAgeGoe()), ageLoe(first.getAgeLoe()))
+                .fetch();
+
+        for (MemberTeamDto row : rows) {
+            List<MemberTeamDto> bucket = byValue.get(byTeamName ? row.getTeamName() : row.getUsername());
+            if (bucket != null) {
+                bucket.add(row);
+            }
+        }
+    }
+
+    private static MemberSearchCondition copy(MemberSearchCondition condition, String username, String teamName) {
+        MemberSearchCondition copy = new MemberSearchCondition();
+        copy.setUsername(username);
+        copy.setUsernameMatch(condition.getUsernameMatch());
+        copy.setTeamName(teamName);
+        copy.setAgeGoe(condition.getAgeGoe());
+        copy.setAgeLoe(condition.getAgeLoe());
+        return copy;
+    }
+}
@@ -0,0 +1,239 @@
+package study.querydsl.repository;
+
+import com.querydsl.core.types.FactoryExpression;
+import com.querydsl.core.types.ParamExpression;
+import com.querydsl.core.types.dsl.BooleanExpression;
+import com.querydsl.core.types.dsl.Param;
+import com.querydsl.jpa.JPAExpressions;
+import com.querydsl.jpa.JPQLSerializer;
+import com.querydsl.jpa.JPQLTemplates;
+import com.querydsl.jpa.impl.JPAProvider;
+import com.querydsl.jpa.impl.JPAQuery;
+import com.querydsl.jpa.impl.JPAUtil;
+import org.springframework.stereotype.Component;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.dto.UsernameMatch;
+import study.querydsl.repository.support.MethodHandleProjections;
+import study.querydsl.repository.support.UsernameGrams;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.springframework.util.StringUtils.hasText;
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QMemberUsernameGram.memberUsernameGram;
+import static study.querydsl.entity.QTeam.team;
+
+/**
+ * MemberSearchCondition 의 조건 4개가 있고 없고와 username 비교 방식(같음 / 앞부분 / 포함)에 따라 where 모양은 정해져 있다.
+ * 모양마다 Querydsl 식 트리를 Param 으로 만들고 JPQL 직렬화까지 한 번만 해 두고,
+ * 요청마다는 값만 바인딩한다. JPQL 문자열이 같으니 Hibernate 쿼리 플랜 캐시도 항상 적중한다.
+ */
+@Component
+public class MemberSearchTemplates {
+
+    private static final int HAS_USERNAME = 1;
+    private static final int HAS_TEAM_NAME = 1 << 1;
+    private static final int HAS_AGE_GOE = 1 << 2;
+    private static final int HAS_AGE_LOE = 1 << 3;
+    // username 비교 방식. 없으면 같음(EXACT)
+    private static final int USERNAME_PREFIX = 1 << 4;
+    private static final int USERNAME_CONTAINS = 1 << 5;
+    private static final int SHAPES = 1 << 6;
+
+    private static final Param<String> USERNAME = new Param<>(String.class, "username");
+    private static final Param<String> USERNAME_UPPER = new Param<>(String.class, "usernameUpper");
+    private static final Param<String> USERNAME_PATTERN = new Param<>(String.class, "usernamePattern");
+    private static final Param<String> USERNAME_GRAM = new Param<>(String.class, "usernameGram");
+    private static final Param<String> TEAM_NAME = new Param<>(String.class, "teamName");
+    private static final Param<Integer> AGE_GOE = new Param<>(Integer.class, "ageGoe");
+    private static final Param<Integer> AGE_LOE = new Param<>(Integer.class, "ageLoe");
+
+    // 행마다 리플렉션 없이 생성자를 부른다. 같은 패키지의 다른 MemberTeamDto 조회도 같이 쓴다
+    static final FactoryExpression<MemberTeamDto> PROJECTION = MethodHandleProjections.constructor(
+            MemberTeamDto.class,
+            member.id.as("memberId"),
+            member.username,
+            member.age,
+            team.id.as("teamId"),
+            team.name.as("teamName")
+    );
+
+    private final EntityManager em;
+    private final UsernameGrams usernameGrams;
+    private final Template[] contentTemplates = new Template[SHAPES];
+    private final Template[] countTemplates = new Template[SHAPES];
+
+    public MemberSearchTemplates(EntityManager em, UsernameGrams usernameGrams) {
+        this.em = em;
+        this.usernameGrams = usernameGrams;
+        JPQLTemplates templates = JPAProvider.getTemplates(em);
+        for (int shape = 0; shape < SHAPES; shape++) {
+            if (!valid(shape)) {
+                continue;
+            }
+            JPAQuery<MemberTeamDto> content = joinTeam(new JPAQuery<>(em, templates).select(PROJECTION).from(member), shape)
+                    .where(where(shape));
+            JPAQuery<?> count = joinTeam(new JPAQuery<>(em, templates).select(member).from(member), shape)
+                    .where(where(shape));
+            contentTemplates[shape] = Template.of(templates, em, content, false);
+            countTemplates[shape] = Template.of(templates, em, count, true);
+        }
+    }
+
+    public List<MemberTeamDto> fetch(MemberSearchCondition condition) {
+        return fetch(condition, -1, -1);
+    }
+
+    public List<MemberTeamDto> fetch(MemberSearchCondition condition, long offset, int limit) {
+        Query query = contentTemplates[shapeOf(condition)].createQuery(em, params(condition));
+        if (offset > 0) {
+            query.setFirstResult((int) offset);
+        }
+        if (limit >= 0) {
+            query.setMaxResults(limit);
+        }
+
+        List<?> rows = query.getResultList();
+        List<MemberTeamDto> content = new ArrayList<>(rows.size());
+        for (Object row : rows) {
+            content.add(PROJECTION.newInstance((Object[]) row));
+        }
+        return content;
+    }
+
+    public long count(MemberSearchCondition condition) {
+        Query query = countTemplates[shapeOf(condition)].createQuery(em, params(condition));
+        return ((Number) query.getSingleResult()).longValue();
+    }
+
+    static int shapeOf(MemberSearchCondition condition) {
+        int shape = 0;
+        if (hasText(condition.getUsername())) {
+            shape |= HAS_USERNAME;
+            if (condition.getUsernameMatch() == UsernameMatch.PREFIX) {
+                shape |= USERNAME_PREFIX;
+            } else if (condition.getUsernameMatch() == UsernameMatch.CONTAINS) {
+                shape |= USERNAME_CONTAINS;
+            }
+        }
+        if (hasText(condition.getTeamName())) {
+            shape |= HAS_TEAM_NAME;
+        }
+        if (condition.getAgeGoe() != null) {
+            shape |= HAS_AGE_GOE;
+        }
+        if (condition.getAgeLoe() != null) {
+            shape |= HAS_AGE_LOE;
+        }
+        return shape;
+    }
+
+    private static boolean valid(int shape) {
+        int match = shape & (USERNAME_PREFIX | USERNAME_CONTAINS);
+        return match == 0 || (match != (USERNAME_PREFIX | USERNAME_CONTAINS) && (shape & HAS_USERNAME) != 0);
+    }
+
+
+    /**
+     * team.name 조건이 있으면 팀이 없는 회원은 어차피 걸러지므로 inner join 으로 바꾼다.
+     * left join 은 member 부터 읽어야 해서 team(name) 인덱스로 시작하는 실행 계획을 쓸 수 없다.
+     */
+    private static <T> JPAQuery<T> joinTeam(JPAQuery<T> query, int shape) {
+        return (shape & HAS_TEAM_NAME) != 0
+                ? query.join(member.team, team)
+                : query.leftJoin(member.team, team);
+    }
+
+    private static BooleanExpression[] where(int shape) {
+        return new BooleanExpression[]{
+                username(shape),
+                (shape & HAS_TEAM_NAME) != 0 ? team.name.eq(TEAM_NAME) : null,
+                (shape & HAS_AGE_GOE) != 0 ? member.age.goe(AGE_GOE) : null,
+                (shape & HAS_AGE_LOE) != 0 ? member.age.loe(AGE_LOE) : null
+        };
+    }
+
+    /**
+     * 앞부분 검색은 like 만으로는 H2 가 바인딩 값을 모르는 채로 계획을 세워서 스캔하므로,
+     * [검색어, 다음 문자열) 범위를 같이 줘서 idx_member_username_age 범위 검색으로 만든다.
+     * 포함 검색은 검색어에서 가장 드문 3글자 조각을 가진 회원 id 를 member_username_gram 기본 키로 찾아
+     * member 기본 키로 읽는 세미 조인이고, like '%검색어%' 는 그 후보에만 적용된다.
+     * (member 부터 읽는 inner join 으로 쓰면 H2 가 member 를 먼저 훑는다)
+     */
+    private static BooleanExpression username(int shape) {
+        if ((shape & HAS_USERNAME) == 0) {
+            return null;
+        }
+        if ((shape & USERNAME_PREFIX) != 0) {
+            return member.username.goe(USERNAME)
+                    .and(member.username.lt(USERNAME_UPPER))
+                    .and(member.username.like(USERNAME_PATTERN, UsernameGrams.LIKE_ESCAPE));
+        }
+        if ((shape & USERNAME_CONTAINS) != 0) {
+            return member.id.in(JPAExpressions
+                            .select(memberUsernameGram.memberId)
+                            .from(memberUsernameGram)
+                            .where(memberUsernameGram.gram.eq(USERNAME_GRAM)))
+                    .and(member.username.like(USERNAME_PATTERN, UsernameGrams.LIKE_ESCAPE));
+        }
+        return member.username.eq(USERNAME);
+    }
+
+    private Map<ParamExpression<?>, Object> params(MemberSearchCondition condition) {
+        Map<ParamExpression<?>, Object> params = new HashMap<>(8);
+        if (hasText(condition.getUsername())) {
+            UsernameMatch match = condition.getUsernameMatch() == null ? UsernameMatch.EXACT : condition.getUsernameMatch();
+            if (match != UsernameMatch.CONTAINS) {
+                params.put(USERNAME, condition.getUsername());
+            }
+            if (match == UsernameMatch.PREFIX) {
+                params.put(USERNAME_UPPER, UsernameGrams.prefixUpperBound(condition.getUsername()));
+            }
+            if (match != UsernameMatch.EXACT) {
+                params.put(USERNAME_PATTERN, UsernameGrams.likePattern(condition.getUsername(), match));
+            }
+            if (match == UsernameMatch.CONTAINS) {
+                params.put(USERNAME_GRAM, usernameGrams.rarest(condition.getUsername()));
+            }
+        }
+        if (hasText(condition.getTeamName())) {
+            params.put(TEAM_NAME, condition.getTeamName());
+        }
+        if (condition.getAgeGoe() != null) {
+            params.put(AGE_GOE, condition.getAgeGoe());
+        }
+        if (condition.getAgeLoe() != null) {
+            params.put(AGE_LOE, condition.getAgeLoe());
+        }
+        return params;
+    }
+
+    private static final class Template {
+
+        private final String jpql;
+        private final List<Object> constants;
+
+        private Template(String jpql, List<Object> constants) {
+            this.jpql = jpql;
+            this.constants = constants;
+        }
+
+        static Template of(JPQLTemplates templates, EntityManager em, JPAQuery<?> query, boolean forCount) {
+            JPQLSerializer serializer = new JPQLSerializer(templates, em);
+            serializer.serialize(query.getMetadata(), forCount, null);
+            return new Template(serializer.toString(), new ArrayList<>(serializer.getConstants()));
+        }
+
+        Query createQuery(EntityManager em, Map<ParamExpression<?>, Object> params) {
+            Query query = em.createQuery(jpql);
+            JPAUtil.setConstants(query, constants, params);
+            return query;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package study.querydsl.repository;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import study.querydsl.entity.Team;
+
+public interface TeamRepositoryCustom {
+
+    /**
+     * members 가 초기화된 Team 페이지. 정렬은 id, name 만 쓸 수 있다
+     */
+    Page<Team> findAllWithMembers(Pageable pageable);
+}
@@ -0,0 +1,108 @@
+package study.querydsl.repository;
+
+import com.querydsl.core.types.Order;
+import com.querydsl.core.types.OrderSpecifier;
+import com.querydsl.jpa.impl.JPAQuery;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.hibernate.annotations.QueryHints;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.support.PageableExecutionUtils;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+@Transactional(readOnly = true)
+public class TeamRepositoryImpl implements TeamRepositoryCustom {
+
+    private final JPAQueryFactory queryFactory;
+
+    public TeamRepositoryImpl(EntityManager em) {
+        this.queryFactory = new JPAQueryFactory(em);
+    }
+
+    /**
+     * 컬렉션 fetch join 에 offset / limit 을 걸면 Hibernate 가 전체 결과를 메모리에 올려서 자른다 (HHH000104).
+     * 1. team id 만 페이지로 읽고 2. 그 id 들만 members 와 fetch join 해서 읽는다 (+ 필요하면 count)
+     * 페이지마다 쿼리 수가 정해져 있고, 메모리에는 페이지의 팀과 그 회원만 올라온다.
+     */
+    @Override
+    public Page<Team> findAllWithMembers(Pageable pageable) {
+        List<OrderSpecifier<?>> orders = orderBy(pageable.getSort());
+
+        JPAQuery<Long> idQuery = queryFactory
+                .select(team.id)
+                .from(team)
+                .orderBy(orders.toArray(new OrderSpecifier[0]));
+        if (pageable.isPaged()) {
+            idQuery.offset(pageable.getOffset()).limit(pageable.getPageSize());
+        }
+        List<Long> ids = idQuery.fetch();
+
+        return PageableExecutionUtils.getPage(fetchWithMembers(ids), pageable,
+                () -> queryFactory.select(team.count()).from(team).fetchOne());
+    }
+
+    private List<Team> fetchWithMembers(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        // 조인으로 늘어난 행은 Hibernate 가 엔티티 기준으로 합친다. SQL 에는 distinct 를 넘기지 않는다
+        Map<Long, Team> teams = queryFactory
+                .selectDistinct(team)
+                .from(team)
+                .leftJoin(team.members, member).fetchJoin()
+                .where(team.id.in(ids))
+                .setHint(QueryHints.PASS_DISTINCT_THROUGH, false)
+                .fetch()
+                .stream()
+                .collect(Collectors.toMap(Team::getId, Function.identity()));
+
+        // id 쿼리의 정렬 순서대로
+        List<Team> content = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Team found = teams.get(id);
+            if (found != null) {
+                content.add(found);
+            }
+        }
+        return content;
+    }
+
+    /**
+     * 페이지 경계가 흔들리지 않게 마지막에 id 로 한 번 더 정렬한다
+     */
+    private static List<OrderSpecifier<?>> orderBy(Sort sort) {
+        List<OrderSpecifier<?>> orders = new ArrayList<>();
+        boolean byId = false;
+        for (Sort.Order order : sort) {
+            Order direction = order.isAscending() ? Order.ASC : Order.DESC;
+            switch (order.getProperty()) {
+                case "id":
+                    orders.add(new OrderSpecifier<>(direction, team.id));
+                    byId = true;
+                    break;
+                case "name":
+                    orders.add(new OrderSpecifier<>(direction, team.name));
+                    break;
+                default:
+                    throw new IllegalArgumentException("unsupported team sort property: " + order.getProperty());
+            }
+        }
+        if (!byId) {
+            orders.add(team.id.asc());
+        }
+        return orders;
+    }
+}
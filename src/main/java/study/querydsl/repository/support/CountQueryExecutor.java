@@ -0,0 +1,198 @@
+package study.querydsl.repository.support;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.datasource.ConnectionPools;
+import study.querydsl.datasource.ReplicaRouting;
+
+import javax.persistence.EntityManager;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * count 쿼리를 content 쿼리와 동시에 돌리기 위한 전용 스레드 풀.
+ * 작업마다 별도의 읽기 전용 트랜잭션(EntityManager, 커넥션) 에서 실행하고,
+ * 결과가 필요 없어지면 Session.cancelQuery 로 실행 중인 쿼리까지 취소한다.
+ * 호출한 쪽은 자기 커넥션을 든 채로 기다리므로, 커넥션을 하나 더 기다리다 풀이 바닥나지 않게 아래 경우에는 호출한 스레드(자기 커넥션) 에서 센다.
+ * 1. 스레드 풀이 가득 찼다 (queue_full)
+ * 2. 호출한 트랜잭션이 읽는 커넥션 풀에 여유가 없다 (pool_short)
+ * 3. max-wait 안에 작업이 커넥션을 잡지 못했다 (timeout). 이미 세고 있으면 끝날 때까지 기다린다
+ * 작업은 호출한 트랜잭션과 같은 곳(primary 또는 같은 복제본) 에서 읽는다 (ReplicaRouting.readFrom).
+ * 작업이 실행한 SQL 은 호출한 스레드에 열려 있던 SqlStatementScope 에 기록된다 (요청 / 저장소 메서드의 문장 수, count 시간).
+ * 메트릭: member.count.executor.caller (reason) - 호출한 스레드에서 센 횟수
+ */
+@Slf4j
+@Component
+public class CountQueryExecutor implements DisposableBean {
+
+    private final EntityManager em;
+    private final TransactionTemplate readOnlyTransaction;
+    private final ThreadPoolExecutor executor;
+    private final ConnectionPools connectionPools;
+    private final MeterRegistry meterRegistry;
+    private final Duration maxWait;
+
+    public CountQueryExecutor(EntityManager em,
+                              PlatformTransactionManager transactionManager,
+                              ConnectionPools connectionPools,
+                              MeterRegistry meterRegistry,
+                              @Value("${querydsl.count-executor.threads:8}") int threads,
+                              @Value("${querydsl.count-executor.queue-capacity:64}") int queueCapacity,
+                              @Value("${querydsl.count-executor.max-wait:200ms}") Duration maxWait) {
+        this.em = em;
+        this.connectionPools = connectionPools;
+        this.meterRegistry = meterRegistry;
+        this.maxWait = maxWait;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        AtomicInteger sequence = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "count-query-" + sequence.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+        ExecutorServiceMetrics.monitor(meterRegistry, executor, "member.count.executor");
+    }
+
+    public CountQuery submit(LongSupplier countQuery) {
+        String target = ReplicaRouting.currentTarget();
+        CountQuery query = new CountQuery(countQuery, target, SqlStatementScope.openScopes());
+        if (target != null && !connectionPools.hasIdleConnection(target)) {
+            countOnCaller("pool_short");
+            return query;
+        }
+        try {
+            query.future = executor.submit(query::run);
+        } catch (RejectedExecutionException e) {
+            countOnCaller("queue_full");
+        }
+        return query;
+    }
+
+    private void countOnCaller(String reason) {
+        Counter.builder("member.count.executor.caller").tag("reason", reason).register(meterRegistry).increment();
+        log.debug("counting on the caller thread reason={}", reason);
+    }
+
+    int activeCount() {
+        return executor.getActiveCount();
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    public class CountQuery {
+
+        private final LongSupplier countQuery;
+        // 호출한 트랜잭션이 읽는 곳. 트랜잭션 밖에서 불렀으면 null
+        private final String target;
+        // 호출한 스레드에 열려 있던 범위
+        private final List<SqlStatementScope> scopes;
+        private volatile Future<Long> future;
+        private volatile Session session;
+        // 작업이 커넥션을 잡았다
+        private volatile boolean started;
+        private volatile boolean cancelled;
+
+        private CountQuery(LongSupplier countQuery, String target, List<SqlStatementScope> scopes) {
+            this.countQuery = countQuery;
+            this.target = target;
+            this.scopes = scopes;
+        }
+
+        private Long run() {
+            if (cancelled) {
+                throw new CancellationException();
+            }
+            return SqlStatementScope.attach(scopes, () -> ReplicaRouting.readFrom(target, () -> readOnlyTransaction.execute(status -> {
+                // 커넥션을 기다리는 사이 호출한 쪽이 포기했으면 세지 않는다
+                if (cancelled) {
+                    throw new CancellationException();
+                }
+                // 공유 EntityManager 프록시는 Session 을 구현하므로 unwrap(Session) 은 프록시를 돌려준다
+                // 다른 스레드에서 cancelQuery 를 부르려면 이 트랜잭션의 실제 세션이 필요하다
+                session = em.unwrap(SessionImplementor.class);
+                started = true;
+                try {
+                    return countQuery.getAsLong();
+                } finally {
+                    session = null;
+                }
+            })));
+        }
+
+        /**
+         * 결과를 기다린다. 풀에 들어가지 못했거나 max-wait 안에 작업이 커넥션을 잡지 못했으면 지금 스레드에서 센다
+         */
+        public long join() {
+            if (future == null) {
+                return countQuery.getAsLong();
+            }
+            try {
+                try {
+                    return future.get(maxWait.toNanos(), TimeUnit.NANOSECONDS);
+                } catch (TimeoutException e) {
+                    if (!started) {
+                        cancel();
+                        countOnCaller("timeout");
+                        return countQuery.getAsLong();
+                    }
+                }
+                // 이미 자기 커넥션으로 세고 있다
+                return future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancel();
+                throw new IllegalStateException("interrupted while waiting for count query", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+
+        /**
+         * 아직 시작 전이면 실행하지 않고, 실행 중이면 쿼리를 취소한다. 이미 끝났으면 아무 일도 없다
+         */
+        public void cancel() {
+            if (future == null || future.isDone()) {
+                return;
+            }
+            cancelled = true;
+            future.cancel(false);
+            Session running = session;
+            if (running != null) {
+                try {
+                    running.cancelQuery();
+                } catch (RuntimeException e) {
+                    log.debug("failed to cancel count query", e);
+                }
+            }
+        }
+    }
+}
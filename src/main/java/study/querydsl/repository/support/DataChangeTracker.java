@@ -0,0 +1,129 @@
+package study.querydsl.repository.support;
+
+import com.p6spy.engine.common.ConnectionInformation;
+import com.p6spy.engine.common.StatementInformation;
+import com.p6spy.engine.event.SimpleJdbcEventListener;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * p6spy 로 실행되는 모든 DML 을 보고 변경된 테이블을 추적한다.
+ * JPA 엔티티 쓰기, Querydsl 벌크 execute(), JdbcTemplate 모두 같은 경로로 잡힌다.
+ * 트랜잭션 안의 변경은 커밋된 뒤에만 version 을 올리고 DataChangedEvent 를 발행 (롤백이면 버림)
+ */
+@Component
+public class DataChangeTracker extends SimpleJdbcEventListener {
+
+    private static final Pattern DML = Pattern.compile(
+            "^\\s*(?:/\\*.*?\\*/\\s*)*(?:insert\\s+into|update|delete\\s+from|merge\\s+into)\\s+([\\w.\"`]+)",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    private final ApplicationEventPublisher publisher;
+    private final AtomicLong version = new AtomicLong();
+    private final Map<ConnectionInformation, Pending> pending = new ConcurrentHashMap<>();
+
+    public DataChangeTracker(ApplicationEventPublisher publisher) {
+        this.publisher = publisher;
+    }
+
+    /**
+     * 커밋된 변경이 있을 때마다 증가. 읽기 전후 값이 같으면 그 사이에 커밋된 쓰기가 없다.
+     */
+    public long version() {
+        return version.get();
+    }
+
+    /**
+     * 현재 스레드의 트랜잭션에 아직 커밋되지 않은 변경이 있으면 true
+     * (이 트랜잭션에서 읽은 값은 다른 트랜잭션과 공유하면 안 된다)
+     */
+    public boolean hasPendingChanges() {
+        Thread current = Thread.currentThread();
+        for (Pending p : pending.values()) {
+            if (p.thread == current) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void onAfterAnyExecute(StatementInformation statementInformation, long timeElapsedNanos, SQLException e) {
+        if (e != null) {
+            return;
+        }
+        String table = tableOf(statementInformation.getSql());
+        if (table == null) {
+            return;
+        }
+        ConnectionInformation connection = statementInformation.getConnectionInformation();
+        if (isAutoCommit(connection)) {
+            publish(Collections.singleton(table));
+        } else {
+            pending.computeIfAbsent(connection, c -> new Pending(Thread.currentThread())).tables.add(table);
+        }
+    }
+
+    @Override
+    public void onAfterCommit(ConnectionInformation connectionInformation, long timeElapsedNanos, SQLException e) {
+        Pending committed = pending.remove(connectionInformation);
+        if (committed != null && e == null) {
+            publish(committed.tables);
+        }
+    }
+
+    @Override
+    public void onAfterRollback(ConnectionInformation connectionInformation, long timeElapsedNanos, SQLException e) {
+        pending.remove(connectionInformation);
+    }
+
+    @Override
+    public void onAfterConnectionClose(ConnectionInformation connectionInformation, SQLException e) {
+        pending.remove(connectionInformation);
+    }
+
+    static String tableOf(String sql) {
+        if (sql == null) {
+            return null;
+        }
+        Matcher matcher = DML.matcher(sql);
+        if (!matcher.find()) {
+            return null;
+        }
+        String name = matcher.group(1).replaceAll("[\"`]", "").toLowerCase(Locale.ROOT);
+        return name.substring(name.lastIndexOf('.') + 1);
+    }
+
+    private boolean isAutoCommit(ConnectionInformation connection) {
+        try {
+            return connection.getConnection().getAutoCommit();
+        } catch (SQLException ex) {
+            return false;
+        }
+    }
+
+    private void publish(Set<String> tables) {
+        long next = version.incrementAndGet();
+        publisher.publishEvent(new DataChangedEvent(Collections.unmodifiableSet(tables), next));
+    }
+
+    private static class Pending {
+        private final Thread thread;
+        private final Set<String> tables = Collections.synchronizedSet(new HashSet<>());
+
+        private Pending(Thread thread) {
+            this.thread = thread;
+        }
+    }
+}
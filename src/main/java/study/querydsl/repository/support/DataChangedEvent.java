@@ -0,0 +1,29 @@
+package study.querydsl.repository.support;
+
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.Set;
+
+@Getter
+@ToString
+public class DataChangedEvent {
+    // 커밋된 DML 이 건드린 테이블 (소문자, 스키마 제외)
+
+    private final Set<String> tables;
+    private final long version;
+
+    public DataChangedEvent(Set<String> tables, long version) {
+        this.tables = tables;
+        this.version = version;
+    }
+
+    public boolean affects(String... names) {
+        for (String name : names) {
+            if (tables.contains(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
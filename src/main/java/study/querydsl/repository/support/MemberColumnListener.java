@@ -0,0 +1,94 @@
+package study.querydsl.repository.support;
+
+import org.hibernate.action.spi.AfterTransactionCompletionProcess;
+import org.hibernate.action.spi.BeforeTransactionCompletionProcess;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.stereotype.Component;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManagerFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Member / Team 엔티티가 바뀐 id 를 세션(트랜잭션)마다 모아서 커밋 직전에 MemberColumnStore 에 넘긴다.
+ * 상태는 넘기지 않는다. 커밋된 뒤(DataChangedEvent) 스토어가 그 id 를 primary 에서 다시 읽는다. 롤백되면 버린다.
+ * (TeamStatsListener 와 같은 방식. 벌크 연산은 엔티티 이벤트가 없으므로 스토어가 비우고 다시 채운다)
+ */
+@Component
+public class MemberColumnListener implements PostInsertEventListener, PostUpdateEventListener, PostDeleteEventListener {
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final MemberColumnStore columnStore;
+    private final Map<EventSource, MemberColumnStore.Changes> pending = new ConcurrentHashMap<>();
+
+    public MemberColumnListener(EntityManagerFactory entityManagerFactory, MemberColumnStore columnStore) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.columnStore = columnStore;
+    }
+
+    @PostConstruct
+    public void register() {
+        if (!columnStore.isEnabled()) {
+            return;
+        }
+        EventListenerRegistry registry = entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry()
+                .getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_INSERT, this);
+        registry.appendListeners(EventType.POST_UPDATE, this);
+        registry.appendListeners(EventType.POST_DELETE, this);
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        changed(event.getSession(), event.getEntity(), event.getId());
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        changed(event.getSession(), event.getEntity(), event.getId());
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        changed(event.getSession(), event.getEntity(), event.getId());
+    }
+
+    @Override
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        return false;
+    }
+
+    private void changed(EventSource session, Object entity, Object id) {
+        if (entity instanceof Member) {
+            changes(session).member((Long) id);
+        } else if (entity instanceof Team) {
+            changes(session).team((Long) id);
+        }
+    }
+
+    private MemberColumnStore.Changes changes(EventSource session) {
+        return pending.computeIfAbsent(session, s -> {
+            MemberColumnStore.Changes changes = new MemberColumnStore.Changes();
+            s.getActionQueue().registerProcess((BeforeTransactionCompletionProcess) completing -> columnStore.beforeCommit(changes));
+            s.getActionQueue().registerProcess((AfterTransactionCompletionProcess) (success, completed) -> {
+                pending.remove(s);
+                columnStore.afterCompletion(changes);
+            });
+            return changes;
+        });
+    }
+}
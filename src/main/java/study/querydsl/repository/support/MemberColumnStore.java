@@ -0,0 +1,499 @@
+package study.querydsl.repository.support;
+
+import com.querydsl.core.Tuple;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.annotations.QueryHints;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.dto.UsernameMatch;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+import static org.springframework.util.StringUtils.hasText;
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+/**
+ * search / searchPageComplex 를 SQL 없이 메모리의 Member × Team 열(MemberColumns) 로 답한다.
+ * 1. 켜져 있으면(querydsl.column-store.enabled) 기동 후 member / team 을 primary 에서 한 번 읽어 채운다 (warm)
+ * 2. 엔티티 변경은 MemberColumnListener 가 트랜잭션마다 바뀐 id 만 모아 두고, 커밋되면(DataChangedEvent) 그 id 의 지금 상태를
+ *    primary 에서 다시 읽어 반영한다. 리스너가 본 엔티티 상태는 쓰지 않는다. DataChangedEvent.version 은 DB 커밋 뒤에 매겨져서
+ *    같은 회원을 바꾼 두 커밋의 순서와 다를 수 있기 때문이다. 다시 읽기는 scheduler 스레드 하나에서 차례로 하므로
+ *    나중에 읽은 상태가 나중에 반영된다. 다시 읽는 동안은 null 을 돌려준다
+ * 3. 엔티티 이벤트 없이 member / team 이 바뀐 커밋(벌크 연산, 네이티브 SQL, JdbcTemplate) 은 반영할 수 없으므로 비우고
+ *    rewarm-delay 뒤에 다시 채운다. 비어 있는 동안은 null 을 돌려주고 호출한 쪽이 DB 로 조회한다
+ * 4. 같은 트랜잭션에서 엔티티 변경과 벌크 연산 / 네이티브 SQL 을 섞으면 엔티티가 아닌 쪽은 보지 못한다. refresh-interval 마다 다시 채워서 맞춘다
+ * username 은 같음(EXACT) 만 답한다. 앞부분 / 포함 검색은 DB(member_username_gram) 로 간다.
+ * 결과는 적재 순서(warm 때 id 순, 그 뒤 추가된 회원은 뒤에) 다. JPA 경로도 order by 가 없으므로 순서를 약속하지 않는다.
+ */
+@Slf4j
+@Component
+public class MemberColumnStore implements DisposableBean {
+
+    private static final int WARM_ATTEMPTS = 3;
+    private static final int FETCH_SIZE = 1000;
+
+    private final JPAQueryFactory queryFactory;
+    private final TransactionTemplate transactionTemplate;
+    private final DataChangeTracker tracker;
+    private final boolean enabled;
+    private final Duration rewarmDelay;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicBoolean warmScheduled = new AtomicBoolean();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // 커밋 중인 트랜잭션이 엔티티로 바꾼 내용. 커밋 직전에 넣고, 같은 스레드의 DataChangedEvent 에서 꺼낸다
+    private final ThreadLocal<Changes> committing = new ThreadLocal<>();
+    private final Counter hits;
+    private final Counter fallbacks;
+
+    // 비어 있으면(warm 전, 반영할 수 없는 변경 뒤) null. lock 으로 보호
+    private MemberColumns columns;
+    // 커밋된 행을 다시 읽는 중인 수. 0 보다 크면 답하지 않는다. lock 으로 보호
+    private int rereading;
+
+    public MemberColumnStore(JPAQueryFactory queryFactory,
+                             PlatformTransactionManager transactionManager,
+                             DataChangeTracker tracker,
+                             MeterRegistry meterRegistry,
+                             @Value("${querydsl.column-store.enabled:false}") boolean enabled,
+                             @Value("${querydsl.column-store.rewarm-delay:1s}") Duration rewarmDelay,
+                             @Value("${querydsl.column-store.refresh-interval:10m}") Duration refreshInterval) {
+        this.queryFactory = queryFactory;
+        // 읽기 전용이면 복제본으로 가서 이미 반영된 커밋을 못 볼 수 있으므로 primary 에서 읽는다
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.tracker = tracker;
+        this.enabled = enabled;
+        this.rewarmDelay = rewarmDelay;
+        this.hits = Counter.builder("member.column.store.queries").tag("result", "hit").register(meterRegistry);
+        this.fallbacks = Counter.builder("member.column.store.queries").tag("result", "fallback").register(meterRegistry);
+        Gauge.builder("member.column.store.rows", this, MemberColumnStore::rows).register(meterRegistry);
+
+        if (!enabled) {
+            this.scheduler = null;
+            return;
+        }
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "member-column-store");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (!refreshInterval.isZero()) {
+            long interval = refreshInterval.toMillis();
+            scheduler.scheduleWithFixedDelay(this::warmQuietly, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isWarm() {
+        lock.readLock().lock();
+        try {
+            return columns != null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 답할 수 없으면(꺼짐, 비어 있음, username 앞부분 / 포함 검색, 커밋 안 된 변경이 보이는 트랜잭션) null
+     */
+    public List<MemberTeamDto> search(MemberSearchCondition condition) {
+        if (!supports(condition)) {
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            if (columns == null || rereading > 0) {
+                fallbacks.increment();
+                return null;
+            }
+            int[] rows = select(condition);
+            hits.increment();
+            return toDtos(rows, 0, rows.length);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * content 와 전체 건수를 같은 상태에서 읽는다. 답할 수 없으면 null
+     */
+    public Page<MemberTeamDto> searchPage(MemberSearchCondition condition, Pageable pageable) {
+        if (!supports(condition)) {
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            if (columns == null || rereading > 0) {
+                fallbacks.increment();
+                return null;
+            }
+            int[] rows = select(condition);
+            hits.increment();
+            if (pageable.isUnpaged()) {
+                return new PageImpl<>(toDtos(rows, 0, rows.length), pageable, rows.length);
+            }
+            int from = (int) Math.min(pageable.getOffset(), rows.length);
+            int to = (int) Math.min(rows.length, (long) from + pageable.getPageSize());
+            return new PageImpl<>(toDtos(rows, from, to), pageable, rows.length);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * member / team 을 다시 읽어서 채운다. 읽는 동안 커밋된 쓰기가 있으면 다시 읽는다 (WARM_ATTEMPTS 번)
+     */
+    public synchronized boolean warm() {
+        if (!enabled) {
+            return false;
+        }
+        for (int attempt = 1; attempt <= WARM_ATTEMPTS; attempt++) {
+            long version = tracker.version();
+            long start = System.nanoTime();
+            MemberColumns loaded = transactionTemplate.execute(status -> load());
+            lock.writeLock().lock();
+            try {
+                if (tracker.version() == version) {
+                    columns = loaded;
+                    log.info("member column store warmed rows={} elapsedMs={}", loaded.rows(),
+                            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                    return true;
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        log.warn("member column store not warmed, data kept changing during {} attempts", WARM_ATTEMPTS);
+        return false;
+    }
+
+    /**
+     * MemberColumnListener 가 커밋 직전에 부른다
+     */
+    void beforeCommit(Changes changes) {
+        committing.set(changes);
+    }
+
+    /**
+     * MemberColumnListener 가 커밋 / 롤백 뒤에 부른다
+     */
+    void afterCompletion(Changes changes) {
+        if (committing.get() == changes) {
+            committing.remove();
+        }
+    }
+
+    @EventListener
+    public void onDataChanged(DataChangedEvent event) {
+        if (!enabled || !event.affects("member", "team")) {
+            return;
+        }
+        Changes changes = committing.get();
+        committing.remove();
+        if (changes == null) {
+            invalidate(event);
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (columns == null) {
+                return;
+            }
+            rereading++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        // 커밋 중인 스레드에서는 새 트랜잭션을 열 수 없으므로 scheduler 에서 읽는다
+        scheduler.execute(() -> reread(changes));
+    }
+
+    /**
+     * 채워져 있고 다시 읽는 중인 커밋이 없으면 true
+     */
+    boolean isSettled() {
+        lock.readLock().lock();
+        try {
+            return columns != null && rereading == 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (enabled) {
+            scheduler.execute(this::warmQuietly);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private boolean supports(MemberSearchCondition condition) {
+        if (!enabled) {
+            return false;
+        }
+        if (hasText(condition.getUsername())
+                && condition.getUsernameMatch() != null && condition.getUsernameMatch() != UsernameMatch.EXACT) {
+            return false;
+        }
+        // 읽기/쓰기 트랜잭션에는 flush 전이거나 커밋 전인 변경이 있을 수 있다
+        if (TransactionSynchronizationManager.isActualTransactionActive()
+                && !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return false;
+        }
+        return !tracker.hasPendingChanges();
+    }
+
+    private int[] select(MemberSearchCondition condition) {
+        return columns.select(
+                hasText(condition.getUsername()) ? condition.getUsername() : null,
+                hasText(condition.getTeamName()) ? condition.getTeamName() : null,
+                condition.getAgeGoe(),
+                condition.getAgeLoe());
+    }
+
+    private List<MemberTeamDto> toDtos(int[] rows, int from, int to) {
+        List<MemberTeamDto> content = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            content.add(columns.toDto(rows[i]));
+        }
+        return content;
+    }
+
+    private MemberColumns load() {
+        List<Tuple> teams = queryFactory.select(team.id, team.name).from(team).fetch();
+        Long count = queryFactory.select(member.count()).from(member).fetchOne();
+        MemberColumns loaded = new MemberColumns(count == null ? 0 : count.intValue());
+        for (Tuple row : teams) {
+            loaded.putTeam(row.get(team.id), row.get(team.name));
+        }
+
+        // member.team.id 는 조인 없이 team_id 컬럼으로 읽는다
+        try (Stream<Tuple> members = queryFactory
+                .select(member.id, member.username, member.age, member.team.id)
+                .from(member)
+                .orderBy(member.id.asc())
+                .setHint(QueryHints.FETCH_SIZE, FETCH_SIZE)
+                .stream()) {
+            Iterator<Tuple> iterator = members.iterator();
+            while (iterator.hasNext()) {
+                Tuple row = iterator.next();
+                // 팀을 먼저 읽었으므로 그 사이에 추가된 팀이면 false. 그 커밋 때문에 version 이 바뀌어서 어차피 다시 읽는다
+                loaded.putMember(row.get(member.id), row.get(member.username), row.get(member.age), row.get(member.team.id));
+            }
+        }
+        loaded.buildAgeIndex();
+        return loaded;
+    }
+
+    /**
+     * changes 가 건드린 member / team 의 지금(커밋된) 상태를 읽어서 반영한다. 읽지 못하면 비우고 다시 채운다
+     */
+    private void reread(Changes changes) {
+        Rows current = null;
+        try {
+            current = transactionTemplate.execute(status -> load(changes));
+        } catch (RuntimeException e) {
+            log.warn("member column store reread failed", e);
+        }
+        lock.writeLock().lock();
+        try {
+            rereading--;
+            if (columns != null) {
+                if (current == null || !apply(columns, current)) {
+                    columns = null;
+                    log.info("member column store dropped, committed rows could not be applied");
+                } else {
+                    columns.maintain();
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (!isWarm()) {
+            scheduleWarm();
+        }
+    }
+
+    private Rows load(Changes changes) {
+        Rows current = new Rows();
+        Set<Long> teamIds = new LinkedHashSet<>(changes.teamIds);
+        if (!teamIds.isEmpty()) {
+            for (Tuple row : queryFactory.select(team.id, team.name).from(team).where(team.id.in(teamIds)).fetch()) {
+                current.team(row.get(team.id), row.get(team.name));
+                teamIds.remove(row.get(team.id));
+            }
+            teamIds.forEach(current::teamDeleted);
+        }
+
+        Set<Long> memberIds = new LinkedHashSet<>(changes.memberIds);
+        if (!memberIds.isEmpty()) {
+            // 다른 커밋이 만든 팀으로 옮겼을 수 있으므로 팀 이름도 같이 읽는다
+            for (Tuple row : queryFactory
+                    .select(member.id, member.username, member.age, team.id, team.name)
+                    .from(member)
+                    .leftJoin(member.team, team)
+                    .where(member.id.in(memberIds))
+                    .fetch()) {
+                if (row.get(team.id) != null) {
+                    current.team(row.get(team.id), row.get(team.name));
+                }
+                current.member(row.get(member.id), row.get(member.username), row.get(member.age), row.get(team.id));
+                memberIds.remove(row.get(member.id));
+            }
+            memberIds.forEach(current::memberDeleted);
+        }
+        return current;
+    }
+
+    private static boolean apply(MemberColumns columns, Rows rows) {
+        rows.teams.forEach(columns::putTeam);
+        for (Map.Entry<Long, MemberRow> entry : rows.members.entrySet()) {
+            MemberRow row = entry.getValue();
+            if (row == null) {
+                columns.removeMember(entry.getKey());
+            } else if (!columns.putMember(entry.getKey(), row.username, row.age, row.teamId)) {
+                return false;
+            }
+        }
+        rows.deletedTeams.forEach(columns::removeTeam);
+        return true;
+    }
+
+    private void invalidate(DataChangedEvent event) {
+        lock.writeLock().lock();
+        try {
+            if (columns != null) {
+                log.info("member column store dropped, untracked write to {}", event.getTables());
+            }
+            columns = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        scheduleWarm();
+    }
+
+    /**
+     * 벌크 연산처럼 커밋이 연달아 오면 한 번만 다시 채운다
+     */
+    private void scheduleWarm() {
+        if (warmScheduled.compareAndSet(false, true)) {
+            scheduler.schedule(() -> {
+                warmScheduled.set(false);
+                warmQuietly();
+            }, rewarmDelay.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void warmQuietly() {
+        try {
+            warm();
+        } catch (RuntimeException e) {
+            log.warn("member column store warm failed", e);
+        }
+    }
+
+    private double rows() {
+        lock.readLock().lock();
+        try {
+            return columns == null ? 0 : columns.rows();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 한 트랜잭션에서 엔티티로 바꾼 member / team 의 id (MemberColumnListener 가 모은다)
+     */
+    static final class Changes {
+
+        private final Set<Long> teamIds = new LinkedHashSet<>();
+        private final Set<Long> memberIds = new LinkedHashSet<>();
+
+        void team(Long teamId) {
+            teamIds.add(teamId);
+        }
+
+        void member(Long memberId) {
+            memberIds.add(memberId);
+        }
+    }
+
+    /**
+     * 다시 읽은 member / team 의 커밋된 상태
+     */
+    private static final class Rows {
+
+        private final Map<Long, String> teams = new LinkedHashMap<>();
+        private final Set<Long> deletedTeams = new LinkedHashSet<>();
+        // 값이 null 이면 삭제
+        private final Map<Long, MemberRow> members = new LinkedHashMap<>();
+
+        void team(Long teamId, String name) {
+            teams.put(teamId, name);
+        }
+
+        void teamDeleted(Long teamId) {
+            deletedTeams.add(teamId);
+        }
+
+        void member(Long memberId, String username, int age, Long teamId) {
+            members.put(memberId, new MemberRow(username, age, teamId));
+        }
+
+        void memberDeleted(Long memberId) {
+            members.put(memberId, null);
+        }
+    }
+
+    private static final class MemberRow {
+
+        private final String username;
+        private final int age;
+        private final Long teamId;
+
+        MemberRow(String username, int age, Long teamId) {
+            this.username = username;
+            this.age = age;
+            this.teamId = teamId;
+        }
+    }
+}
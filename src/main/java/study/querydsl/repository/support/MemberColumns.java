@@ -0,0 +1,395 @@
+package study.querydsl.repository.support;
+
+import study.querydsl.dto.MemberTeamDto;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * MemberColumnStore 의 데이터. Member × Team 을 행 번호가 같은 원시 타입 배열(열) 로 들고 있다.
+ * - member 열 : memberIds(long[]), usernames, ages(int[]), teamRefs(int[], team 차원의 번호, 팀이 없으면 -1)
+ * - team 차원 : teamIds(long[]), teamNameCodes(int[]) -> names (팀 이름 사전)
+ * - 색인 : username -> 행 번호 목록(해시), (age, 행 번호) 순으로 정렬한 행 번호
+ * 지운 회원은 live 에서만 빼고, 자리는 지운 행이 많아지면 compact 가 정리한다.
+ * 스레드 안전하지 않다. 잠금은 MemberColumnStore 가 한다.
+ */
+final class MemberColumns {
+
+    private static final int NO_TEAM = -1;
+    private static final int NO_NAME = -1;
+    private static final int[] EMPTY = new int[0];
+    // 정렬된 age 색인 밖에서 따로 보는 행이 이보다 많아지면 색인을 다시 만든다
+    private static final int MIN_AGE_TAIL = 1024;
+    private static final int MIN_DEAD_ROWS = 1024;
+
+    private long[] memberIds;
+    private String[] usernames;
+    private int[] ages;
+    private int[] teamRefs;
+    private int size;
+    private final BitSet live = new BitSet();
+    private int liveCount;
+    private final Map<Long, Integer> rowById = new HashMap<>();
+    private final Map<String, IntList> rowsByUsername = new HashMap<>();
+
+    private long[] teamIds = new long[16];
+    private int[] teamNameCodes = new int[16];
+    private int teamCount;
+    private final Map<Long, Integer> teamRefById = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+    private final Map<String, Integer> nameCodes = new HashMap<>();
+
+    // ageOrder 는 만들 때 살아 있던 행을 (age, 행 번호) 순으로, ageKeys 는 그때의 age.
+    // 그 뒤에 추가되거나 나이가 바뀐 행은 ageTail 에 모으고 ageDirty 로 표시해서 정렬된 쪽에서는 건너뛴다
+    private int[] ageOrder = EMPTY;
+    private int[] ageKeys = EMPTY;
+    private final BitSet ageDirty = new BitSet();
+    private final IntList ageTail = new IntList();
+
+    MemberColumns(int capacity) {
+        int initial = Math.max(16, capacity);
+        this.memberIds = new long[initial];
+        this.usernames = new String[initial];
+        this.ages = new int[initial];
+        this.teamRefs = new int[initial];
+    }
+
+    int rows() {
+        return liveCount;
+    }
+
+    void putTeam(long teamId, String name) {
+        Integer ref = teamRefById.get(teamId);
+        if (ref == null) {
+            if (teamCount == teamIds.length) {
+                teamIds = Arrays.copyOf(teamIds, teamCount * 2);
+                teamNameCodes = Arrays.copyOf(teamNameCodes, teamCount * 2);
+            }
+            ref = teamCount++;
+            teamIds[ref] = teamId;
+            teamRefById.put(teamId, ref);
+        }
+        teamNameCodes[ref] = nameCode(name);
+    }
+
+    /**
+     * 지운 팀을 가리키는 회원은 FK 때문에 남아 있을 수 없으므로 이름만 지운다
+     */
+    void removeTeam(long teamId) {
+        Integer ref = teamRefById.remove(teamId);
+        if (ref != null) {
+            teamNameCodes[ref] = NO_NAME;
+        }
+    }
+
+    /**
+     * 모르는 팀을 가리키면(엔티티 이벤트 없이 추가된 팀) false. 부분만 반영된 상태가 되므로 호출한 쪽이 버려야 한다
+     */
+    boolean putMember(long memberId, String username, int age, Long teamId) {
+        int teamRef = NO_TEAM;
+        if (teamId != null) {
+            Integer ref = teamRefById.get(teamId);
+            if (ref == null) {
+                return false;
+            }
+            teamRef = ref;
+        }
+
+        Integer existing = rowById.get(memberId);
+        if (existing == null) {
+            int row = append(memberId, username, age, teamRef);
+            markAgeChanged(row);
+            return true;
+        }
+
+        int row = existing;
+        if (!Objects.equals(usernames[row], username)) {
+            unindexUsername(row);
+            usernames[row] = username;
+            indexUsername(row);
+        }
+        if (ages[row] != age) {
+            ages[row] = age;
+            markAgeChanged(row);
+        }
+        teamRefs[row] = teamRef;
+        return true;
+    }
+
+    void removeMember(long memberId) {
+        Integer row = rowById.remove(memberId);
+        if (row == null) {
+            return;
+        }
+        unindexUsername(row);
+        live.clear(row);
+        liveCount--;
+        // 정렬된 age 색인에서 건너뛰게 한다 (ageTail 에서는 live 로 거른다)
+        ageDirty.set(row);
+    }
+
+    /**
+     * 변경을 반영한 뒤에 부른다. 지운 행이 많으면 자리를 정리하고, age 색인 밖의 행이 많으면 색인을 다시 만든다
+     */
+    void maintain() {
+        if (size - liveCount > Math.max(MIN_DEAD_ROWS, liveCount / 4)) {
+            compact();
+        } else if (ageTail.size() > Math.max(MIN_AGE_TAIL, liveCount / 8)) {
+            buildAgeIndex();
+        }
+    }
+
+    /**
+     * 조건에 맞는 행 번호 (행 번호 순). 조건 값이 null 이면 그 조건은 무시한다
+     * username 이 있으면 해시 색인, age 범위가 전체의 1/4 보다 좁으면 age 색인, 아니면 live 행을 훑는다.
+     */
+    int[] select(String username, String teamName, Integer ageGoe, Integer ageLoe) {
+        int nameCode = NO_NAME;
+        if (teamName != null) {
+            Integer code = nameCodes.get(teamName);
+            if (code == null) {
+                return EMPTY;
+            }
+            nameCode = code;
+        }
+        int min = ageGoe != null ? ageGoe : Integer.MIN_VALUE;
+        int max = ageLoe != null ? ageLoe : Integer.MAX_VALUE;
+        if (min > max) {
+            return EMPTY;
+        }
+
+        IntList selected = new IntList();
+        if (username != null) {
+            IntList rows = rowsByUsername.get(username);
+            if (rows == null) {
+                return EMPTY;
+            }
+            for (int i = 0; i < rows.size(); i++) {
+                int row = rows.get(i);
+                if (matches(row, nameCode, min, max)) {
+                    selected.add(row);
+                }
+            }
+            return selected.toSortedArray();
+        }
+
+        if (ageGoe != null || ageLoe != null) {
+            int from = lowerBound(ageKeys, min);
+            int to = max == Integer.MAX_VALUE ? ageKeys.length : lowerBound(ageKeys, max + 1);
+            if ((to - from) + ageTail.size() < liveCount / 4) {
+                for (int i = from; i < to; i++) {
+                    int row = ageOrder[i];
+                    if (!ageDirty.get(row) && live.get(row) && teamMatches(row, nameCode)) {
+                        selected.add(row);
+                    }
+                }
+                for (int i = 0; i < ageTail.size(); i++) {
+                    int row = ageTail.get(i);
+                    if (live.get(row) && matches(row, nameCode, min, max)) {
+                        selected.add(row);
+                    }
+                }
+                return selected.toSortedArray();
+            }
+        }
+
+        for (int row = live.nextSetBit(0); row >= 0; row = live.nextSetBit(row + 1)) {
+            if (matches(row, nameCode, min, max)) {
+                selected.add(row);
+            }
+        }
+        return selected.toArray();
+    }
+
+    MemberTeamDto toDto(int row) {
+        int teamRef = teamRefs[row];
+        if (teamRef == NO_TEAM) {
+            return new MemberTeamDto(memberIds[row], usernames[row], ages[row], null, null);
+        }
+        int nameCode = teamNameCodes[teamRef];
+        return new MemberTeamDto(memberIds[row], usernames[row], ages[row], teamIds[teamRef],
+                nameCode == NO_NAME ? null : names.get(nameCode));
+    }
+
+    private boolean matches(int row, int nameCode, int min, int max) {
+        int age = ages[row];
+        return age >= min && age <= max && teamMatches(row, nameCode);
+    }
+
+    private boolean teamMatches(int row, int nameCode) {
+        if (nameCode == NO_NAME) {
+            return true;
+        }
+        int teamRef = teamRefs[row];
+        return teamRef != NO_TEAM && teamNameCodes[teamRef] == nameCode;
+    }
+
+    private int nameCode(String name) {
+        if (name == null) {
+            return NO_NAME;
+        }
+        Integer code = nameCodes.get(name);
+        if (code == null) {
+            code = names.size();
+            names.add(name);
+            nameCodes.put(name, code);
+        }
+        return code;
+    }
+
+    private int append(long memberId, String username, int age, int teamRef) {
+        if (size == memberIds.length) {
+            int capacity = size * 2;
+            memberIds = Arrays.copyOf(memberIds, capacity);
+            usernames = Arrays.copyOf(usernames, capacity);
+            ages = Arrays.copyOf(ages, capacity);
+            teamRefs = Arrays.copyOf(teamRefs, capacity);
+        }
+        int row = size++;
+        memberIds[row] = memberId;
+        usernames[row] = username;
+        ages[row] = age;
+        teamRefs[row] = teamRef;
+        live.set(row);
+        liveCount++;
+        rowById.put(memberId, row);
+        indexUsername(row);
+        return row;
+    }
+
+    private void indexUsername(int row) {
+        if (usernames[row] != null) {
+            rowsByUsername.computeIfAbsent(usernames[row], u -> new IntList()).add(row);
+        }
+    }
+
+    private void unindexUsername(int row) {
+        if (usernames[row] == null) {
+            return;
+        }
+        IntList rows = rowsByUsername.get(usernames[row]);
+        if (rows != null && rows.remove(row) && rows.size() == 0) {
+            rowsByUsername.remove(usernames[row]);
+        }
+    }
+
+    private void markAgeChanged(int row) {
+        if (!ageDirty.get(row)) {
+            ageDirty.set(row);
+            ageTail.add(row);
+        }
+    }
+
+    /**
+     * (age, 행 번호) 를 long 하나로 묶어서 원시 타입 정렬을 쓴다
+     */
+    void buildAgeIndex() {
+        long[] keys = new long[liveCount];
+        int n = 0;
+        for (int row = live.nextSetBit(0); row >= 0; row = live.nextSetBit(row + 1)) {
+            keys[n++] = ((long) ages[row] << 32) | row;
+        }
+        Arrays.sort(keys, 0, n);
+        int[] order = new int[n];
+        int[] ageValues = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = (int) keys[i];
+            ageValues[i] = (int) (keys[i] >> 32);
+        }
+        ageOrder = order;
+        ageKeys = ageValues;
+        ageDirty.clear();
+        ageTail.clear();
+    }
+
+    /**
+     * 살아 있는 행만 앞으로 당기고 색인을 다시 만든다. 행 번호 순서(적재 순서) 는 그대로
+     */
+    private void compact() {
+        int write = 0;
+        for (int row = live.nextSetBit(0); row >= 0; row = live.nextSetBit(row + 1)) {
+            memberIds[write] = memberIds[row];
+            usernames[write] = usernames[row];
+            ages[write] = ages[row];
+            teamRefs[write] = teamRefs[row];
+            write++;
+        }
+        Arrays.fill(usernames, write, size, null);
+        size = write;
+        live.clear();
+        live.set(0, size);
+        liveCount = size;
+        rowById.clear();
+        rowsByUsername.clear();
+        for (int row = 0; row < size; row++) {
+            rowById.put(memberIds[row], row);
+            indexUsername(row);
+        }
+        buildAgeIndex();
+    }
+
+    private static int lowerBound(int[] values, int key) {
+        int low = 0;
+        int high = values.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static final class IntList {
+
+        private int[] values = new int[4];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        boolean remove(int value) {
+            for (int i = 0; i < size; i++) {
+                if (values[i] == value) {
+                    System.arraycopy(values, i + 1, values, i, size - i - 1);
+                    size--;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        int get(int index) {
+            return values[index];
+        }
+
+        int size() {
+            return size;
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+
+        int[] toSortedArray() {
+            int[] array = toArray();
+            Arrays.sort(array);
+            return array;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package study.querydsl.repository.support;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import study.querydsl.datasource.ReplicaProperties;
+import study.querydsl.datasource.ReplicaRouting;
+import study.querydsl.dto.MemberSearchCondition;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+/**
+ * searchPageComplex 의 count 쿼리 결과 캐시
+ * 키는 정규화한 MemberSearchCondition, member/team 변경이 커밋되면 전부 비운다.
+ * 비운 직후에 아직 따라오지 못한 복제본에서 센 값을 저장하면 ttl 동안 틀린 값이 나가므로 primary 에서 센 값만 저장한다.
+ * 그래서 복제본이 설정돼 있으면 거의 저장되지 않는다 (MemberSearchCache 와 같다).
+ */
+@Slf4j
+@Component
+public class MemberCountCache {
+
+    private final Cache<MemberSearchCondition, Long> cache;
+    private final DataChangeTracker tracker;
+
+    public MemberCountCache(DataChangeTracker tracker,
+                            MeterRegistry meterRegistry,
+                            ReplicaProperties replicaProperties,
+                            @Value("${querydsl.cache.count.maximum-size:10000}") long maximumSize,
+                            @Value("${querydsl.cache.count.ttl:30s}") Duration ttl) {
+        this.tracker = tracker;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "member.count");
+        if (!replicaProperties.getReplicas().isEmpty()) {
+            log.info("member count cache stores primary counts only, reads may go to replicas");
+        }
+    }
+
+    public long get(MemberSearchCondition condition, LongSupplier countQuery) {
+        // 커밋 안 된 변경이 보이는 트랜잭션에서는 캐시를 쓰지 않는다
+        if (tracker.hasPendingChanges()) {
+            return countQuery.getAsLong();
+        }
+        MemberSearchCondition key = condition.normalized();
+        Long cached = cache.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        long version = tracker.version();
+        long total = countQuery.getAsLong();
+        // 세는 동안 커밋된 쓰기가 있거나 복제본에서 셌으면 저장하지 않음
+        if (tracker.version() == version && !ReplicaRouting.isReadingFromReplica()) {
+            cache.put(key, total);
+        }
+        return total;
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    @EventListener
+    public void onDataChanged(DataChangedEvent event) {
+        if (event.affects("member", "team")) {
+            cache.invalidateAll();
+        }
+    }
+}
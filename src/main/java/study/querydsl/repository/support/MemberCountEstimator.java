@@ -0,0 +1,89 @@
+package study.querydsl.repository.support;
+
+import org.springframework.stereotype.Component;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.UsernameMatch;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+
+import static org.springframework.util.StringUtils.hasText;
+
+/**
+ * count 쿼리 없이 H2 통계로 검색 결과 건수를 어림한다. 정확한 건수가 필요 없는 화면(무한 스크롤의 "약 n건")용.
+ * - 전체 행 수 : INFORMATION_SCHEMA.TABLES.ROW_COUNT_ESTIMATE
+ * - username(EXACT) / team.name = ? : COLUMNS.SELECTIVITY (서로 다른 값의 비율 %, ANALYZE 때 갱신)
+ * - age 범위 : 인덱스(idx_member_age) 로 바로 읽는 min/max 사이에 고르게 분포한다고 본다
+ * 조건끼리는 서로 독립이라고 보고 곱한다.
+ */
+@Component
+public class MemberCountEstimator {
+
+    private final EntityManager em;
+
+    public MemberCountEstimator(EntityManager em) {
+        this.em = em;
+    }
+
+    /**
+     * 조건마다 어림할 통계가 있으면 true. username 앞부분 / 포함 검색은 통계가 없어서 estimate 가 거르지 않은 건수(많게) 를 돌려준다
+     */
+    public boolean hasStatistics(MemberSearchCondition condition) {
+        return !hasText(condition.getUsername())
+                || condition.getUsernameMatch() == null
+                || condition.getUsernameMatch() == UsernameMatch.EXACT;
+    }
+
+    public long estimate(MemberSearchCondition condition) {
+        double members = rowCount("MEMBER");
+        if (members <= 0) {
+            return 0;
+        }
+        double rows = members;
+        // 앞부분 / 포함 검색은 어림할 통계가 없어서 거르지 않은 것으로 본다 (많게 어림)
+        if (hasText(condition.getUsername()) && condition.getUsernameMatch() == UsernameMatch.EXACT) {
+            rows /= distinct(members, selectivity("MEMBER", "USERNAME"));
+        }
+        if (hasText(condition.getTeamName())) {
+            double teams = Math.max(1, rowCount("TEAM"));
+            rows /= distinct(teams, selectivity("TEAM", "NAME"));
+        }
+        if (condition.getAgeGoe() != null || condition.getAgeLoe() != null) {
+            rows *= ageFraction(condition.getAgeGoe(), condition.getAgeLoe());
+        }
+        return Math.round(rows);
+    }
+
+    private double ageFraction(Integer ageGoe, Integer ageLoe) {
+        Object[] minMax = (Object[]) em.createNativeQuery("select min(age), max(age) from member").getSingleResult();
+        if (minMax[0] == null) {
+            return 0;
+        }
+        int min = ((Number) minMax[0]).intValue();
+        int max = ((Number) minMax[1]).intValue();
+        int from = ageGoe != null ? Math.max(min, ageGoe) : min;
+        int to = ageLoe != null ? Math.min(max, ageLoe) : max;
+        return to < from ? 0 : (to - from + 1) / (double) (max - min + 1);
+    }
+
+    private static double distinct(double rows, int selectivity) {
+        return Math.max(1, rows * selectivity / 100.0);
+    }
+
+    private double rowCount(String table) {
+        List<?> result = em.createNativeQuery("select row_count_estimate from information_schema.tables"
+                        + " where table_schema = schema() and table_name = ?1")
+                .setParameter(1, table)
+                .getResultList();
+        return result.isEmpty() ? 0 : ((Number) result.get(0)).doubleValue();
+    }
+
+    private int selectivity(String table, String column) {
+        List<?> result = em.createNativeQuery("select selectivity from information_schema.columns"
+                        + " where table_schema = schema() and table_name = ?1 and column_name = ?2")
+                .setParameter(1, table)
+                .setParameter(2, column)
+                .getResultList();
+        return result.isEmpty() ? 100 : ((Number) result.get(0)).intValue();
+    }
+}
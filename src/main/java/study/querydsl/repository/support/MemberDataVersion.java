@@ -0,0 +1,76 @@
+package study.querydsl.repository.support;
+
+import lombok.Getter;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * member / team 데이터 버전. 둘 중 하나라도 바뀌는 쓰기가 커밋되면 올라간다.
+ * 엔티티 flush 와 JPAUpdateClause / JPADeleteClause.execute(), 네이티브 SQL 모두 DataChangeTracker 가 커밋 시점에 잡는다.
+ * 다른 테이블만 바뀐 커밋은 버전을 올리지 않는다.
+ * 메모리에만 있으므로 서버가 다시 뜨면 epoch 가 바뀌고, 다른 서버의 쓰기는 보지 못한다.
+ */
+@Component
+public class MemberDataVersion {
+
+    private final AtomicReference<Snapshot> current;
+
+    public MemberDataVersion() {
+        long now = System.currentTimeMillis();
+        this.current = new AtomicReference<>(new Snapshot(now, 0, ceilSecond(now)));
+    }
+
+    public Snapshot current() {
+        return current.get();
+    }
+
+    @EventListener
+    public void onDataChanged(DataChangedEvent event) {
+        if (event.affects("member", "team")) {
+            long now = ceilSecond(System.currentTimeMillis());
+            current.updateAndGet(snapshot -> new Snapshot(snapshot.epoch, snapshot.version + 1, now));
+        }
+    }
+
+    /**
+     * HTTP 날짜(Last-Modified) 는 초 단위라서 잘라내면 실제로 바뀐 시각보다 앞선 값이 나간다. 다음 초로 올린다
+     */
+    private static long ceilSecond(long millis) {
+        return (millis + 999) / 1000 * 1000;
+    }
+
+    @Getter
+    public static final class Snapshot {
+
+        private final long epoch;
+        private final long version;
+        // 마지막으로 버전이 오른 시각 (ms, 초 단위로 올림)
+        private final long lastModified;
+
+        Snapshot(long epoch, long version, long lastModified) {
+            this.epoch = epoch;
+            this.version = version;
+            this.lastModified = lastModified;
+        }
+
+        /**
+         * ETag 값. 서버가 다시 떠서 version 을 0 부터 다시 세도 이전 값과 겹치지 않게 epoch 를 붙인다
+         */
+        public String etag() {
+            return etag(null);
+        }
+
+        /**
+         * 같은 데이터라도 표현(JSON, Smile, 열 단위 JSON) 마다 본문이 다르므로 variant(Accept) 별로 다른 ETag 를 쓴다
+         */
+        public String etag(String variant) {
+            String tag = Long.toString(epoch, 36) + "-" + version;
+            if (variant != null && !variant.isEmpty()) {
+                tag += "-" + Integer.toHexString(variant.hashCode());
+            }
+            return "\"" + tag + "\"";
+        }
+    }
+}
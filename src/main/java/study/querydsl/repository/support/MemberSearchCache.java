@@ -0,0 +1,174 @@
+package study.querydsl.repository.support;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.EqualsAndHashCode;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+import study.querydsl.datasource.ReplicaProperties;
+import study.querydsl.datasource.ReplicaRouting;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * search / searchPage* 의 content 결과 캐시
+ * 1. 키는 정규화한 MemberSearchCondition + 페이지(offset, size, sort)
+ * 2. 크기는 항목 수가 아니라 캐시된 행 수(maximum-rows) 로 제한한다
+ * 3. member/team 변경이 커밋되면 전부 비운다 (엔티티 flush, JPAUpdateClause/JPADeleteClause 모두 DataChangeTracker 가 잡는다)
+ * 4. 같은 검색을 동시에 부른 요청을 한 번의 실행으로 묶는 것은 트랜잭션 밖의 MemberSearchService 가 한다.
+ *    여기(저장소의 읽기 전용 트랜잭션 안) 에서 묶으면 기다리는 요청마다 커넥션을 하나씩 붙잡고 있게 된다
+ * 5. primary 에서 읽은 결과만 저장한다. 비운 직후 아직 따라오지 못한 복제본에서 읽은 결과가 ttl 동안 나가지 않게 (ReplicaRouting).
+ *    복제본이 설정돼 있으면 읽기 전용 트랜잭션은 대부분 복제본으로 가서 거의 저장되지 않는다. 복제본으로 읽기를 나누는 대신 캐시를 포기한다
+ * 캐시된 목록은 여러 요청이 공유하므로 수정할 수 없다.
+ */
+@Slf4j
+@Component
+public class MemberSearchCache {
+
+    private final Cache<Key, List<MemberTeamDto>> cache;
+    private final DataChangeTracker tracker;
+    private final boolean enabled;
+
+    public MemberSearchCache(DataChangeTracker tracker,
+                             MeterRegistry meterRegistry,
+                             ReplicaProperties replicaProperties,
+                             @Value("${querydsl.cache.search.enabled:true}") boolean enabled,
+                             @Value("${querydsl.cache.search.maximum-rows:100000}") long maximumRows,
+                             @Value("${querydsl.cache.search.ttl:30s}") Duration ttl) {
+        this.tracker = tracker;
+        this.enabled = enabled;
+        this.cache = Caffeine.newBuilder()
+                // 빈 결과도 한 자리는 차지하게
+                .<Key, List<MemberTeamDto>>weigher((key, rows) -> rows.size() + 1)
+                .maximumWeight(maximumRows)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "member.search");
+        Gauge.builder("member.search.cache.hit.ratio", cache, c -> c.stats().hitRate())
+                .register(meterRegistry);
+        if (enabled && !replicaProperties.getReplicas().isEmpty()) {
+            log.info("member search cache stores primary reads only, reads may go to replicas");
+        }
+    }
+
+    public List<MemberTeamDto> get(MemberSearchCondition condition, Pageable pageable, Supplier<List<MemberTeamDto>> query) {
+        return pageable.isPaged()
+                ? get(condition, pageable.getOffset(), pageable.getPageSize(), pageable.getSort(), query)
+                : get(condition, -1, -1, pageable.getSort(), query);
+    }
+
+    /**
+     * offset 부터 limit 건 (-1 이면 전체). Slice 처럼 페이지 크기보다 더 읽는 조회용
+     */
+    public List<MemberTeamDto> get(MemberSearchCondition condition, long offset, int limit, Sort sort,
+                                   Supplier<List<MemberTeamDto>> query) {
+        // 커밋 안 된 변경이 보이는 트랜잭션의 결과는 저장하지 않는다
+        if (tracker.hasPendingChanges()) {
+            return query.get();
+        }
+        Key key = new Key(condition.normalized(), offset, limit, sort);
+        if (enabled) {
+            List<MemberTeamDto> cached = cache.getIfPresent(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        long version = tracker.version();
+        List<MemberTeamDto> rows = Collections.unmodifiableList(query.get());
+        // 조회하는 동안 커밋된 쓰기가 있거나 복제본에서 읽었으면 저장하지 않음
+        if (cacheable(version)) {
+            cache.put(key, rows);
+        }
+        return rows;
+    }
+
+    /**
+     * 조건 여러 개의 전체 결과(search). 캐시에 없는 조건만 모아서 query 한 번에 넘기고, 결과를 조건마다 저장한다.
+     * query 는 받은 조건마다 결과를 돌려줘야 한다
+     */
+    public Map<MemberSearchCondition, List<MemberTeamDto>> getAll(
+            Collection<MemberSearchCondition> conditions,
+            Function<List<MemberSearchCondition>, Map<MemberSearchCondition, List<MemberTeamDto>>> query) {
+        if (tracker.hasPendingChanges()) {
+            return query.apply(new ArrayList<>(conditions));
+        }
+        Map<MemberSearchCondition, List<MemberTeamDto>> result = new HashMap<>();
+        List<MemberSearchCondition> misses = new ArrayList<>();
+        for (MemberSearchCondition condition : conditions) {
+            List<MemberTeamDto> cached = enabled ? cache.getIfPresent(unpaged(condition)) : null;
+            if (cached != null) {
+                result.put(condition, cached);
+            } else {
+                misses.add(condition);
+            }
+        }
+        if (misses.isEmpty()) {
+            return result;
+        }
+
+        long version = tracker.version();
+        query.apply(misses).forEach((condition, rows) -> {
+            List<MemberTeamDto> unmodifiable = Collections.unmodifiableList(rows);
+            if (cacheable(version)) {
+                cache.put(unpaged(condition), unmodifiable);
+            }
+            result.put(condition, unmodifiable);
+        });
+        return result;
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    private boolean cacheable(long version) {
+        return enabled && tracker.version() == version && !ReplicaRouting.isReadingFromReplica();
+    }
+
+    private static Key unpaged(MemberSearchCondition condition) {
+        return new Key(condition.normalized(), -1, -1, Sort.unsorted());
+    }
+
+    @EventListener
+    public void onDataChanged(DataChangedEvent event) {
+        if (event.affects("member", "team")) {
+            cache.invalidateAll();
+        }
+    }
+
+    @EqualsAndHashCode
+    private static final class Key {
+
+        private final MemberSearchCondition condition;
+        private final long offset;
+        private final int size;
+        private final String sort;
+
+        Key(MemberSearchCondition condition, long offset, int size, Sort sort) {
+            this.condition = condition;
+            this.offset = offset;
+            this.size = size;
+            this.sort = sort.toString();
+        }
+    }
+}
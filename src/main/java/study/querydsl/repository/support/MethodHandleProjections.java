@@ -0,0 +1,281 @@
+package study.querydsl.repository.support;
+
+import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.ExpressionException;
+import com.querydsl.core.types.FactoryExpression;
+import com.querydsl.core.types.FactoryExpressionBase;
+import com.querydsl.core.types.Operation;
+import com.querydsl.core.types.Ops;
+import com.querydsl.core.types.Path;
+import com.querydsl.core.types.Visitor;
+import org.springframework.util.ClassUtils;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Projections.bean / fields / constructor 와 같은 모양이지만 DTO 타입마다 접근자를 한 번만 만들어 둔다.
+ * - 기본 생성자, setter : LambdaMetafactory 로 만든 Supplier / BiConsumer (일반 메서드 호출과 같다)
+ * - 필드 : MethodHandle setter
+ * - 생성자 : 인자 배열을 펼쳐서 받는 MethodHandle
+ * 행마다 Constructor.newInstance / Method.invoke / Field.set 을 거치지 않는다.
+ * Projections.bean / fields 처럼 null 값은 건너뛴다.
+ */
+public final class MethodHandleProjections {
+
+    private static final ClassValue<Accessors> ACCESSORS = new ClassValue<Accessors>() {
+        @Override
+        protected Accessors computeValue(Class<?> type) {
+            return new Accessors(type);
+        }
+    };
+
+    private MethodHandleProjections() {
+    }
+
+    public static <T> FactoryExpression<T> bean(Class<? extends T> type, Expression<?>... args) {
+        Accessors accessors = ACCESSORS.get(type);
+        BiConsumer<Object, Object>[] setters = setters(args.length);
+        for (int i = 0; i < args.length; i++) {
+            setters[i] = accessors.setter(nameOf(args[i]));
+        }
+        Supplier<Object> factory = accessors.noArgs();
+        return new MethodHandleProjection<>(type, args, values -> {
+            Object instance = factory.get();
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] != null) {
+                    setters[i].accept(instance, values[i]);
+                }
+            }
+            return instance;
+        });
+    }
+
+    public static <T> FactoryExpression<T> fields(Class<? extends T> type, Expression<?>... args) {
+        Accessors accessors = ACCESSORS.get(type);
+        MethodHandle[] fields = new MethodHandle[args.length];
+        for (int i = 0; i < args.length; i++) {
+            fields[i] = accessors.field(nameOf(args[i]));
+        }
+        Supplier<Object> factory = accessors.noArgs();
+        return new MethodHandleProjection<>(type, args, values -> {
+            Object instance = factory.get();
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] != null) {
+                    fields[i].invokeExact(instance, values[i]);
+                }
+            }
+            return instance;
+        });
+    }
+
+    public static <T> FactoryExpression<T> constructor(Class<? extends T> type, Expression<?>... args) {
+        Class<?>[] parameterTypes = new Class<?>[args.length];
+        for (int i = 0; i < args.length; i++) {
+            parameterTypes[i] = args[i].getType();
+        }
+        MethodHandle constructor = ACCESSORS.get(type).constructor(parameterTypes);
+        return new MethodHandleProjection<>(type, args, values -> (Object) constructor.invokeExact(values));
+    }
+
+    /**
+     * Path 는 속성 이름, as("name") 은 별칭을 쓴다
+     */
+    private static String nameOf(Expression<?> expr) {
+        if (expr instanceof Path) {
+            return ((Path<?>) expr).getMetadata().getName();
+        }
+        if (expr instanceof Operation && ((Operation<?>) expr).getOperator() == Ops.ALIAS) {
+            Expression<?> alias = ((Operation<?>) expr).getArg(1);
+            if (alias instanceof Path) {
+                return ((Path<?>) alias).getMetadata().getName();
+            }
+        }
+        throw new IllegalArgumentException("cannot resolve property name of " + expr + ", use as(\"name\")");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static BiConsumer<Object, Object>[] setters(int length) {
+        return new BiConsumer[length];
+    }
+
+    @FunctionalInterface
+    private interface Factory {
+        Object create(Object[] values) throws Throwable;
+    }
+
+    private static final class MethodHandleProjection<T> extends FactoryExpressionBase<T> {
+
+        private final List<Expression<?>> args;
+        private final Factory factory;
+
+        MethodHandleProjection(Class<? extends T> type, Expression<?>[] args, Factory factory) {
+            super(type);
+            this.args = Collections.unmodifiableList(Arrays.asList(args.clone()));
+            this.factory = factory;
+        }
+
+        @Override
+        public List<Expression<?>> getArgs() {
+            return args;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T newInstance(Object... values) {
+            try {
+                return (T) factory.create(values);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new ExpressionException(e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public <R, C> R accept(Visitor<R, C> v, C context) {
+            return v.visit(this, context);
+        }
+    }
+
+    /**
+     * DTO 타입 하나의 접근자. 처음 쓰는 속성 / 생성자만 만들어서 캐시한다.
+     */
+    private static final class Accessors {
+
+        private final Class<?> type;
+        private final MethodHandles.Lookup lookup;
+        private final Map<String, BiConsumer<Object, Object>> setters = new ConcurrentHashMap<>();
+        private final Map<String, MethodHandle> fields = new ConcurrentHashMap<>();
+        private final Map<List<Class<?>>, MethodHandle> constructors = new ConcurrentHashMap<>();
+        private volatile Supplier<Object> noArgs;
+
+        Accessors(Class<?> type) {
+            this.type = type;
+            try {
+                this.lookup = MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+            } catch (IllegalAccessException e) {
+                throw new IllegalArgumentException("cannot access " + type.getName(), e);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        Supplier<Object> noArgs() {
+            if (noArgs == null) {
+                try {
+                    MethodHandle constructor = lookup.findConstructor(type, MethodType.methodType(void.class));
+                    CallSite site = LambdaMetafactory.metafactory(lookup, "get",
+                            MethodType.methodType(Supplier.class),
+                            MethodType.methodType(Object.class),
+                            constructor,
+                            MethodType.methodType(type));
+                    noArgs = (Supplier<Object>) site.getTarget().invoke();
+                } catch (NoSuchMethodException e) {
+                    throw new IllegalArgumentException(type.getName() + " has no default constructor", e);
+                } catch (Throwable e) {
+                    throw new ExpressionException("cannot bind default constructor of " + type.getName(), e);
+                }
+            }
+            return noArgs;
+        }
+
+        BiConsumer<Object, Object> setter(String property) {
+            return setters.computeIfAbsent(property, this::bindSetter);
+        }
+
+        MethodHandle field(String property) {
+            return fields.computeIfAbsent(property, this::bindField);
+        }
+
+        MethodHandle constructor(Class<?>[] argTypes) {
+            return constructors.computeIfAbsent(Arrays.asList(argTypes), this::bindConstructor);
+        }
+
+        @SuppressWarnings("unchecked")
+        private BiConsumer<Object, Object> bindSetter(String property) {
+            Method method = findSetter(property);
+            try {
+                Class<?> parameterType = method.getParameterTypes()[0];
+                CallSite site = LambdaMetafactory.metafactory(lookup, "accept",
+                        MethodType.methodType(BiConsumer.class),
+                        MethodType.methodType(void.class, Object.class, Object.class),
+                        lookup.unreflect(method),
+                        MethodType.methodType(void.class, type, ClassUtils.resolvePrimitiveIfNecessary(parameterType)));
+                return (BiConsumer<Object, Object>) site.getTarget().invoke();
+            } catch (Throwable e) {
+                throw new ExpressionException("cannot bind setter " + method, e);
+            }
+        }
+
+        private Method findSetter(String property) {
+            String name = "set" + Character.toUpperCase(property.charAt(0)) + property.substring(1);
+            for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+                for (Method method : c.getDeclaredMethods()) {
+                    if (method.getName().equals(name) && method.getParameterCount() == 1
+                            && !Modifier.isStatic(method.getModifiers())) {
+                        return method;
+                    }
+                }
+            }
+            throw new IllegalArgumentException(type.getName() + " has no setter for " + property);
+        }
+
+        private MethodHandle bindField(String property) {
+            for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+                try {
+                    Field field = c.getDeclaredField(property);
+                    return MethodHandles.privateLookupIn(c, MethodHandles.lookup())
+                            .unreflectSetter(field)
+                            .asType(MethodType.methodType(void.class, Object.class, Object.class));
+                } catch (NoSuchFieldException e) {
+                    // 상위 타입에서 찾는다
+                } catch (IllegalAccessException e) {
+                    throw new ExpressionException("cannot access field " + property + " of " + c.getName(), e);
+                }
+            }
+            throw new IllegalArgumentException(type.getName() + " has no field " + property);
+        }
+
+        private MethodHandle bindConstructor(List<Class<?>> argTypes) {
+            for (Constructor<?> constructor : type.getDeclaredConstructors()) {
+                if (accepts(constructor.getParameterTypes(), argTypes)) {
+                    try {
+                        return lookup.unreflectConstructor(constructor)
+                                .asSpreader(Object[].class, argTypes.size())
+                                .asType(MethodType.methodType(Object.class, Object[].class));
+                    } catch (IllegalAccessException e) {
+                        throw new ExpressionException("cannot access " + constructor, e);
+                    }
+                }
+            }
+            throw new IllegalArgumentException(type.getName() + " has no constructor for " + argTypes);
+        }
+
+        private static boolean accepts(Class<?>[] parameterTypes, List<Class<?>> argTypes) {
+            if (parameterTypes.length != argTypes.size()) {
+                return false;
+            }
+            for (int i = 0; i < parameterTypes.length; i++) {
+                Class<?> parameterType = ClassUtils.resolvePrimitiveIfNecessary(parameterTypes[i]);
+                if (!parameterType.isAssignableFrom(ClassUtils.resolvePrimitiveIfNecessary(argTypes.get(i)))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package study.querydsl.repository.support;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.data.domain.Slice;
+import org.springframework.stereotype.Component;
+import study.querydsl.dto.KeysetPage;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.UsernameMatch;
+
+import java.util.Collection;
+import java.util.Optional;
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.util.StringUtils.hasText;
+
+/**
+ * MemberRepositoryImpl(MemberRepositoryCusTom), MemberJapRepository 의 public 메서드 계측
+ * - member.repository.calls      : 호출 시간 (histogram, p99 알림용)
+ * - member.repository.rows       : 반환 행 수
+ * - member.repository.statements : 호출당 실행된 SQL 수
+ * - member.repository.query      : content / count 쿼리 시간
+ * 태그 method, shape(검색 조건 중 값이 있는 필드. 예: teamName+ageGoe)
+ */
+@Aspect
+@Component
+public class RepositoryMetricsAspect {
+
+    private final MeterRegistry registry;
+
+    public RepositoryMetricsAspect(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Around("execution(public * study.querydsl.repository.MemberRepositoryImpl.*(..))"
+            + " || execution(public * study.querydsl.repository.MemberJapRepository.*(..))")
+    public Object measure(ProceedingJoinPoint joinPoint) throws Throwable {
+        Tags tags = Tags.of("method", joinPoint.getSignature().getName(), "shape", shapeOf(joinPoint.getArgs()));
+        String outcome = "success";
+        long start = System.nanoTime();
+        try (SqlStatementScope scope = SqlStatementScope.open()) {
+            try {
+                Object result = joinPoint.proceed();
+                rowsOf(result).ifPresent(rows -> summary("member.repository.rows", tags).record(rows));
+                return result;
+            } catch (Throwable e) {
+                outcome = "error";
+                throw e;
+            } finally {
+                Timer.builder("member.repository.calls")
+                        .tags(tags).tag("outcome", outcome)
+                        .publishPercentileHistogram()
+                        .register(registry)
+                        .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                summary("member.repository.statements", tags).record(scope.getStatements());
+                if (scope.getStatements() > scope.getCountStatements()) {
+                    queryTimer(tags, "content").record(scope.getContentNanos(), TimeUnit.NANOSECONDS);
+                }
+                if (scope.getCountStatements() > 0) {
+                    queryTimer(tags, "count").record(scope.getCountNanos(), TimeUnit.NANOSECONDS);
+                }
+            }
+        }
+    }
+
+    static String shapeOf(Object[] args) {
+        for (Object arg : args) {
+            if (arg instanceof MemberSearchCondition) {
+                MemberSearchCondition condition = (MemberSearchCondition) arg;
+                StringJoiner shape = new StringJoiner("+");
+                if (hasText(condition.getUsername())) {
+                    UsernameMatch match = condition.getUsernameMatch();
+                    shape.add(match == UsernameMatch.PREFIX ? "usernamePrefix"
+                            : match == UsernameMatch.CONTAINS ? "usernameContains" : "username");
+                }
+                if (hasText(condition.getTeamName())) {
+                    shape.add("teamName");
+                }
+                if (condition.getAgeGoe() != null) {
+                    shape.add("ageGoe");
+                }
+                if (condition.getAgeLoe() != null) {
+                    shape.add("ageLoe");
+                }
+                return shape.length() == 0 ? "none" : shape.toString();
+            }
+        }
+        return "n/a";
+    }
+
+    private Optional<Integer> rowsOf(Object result) {
+        if (result instanceof Collection) {
+            return Optional.of(((Collection<?>) result).size());
+        }
+        if (result instanceof Slice) {
+            return Optional.of(((Slice<?>) result).getNumberOfElements());
+        }
+        if (result instanceof KeysetPage) {
+            return Optional.of(((KeysetPage<?>) result).getContent().size());
+        }
+        if (result instanceof Optional) {
+            return Optional.of(((Optional<?>) result).isPresent() ? 1 : 0);
+        }
+        return Optional.empty();
+    }
+
+    private DistributionSummary summary(String name, Tags tags) {
+        return DistributionSummary.builder(name)
+                .tags(tags)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    private Timer queryTimer(Tags tags, String query) {
+        return Timer.builder("member.repository.query")
+                .tags(tags).tag("query", query)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+}
@@ -0,0 +1,82 @@
+package study.querydsl.repository.support;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * 같은 키로 동시에 들어온 호출은 먼저 온 호출(leader) 의 실행 하나를 같이 기다려서 같은 결과(또는 예외) 를 받는다.
+ * 결과를 저장하지 않는다. 실행이 끝나면 다음 호출은 새로 실행한다.
+ * 기다리는 쪽이 붙잡고 있는 자원(커넥션 등) 이 없어야 하므로 트랜잭션 밖에서 부른다.
+ * maxWait 안에 leader 가 끝나지 않으면 더 기다리지 않고 직접 실행한다.
+ * 메트릭: {name}.single.flight.calls (result=executed|collapsed|timed-out), {name}.single.flight.in.flight
+ */
+public class SingleFlight<K, V> {
+
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final Counter executed;
+    private final Counter collapsed;
+    private final Counter timedOut;
+    private final Duration maxWait;
+
+    public SingleFlight(String name, Duration maxWait, MeterRegistry meterRegistry) {
+        this.maxWait = maxWait;
+        this.executed = Counter.builder(name + ".single.flight.calls").tag("result", "executed").register(meterRegistry);
+        this.collapsed = Counter.builder(name + ".single.flight.calls").tag("result", "collapsed").register(meterRegistry);
+        this.timedOut = Counter.builder(name + ".single.flight.calls").tag("result", "timed-out").register(meterRegistry);
+        Gauge.builder(name + ".single.flight.in.flight", inFlight, Map::size).register(meterRegistry);
+    }
+
+    public V execute(K key, Supplier<V> call) {
+        CompletableFuture<V> mine = new CompletableFuture<>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            collapsed.increment();
+            return await(key, running, call);
+        }
+
+        executed.increment();
+        try {
+            V result = call.get();
+            mine.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    private V await(K key, CompletableFuture<V> running, Supplier<V> call) {
+        try {
+            return running.get(maxWait.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // leader 가 느리면 같이 묶이지 않고 따로 실행한다
+            timedOut.increment();
+            return call.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for " + key, e);
+        } catch (ExecutionException e) {
+            // leader 가 던진 예외를 그대로
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+}
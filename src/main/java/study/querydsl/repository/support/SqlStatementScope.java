@@ -0,0 +1,153 @@
+package study.querydsl.repository.support;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * 현재 스레드에서 실행된 SQL 을 모으는 범위. open() ~ close() 사이에 실행된 문장 수와 시간을 센다.
+ * 범위는 중첩될 수 있고, 열려 있는 모든 범위에 함께 기록된다. (SqlStatementListener 가 기록)
+ * 요청의 일부를 다른 스레드에서 실행하면(CountQueryExecutor) openScopes 를 넘겨서 그 스레드에서 attach 한다.
+ * 그래서 기록과 읽기는 범위마다 동기화한다.
+ */
+public class SqlStatementScope implements AutoCloseable {
+
+    private static final ThreadLocal<Deque<SqlStatementScope>> SCOPES = new ThreadLocal<>();
+    private static final Pattern COUNT_QUERY = Pattern.compile(
+            "^\\s*(?:/\\*.*?\\*/\\s*)*select\\s+count\\s*\\(", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern COMMENT = Pattern.compile("/\\*.*?\\*/", Pattern.DOTALL);
+    private static final Pattern LITERAL = Pattern.compile("'(?:[^']|'')*'|\\b\\d+\\b");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private int statements;
+    private int countStatements;
+    private long contentNanos;
+    private long countNanos;
+    private final Map<String, Integer> shapes = new HashMap<>();
+
+    public static SqlStatementScope open() {
+        Deque<SqlStatementScope> current = SCOPES.get();
+        if (current == null) {
+            current = new ArrayDeque<>();
+            SCOPES.set(current);
+        }
+        SqlStatementScope scope = new SqlStatementScope();
+        current.push(scope);
+        return scope;
+    }
+
+    static void record(String sql, long elapsedNanos) {
+        Deque<SqlStatementScope> current = SCOPES.get();
+        if (current == null) {
+            return;
+        }
+        boolean count = sql != null && COUNT_QUERY.matcher(sql).find();
+        for (SqlStatementScope scope : current) {
+            synchronized (scope) {
+                scope.add(sql, elapsedNanos, count);
+            }
+        }
+    }
+
+    /**
+     * 지금 스레드에 열려 있는 범위 (안쪽부터)
+     */
+    public static List<SqlStatementScope> openScopes() {
+        Deque<SqlStatementScope> current = SCOPES.get();
+        return current == null ? List.of() : List.copyOf(current);
+    }
+
+    /**
+     * 다른 스레드에서 연 scopes 에 기록되도록 하고 call 을 실행한다. 끝나면 이 스레드의 범위를 되돌린다
+     */
+    public static <T> T attach(List<SqlStatementScope> scopes, Supplier<T> call) {
+        Deque<SqlStatementScope> previous = SCOPES.get();
+        if (scopes.isEmpty()) {
+            SCOPES.remove();
+        } else {
+            SCOPES.set(new ArrayDeque<>(scopes));
+        }
+        try {
+            return call.get();
+        } finally {
+            if (previous == null) {
+                SCOPES.remove();
+            } else {
+                SCOPES.set(previous);
+            }
+        }
+    }
+
+    protected void add(String sql, long elapsedNanos, boolean count) {
+        statements++;
+        if (count) {
+            countStatements++;
+            countNanos += elapsedNanos;
+        } else {
+            contentNanos += elapsedNanos;
+        }
+        if (sql != null) {
+            shapes.merge(shapeOf(sql), 1, Integer::sum);
+        }
+    }
+
+    /**
+     * 주석, 리터럴, 공백을 정리한 SQL. 파라미터 값만 다른 문장은 같은 모양이 된다.
+     */
+    public static String shapeOf(String sql) {
+        String shape = COMMENT.matcher(sql).replaceAll(" ");
+        shape = LITERAL.matcher(shape).replaceAll("?");
+        return WHITESPACE.matcher(shape).replaceAll(" ").trim();
+    }
+
+    /**
+     * threshold 번 넘게 반복된 SQL 모양과 횟수 (N+1 의심)
+     */
+    public synchronized Map<String, Integer> getRepeatedShapes(int threshold) {
+        Map<String, Integer> repeated = new LinkedHashMap<>();
+        shapes.forEach((shape, count) -> {
+            if (count > threshold) {
+                repeated.put(shape, count);
+            }
+        });
+        return repeated;
+    }
+
+    public synchronized Set<String> getShapes() {
+        return Set.copyOf(shapes.keySet());
+    }
+
+    public synchronized int getStatements() {
+        return statements;
+    }
+
+    public synchronized int getCountStatements() {
+        return countStatements;
+    }
+
+    public synchronized long getContentNanos() {
+        return contentNanos;
+    }
+
+    public synchronized long getCountNanos() {
+        return countNanos;
+    }
+
+    @Override
+    public void close() {
+        Deque<SqlStatementScope> current = SCOPES.get();
+        if (current == null) {
+            return;
+        }
+        current.remove(this);
+        if (current.isEmpty()) {
+            SCOPES.remove();
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package study.querydsl.repository.support;
+
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.action.spi.AfterTransactionCompletionProcess;
+import org.hibernate.action.spi.BeforeTransactionCompletionProcess;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.proxy.HibernateProxy;
+import org.springframework.stereotype.Component;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManagerFactory;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Member / Team 엔티티 변경을 보고 team_stats 를 증분으로 갱신한다.
+ * flush 때 받은 변경을 세션(트랜잭션)마다 팀별로 모아 두었다가, 커밋 직전에 같은 트랜잭션에서 팀당 update 한 번으로 반영한다.
+ * (Envers 와 같은 BeforeTransactionCompletionProcess. 롤백되면 버린다)
+ * JPQL / Querydsl 벌크 연산과 네이티브 SQL 은 엔티티 이벤트가 없으므로 잡지 못한다 -> TeamStatsService.reconcile
+ */
+@Slf4j
+@Component
+public class TeamStatsListener implements PostInsertEventListener, PostUpdateEventListener, PostDeleteEventListener {
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final Map<EventSource, Changes> pending = new ConcurrentHashMap<>();
+
+    public TeamStatsListener(EntityManagerFactory entityManagerFactory) {
+        this.entityManagerFactory = entityManagerFactory;
+    }
+
+    @PostConstruct
+    public void register() {
+        EventListenerRegistry registry = entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry()
+                .getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_INSERT, this);
+        registry.appendListeners(EventType.POST_UPDATE, this);
+        registry.appendListeners(EventType.POST_DELETE, this);
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        if (event.getEntity() instanceof Member) {
+            Long teamId = teamId(event.getPersister(), event.getState());
+            if (teamId != null) {
+                changes(event.getSession()).add(teamId, age(event.getPersister(), event.getState()));
+            }
+        } else if (event.getEntity() instanceof Team) {
+            changes(event.getSession()).created.add((Long) event.getId());
+        }
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        if (!(event.getEntity() instanceof Member)) {
+            return;
+        }
+        EntityPersister persister = event.getPersister();
+        Long teamId = teamId(persister, event.getState());
+        int age = age(persister, event.getState());
+        Object[] oldState = event.getOldState();
+        if (oldState == null) {
+            // 준영속 엔티티를 select 없이 update 한 경우 이전 값을 모른다. 이전 팀은 reconcile 이 맞춘다
+            log.warn("member {} updated without loaded state, team stats may drift until reconcile", event.getId());
+            if (teamId != null) {
+                changes(event.getSession()).rebuild.add(teamId);
+            }
+            return;
+        }
+
+        Long oldTeamId = teamId(persister, oldState);
+        int oldAge = age(persister, oldState);
+        if (Objects.equals(oldTeamId, teamId) && oldAge == age) {
+            return;
+        }
+        Changes changes = changes(event.getSession());
+        if (oldTeamId != null) {
+            changes.remove(oldTeamId, oldAge);
+        }
+        if (teamId != null) {
+            changes.add(teamId, age);
+        }
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        if (event.getEntity() instanceof Member) {
+            Long teamId = teamId(event.getPersister(), event.getDeletedState());
+            if (teamId != null) {
+                changes(event.getSession()).remove(teamId, age(event.getPersister(), event.getDeletedState()));
+            }
+        } else if (event.getEntity() instanceof Team) {
+            changes(event.getSession()).deleted.add((Long) event.getId());
+        }
+    }
+
+    @Override
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        return false;
+    }
+
+    private Changes changes(EventSource session) {
+        return pending.computeIfAbsent(session, s -> {
+            Changes changes = new Changes();
+            s.getActionQueue().registerProcess((BeforeTransactionCompletionProcess) completing -> apply(completing, changes));
+            s.getActionQueue().registerProcess((AfterTransactionCompletionProcess) (success, completed) -> pending.remove(s));
+            return changes;
+        });
+    }
+
+    private void apply(SessionImplementor session, Changes changes) {
+        pending.remove(session);
+        for (Long teamId : changes.created) {
+            TeamStatsWriter.create(session, teamId);
+        }
+        // 팀 id 순서로 잠가서 트랜잭션끼리 교착되지 않게 한다
+        changes.teams.forEach((teamId, delta) -> {
+            int updated = delta.removed
+                    ? TeamStatsWriter.addAndResetBounds(session, teamId, delta.count, delta.ageSum)
+                    : TeamStatsWriter.add(session, teamId, delta.count, delta.ageSum, delta.minAge, delta.maxAge);
+            if (updated == 0) {
+                changes.rebuild.add(teamId);
+            }
+        });
+        for (Long teamId : changes.rebuild) {
+            TeamStatsWriter.rebuild(session, teamId);
+        }
+        for (Long teamId : changes.deleted) {
+            TeamStatsWriter.delete(session, teamId);
+        }
+    }
+
+    private static Long teamId(EntityPersister persister, Object[] state) {
+        Object team = state[persister.getEntityMetamodel().getPropertyIndex("team")];
+        if (team == null) {
+            return null;
+        }
+        if (team instanceof HibernateProxy) {
+            return (Long) ((HibernateProxy) team).getHibernateLazyInitializer().getIdentifier();
+        }
+        return ((Team) team).getId();
+    }
+
+    private static int age(EntityPersister persister, Object[] state) {
+        return (Integer) state[persister.getEntityMetamodel().getPropertyIndex("age")];
+    }
+
+    /**
+     * 한 트랜잭션에서 모은 팀별 변경
+     */
+    private static final class Changes {
+
+        private final Set<Long> created = new LinkedHashSet<>();
+        private final Map<Long, Delta> teams = new TreeMap<>();
+        private final Set<Long> rebuild = new LinkedHashSet<>();
+        private final Set<Long> deleted = new LinkedHashSet<>();
+
+        void add(Long teamId, int age) {
+            Delta delta = teams.computeIfAbsent(teamId, id -> new Delta());
+            delta.count++;
+            delta.ageSum += age;
+            delta.minAge = delta.minAge == null ? age : Math.min(delta.minAge, age);
+            delta.maxAge = delta.maxAge == null ? age : Math.max(delta.maxAge, age);
+        }
+
+        void remove(Long teamId, int age) {
+            Delta delta = teams.computeIfAbsent(teamId, id -> new Delta());
+            delta.count--;
+            delta.ageSum -= age;
+            delta.removed = true;
+        }
+    }
+
+    private static final class Delta {
+
+        private long count;
+        private long ageSum;
+        private Integer minAge;
+        private Integer maxAge;
+        // 빠진 회원이 있으면 min / max 를 다시 읽어야 한다
+        private boolean removed;
+    }
+}
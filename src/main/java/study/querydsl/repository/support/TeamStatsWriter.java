@@ -0,0 +1,69 @@
+package study.querydsl.repository.support;
+
+import org.hibernate.query.NativeQuery;
+
+import javax.persistence.EntityManager;
+
+/**
+ * team_stats 갱신 SQL. TeamStatsListener(증분) 와 TeamStatsService(재계산) 가 같이 쓴다.
+ * 네이티브 update 는 기본으로 2차 캐시 전체를 비우므로 team_stats 만 건드린다고 알려 준다.
+ */
+public final class TeamStatsWriter {
+
+    private static final String CREATE = "insert into team_stats (team_id, member_count, age_sum) values (?1, 0, 0)";
+
+    private static final String ADD = "update team_stats set member_count = member_count + ?2, age_sum = age_sum + ?3,"
+            + " min_age = least(coalesce(min_age, ?4), ?4), max_age = greatest(coalesce(max_age, ?5), ?5)"
+            + " where team_id = ?1";
+
+    // 빠진 나이가 min / max 였을 수 있으므로 경계만 member(team_id, age) 인덱스로 다시 읽는다
+    private static final String ADD_AND_RESET_BOUNDS = "update team_stats set member_count = member_count + ?2,"
+            + " age_sum = age_sum + ?3,"
+            + " min_age = (select min(age) from member where team_id = ?1),"
+            + " max_age = (select max(age) from member where team_id = ?1)"
+            + " where team_id = ?1";
+
+    private static final String REBUILD = "merge into team_stats (team_id, member_count, age_sum, min_age, max_age)"
+            + " key (team_id)"
+            + " select ?1, count(*), coalesce(sum(age), 0), min(age), max(age) from member where team_id = ?1";
+
+    private static final String DELETE = "delete from team_stats where team_id = ?1";
+
+    private TeamStatsWriter() {
+    }
+
+    public static void create(EntityManager em, Long teamId) {
+        execute(em, CREATE, teamId);
+    }
+
+    /**
+     * 행이 없으면(집계를 만들기 전부터 있던 팀) 0 을 돌려준다
+     */
+    public static int add(EntityManager em, Long teamId, long count, long ageSum, int minAge, int maxAge) {
+        return execute(em, ADD, teamId, count, ageSum, minAge, maxAge);
+    }
+
+    public static int addAndResetBounds(EntityManager em, Long teamId, long count, long ageSum) {
+        return execute(em, ADD_AND_RESET_BOUNDS, teamId, count, ageSum);
+    }
+
+    /**
+     * member 테이블에서 팀 하나를 다시 집계해서 덮어쓴다 (없으면 만든다)
+     */
+    public static void rebuild(EntityManager em, Long teamId) {
+        execute(em, REBUILD, teamId);
+    }
+
+    public static void delete(EntityManager em, Long teamId) {
+        execute(em, DELETE, teamId);
+    }
+
+    private static int execute(EntityManager em, String sql, Object... params) {
+        NativeQuery<?> query = em.createNativeQuery(sql).unwrap(NativeQuery.class);
+        query.addSynchronizedQuerySpace("team_stats");
+        for (int i = 0; i < params.length; i++) {
+            query.setParameter(i + 1, params[i]);
+        }
+        return query.executeUpdate();
+    }
+}
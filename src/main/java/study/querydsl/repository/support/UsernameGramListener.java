@@ -0,0 +1,116 @@
+package study.querydsl.repository.support;
+
+import org.hibernate.action.spi.AfterTransactionCompletionProcess;
+import org.hibernate.action.spi.BeforeTransactionCompletionProcess;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.stereotype.Component;
+import study.querydsl.entity.Member;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 회원이 추가 / 삭제되거나 username 이 바뀌면 커밋 직전에 그 회원들의 member_username_gram 을 다시 만든다.
+ * (TeamStatsListener 와 같은 방식. 롤백되면 버린다)
+ * 벌크 연산은 엔티티 이벤트가 없으므로 MemberBulkService 가 청크마다 직접 다시 만든다.
+ */
+@Component
+public class UsernameGramListener implements PostInsertEventListener, PostUpdateEventListener, PostDeleteEventListener {
+
+    // in 목록 하나에 넣을 회원 수
+    private static final int BATCH_SIZE = 500;
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final Map<EventSource, Set<Long>> pending = new ConcurrentHashMap<>();
+
+    public UsernameGramListener(EntityManagerFactory entityManagerFactory) {
+        this.entityManagerFactory = entityManagerFactory;
+    }
+
+    @PostConstruct
+    public void register() {
+        EventListenerRegistry registry = entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry()
+                .getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_INSERT, this);
+        registry.appendListeners(EventType.POST_UPDATE, this);
+        registry.appendListeners(EventType.POST_DELETE, this);
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        if (event.getEntity() instanceof Member) {
+            changed(event.getSession()).add((Long) event.getId());
+        }
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        if (!(event.getEntity() instanceof Member)) {
+            return;
+        }
+        // 이전 값을 모르면(준영속 update) 바뀐 것으로 본다
+        Object[] oldState = event.getOldState();
+        if (oldState == null || !Objects.equals(username(event.getPersister(), oldState), username(event.getPersister(), event.getState()))) {
+            changed(event.getSession()).add((Long) event.getId());
+        }
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        if (event.getEntity() instanceof Member) {
+            changed(event.getSession()).add((Long) event.getId());
+        }
+    }
+
+    @Override
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        return false;
+    }
+
+    private Set<Long> changed(EventSource session) {
+        return pending.computeIfAbsent(session, s -> {
+            Set<Long> memberIds = new TreeSet<>();
+            s.getActionQueue().registerProcess((BeforeTransactionCompletionProcess) completing -> apply(completing, memberIds));
+            s.getActionQueue().registerProcess((AfterTransactionCompletionProcess) (success, completed) -> pending.remove(s));
+            return memberIds;
+        });
+    }
+
+    private void apply(SessionImplementor session, Set<Long> memberIds) {
+        pending.remove(session);
+        List<Long> batch = new ArrayList<>(BATCH_SIZE);
+        for (Long memberId : memberIds) {
+            batch.add(memberId);
+            if (batch.size() == BATCH_SIZE) {
+                UsernameGramWriter.reindex(session, batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            UsernameGramWriter.reindex(session, batch);
+        }
+    }
+
+    private static Object username(EntityPersister persister, Object[] state) {
+        return state[persister.getEntityMetamodel().getPropertyIndex("username")];
+    }
+}
@@ -0,0 +1,40 @@
+package study.querydsl.repository.support;
+
+import org.hibernate.query.NativeQuery;
+
+import javax.persistence.EntityManager;
+import java.util.Collection;
+
+/**
+ * member_username_gram 갱신 SQL. 회원 행에서 바로 조각을 만들기 때문에(system_range 로 위치를 펼침)
+ * 삭제된 회원은 지우기만 하고 새 이름은 다시 넣는다.
+ */
+public final class UsernameGramWriter {
+
+    private static final String SPLIT = "select distinct substring(m.username, r.x, 3), m.id"
+            + " from member m join system_range(1, 255) r on r.x <= length(m.username) - 2";
+
+    private UsernameGramWriter() {
+    }
+
+    public static void reindex(EntityManager em, Collection<Long> memberIds) {
+        execute(em, "delete from member_username_gram where member_id in (?1)", memberIds);
+        execute(em, "insert into member_username_gram (gram, member_id) " + SPLIT + " where m.id in (?1)", memberIds);
+    }
+
+    public static void reindexRange(EntityManager em, long fromId, long toId) {
+        execute(em, "delete from member_username_gram where member_id between ?1 and ?2", fromId, toId);
+        execute(em, "insert into member_username_gram (gram, member_id) " + SPLIT + " where m.id between ?1 and ?2",
+                fromId, toId);
+    }
+
+    private static void execute(EntityManager em, String sql, Object... params) {
+        NativeQuery<?> query = em.createNativeQuery(sql).unwrap(NativeQuery.class);
+        // 2차 캐시 전체가 아니라 이 테이블만 무효화
+        query.addSynchronizedQuerySpace("member_username_gram");
+        for (int i = 0; i < params.length; i++) {
+            query.setParameter(i + 1, params[i]);
+        }
+        query.executeUpdate();
+    }
+}
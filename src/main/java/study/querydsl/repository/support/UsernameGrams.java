@@ -0,0 +1,168 @@
+package study.querydsl.repository.support;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.UsernameMatch;
+
+import javax.persistence.EntityManager;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.springframework.util.StringUtils.hasText;
+
+/**
+ * member_username_gram 을 쓰는 username 포함 검색 도우미.
+ * 검색어의 3글자 조각 중 가장 드문 것 하나로 후보 회원을 고르고(gram 기본 키 범위), 나머지는 like 로 다시 거른다.
+ * 조각은 검색어 전체에 고르게 MAX_PROBED_GRAMS 개까지만 골라 gram in (...) group by gram 한 쿼리로 센다.
+ * 고른 조각은 검색어마다 잠깐(CHOICE_TTL) 기억해서 content / count 쿼리와 같은 조건의 다음 요청이 다시 세지 않는다.
+ * 어느 조각을 골라도 like 로 다시 거르므로 결과는 같고, 오래된 선택은 느려질 뿐이다.
+ */
+@Slf4j
+@Component
+public class UsernameGrams {
+
+    public static final int GRAM_LENGTH = 3;
+    public static final char LIKE_ESCAPE = '!';
+
+    private static final int MAX_PROBED_GRAMS = 8;
+    private static final Duration CHOICE_TTL = Duration.ofSeconds(30);
+    private static final int USERNAME_MAX_LENGTH = 255;
+    // 처음 색인을 채울 때 한 트랜잭션에서 다루는 id 범위
+    private static final long BACKFILL_RANGE = 10_000;
+
+    private final EntityManager em;
+    private final TransactionTemplate transactionTemplate;
+    private final Cache<String, String> choices = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .expireAfterWrite(CHOICE_TTL)
+            .build();
+
+    public UsernameGrams(EntityManager em, PlatformTransactionManager transactionManager) {
+        this.em = em;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    public static Set<String> grams(String term) {
+        Set<String> grams = new LinkedHashSet<>();
+        for (int i = 0; i + GRAM_LENGTH <= term.length(); i++) {
+            grams.add(term.substring(i, i + GRAM_LENGTH));
+        }
+        return grams;
+    }
+
+    /**
+     * CONTAINS 검색이면 후보를 고를 조각, 아니면 null
+     */
+    public String drivingGram(MemberSearchCondition condition) {
+        if (!hasText(condition.getUsername()) || condition.getUsernameMatch() != UsernameMatch.CONTAINS) {
+            return null;
+        }
+        return rarest(condition.getUsername());
+    }
+
+    public String rarest(String term) {
+        if (term.length() < GRAM_LENGTH) {
+            throw new IllegalArgumentException("username contains search needs at least " + GRAM_LENGTH + " characters: " + term);
+        }
+        return choices.get(term, this::probe);
+    }
+
+    private String probe(String term) {
+        List<String> grams = probedGrams(term);
+        Map<String, Long> counts = new HashMap<>();
+        for (Object row : em.createNativeQuery("select gram, count(*) from member_username_gram"
+                        + " where gram in (:grams) group by gram")
+                .setParameter("grams", grams)
+                .getResultList()) {
+            Object[] columns = (Object[]) row;
+            counts.put((String) columns[0], ((Number) columns[1]).longValue());
+        }
+        // 없는 조각(0건) 이 있으면 그것
+        return grams.stream()
+                .min(Comparator.comparingLong(gram -> counts.getOrDefault(gram, 0L)))
+                .orElseThrow();
+    }
+
+    /**
+     * 조각이 MAX_PROBED_GRAMS 개보다 많으면 처음과 끝을 포함해 고르게 고른다
+     */
+    static List<String> probedGrams(String term) {
+        List<String> grams = new ArrayList<>(grams(term));
+        if (grams.size() <= MAX_PROBED_GRAMS) {
+            return grams;
+        }
+        List<String> probed = new ArrayList<>(MAX_PROBED_GRAMS);
+        for (int i = 0; i < MAX_PROBED_GRAMS; i++) {
+            probed.add(grams.get(i * (grams.size() - 1) / (MAX_PROBED_GRAMS - 1)));
+        }
+        return probed;
+    }
+
+    /**
+     * term 으로 시작하는 문자열보다 모두 큰 가장 작은 문자열 (마지막 글자 + 1).
+     * 마지막 글자가 \uffff 이면 올릴 수 없으니 떼고 앞 글자를 올리고, 전부 \uffff 면 username 최대 길이(255) 보다 긴 \uffff 문자열
+     */
+    public static String prefixUpperBound(String term) {
+        int end = term.length();
+        while (end > 0 && term.charAt(end - 1) == Character.MAX_VALUE) {
+            end--;
+        }
+        if (end == 0) {
+            return String.valueOf(Character.MAX_VALUE).repeat(USERNAME_MAX_LENGTH + 1);
+        }
+        return term.substring(0, end - 1) + (char) (term.charAt(end - 1) + 1);
+    }
+
+    /**
+     * PREFIX / CONTAINS 용 like 패턴. 검색어의 % _ 는 글자 그대로 비교한다 (escape LIKE_ESCAPE)
+     */
+    public static String likePattern(String term, UsernameMatch match) {
+        StringBuilder pattern = new StringBuilder(term.length() + 2);
+        if (match == UsernameMatch.CONTAINS) {
+            pattern.append('%');
+        }
+        for (char c : term.toCharArray()) {
+            if (c == '%' || c == '_' || c == LIKE_ESCAPE) {
+                pattern.append(LIKE_ESCAPE);
+            }
+            pattern.append(c);
+        }
+        return pattern.append('%').toString();
+    }
+
+    /**
+     * 색인이 비어 있는데 회원이 있으면(기능 추가 전 데이터) id 범위를 나눠서 채운다
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        Object[] range = transactionTemplate.execute(status -> {
+            boolean indexed = !em.createNativeQuery("select 1 from member_username_gram limit 1").getResultList().isEmpty();
+            return indexed ? null : (Object[]) em.createNativeQuery("select min(id), max(id) from member").getSingleResult();
+        });
+        if (range == null || range[0] == null) {
+            return;
+        }
+        long min = ((Number) range[0]).longValue();
+        long max = ((Number) range[1]).longValue();
+        log.info("username gram backfill start ids={}..{}", min, max);
+        for (long start = min; start <= max; start += BACKFILL_RANGE) {
+            long from = start;
+            long to = Math.min(max, start + BACKFILL_RANGE - 1);
+            transactionTemplate.executeWithoutResult(status -> UsernameGramWriter.reindexRange(em, from, to));
+        }
+        log.info("username gram backfill done");
+    }
+}
@@ -0,0 +1,246 @@
+package study.querydsl.service;
+
+import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.Path;
+import com.querydsl.core.types.dsl.BooleanExpression;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import com.querydsl.jpa.impl.JPAUpdateClause;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.annotations.QueryHints;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberBulkResult;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.repository.support.UsernameGramWriter;
+import study.querydsl.repository.support.UsernameGrams;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.repository.MemberPredicates.ageGoe;
+import static study.querydsl.repository.MemberPredicates.ageLoe;
+import static study.querydsl.repository.MemberPredicates.teamNameIn;
+import static study.querydsl.repository.MemberPredicates.usernameMatches;
+
+/**
+ * MemberSearchCondition 에 맞는 회원을 대량 수정 / 삭제한다.
+ * 1. 조건에 맞는 id 를 순서대로 훑어서 chunk-size 건씩 [시작 id, 끝 id] 구간으로 나눈다 (id 가 듬성듬성해도 구간마다 건수가 같다)
+ * 2. 구간마다 짧은 트랜잭션으로 update / delete 를 실행한다. 최대 parallelism 개 구간을 동시에 실행
+ * 3. 구간끼리 행이 겹치지 않으므로 서로 락을 기다리지 않는다
+ * 구간마다 따로 커밋하므로 전체가 하나의 트랜잭션이 아니다. 중간에 실패하면 앞서 커밋된 구간은 그대로 남는다.
+ * 벌크 연산은 엔티티 이벤트를 거치지 않으므로 username 을 바꾸거나 지우는 연산이면 구간마다 username 검색 색인을 다시 만들고,
+ * 끝나면 팀 집계(team_stats) 를 다시 맞춘다.
+ */
+@Slf4j
+@Service
+public class MemberBulkService implements DisposableBean {
+
+    private final EntityManager em;
+    private final JPAQueryFactory queryFactory;
+    private final TransactionTemplate transactionTemplate;
+    private final TeamStatsService teamStatsService;
+    private final UsernameGrams usernameGrams;
+    private final ExecutorService executor;
+    private final int chunkSize;
+
+    public MemberBulkService(EntityManager em,
+                             JPAQueryFactory queryFactory,
+                             PlatformTransactionManager transactionManager,
+                             TeamStatsService teamStatsService,
+                             UsernameGrams usernameGrams,
+                             @Value("${querydsl.bulk.chunk-size:1000}") int chunkSize,
+                             @Value("${querydsl.bulk.parallelism:4}") int parallelism) {
+        this.em = em;
+        this.queryFactory = queryFactory;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.teamStatsService = teamStatsService;
+        this.usernameGrams = usernameGrams;
+        this.chunkSize = chunkSize;
+
+        AtomicInteger sequence = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "member-bulk-" + sequence.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 예) update(condition, clause -> clause.set(member.age, member.age.add(1)))
+     */
+    public MemberBulkResult update(MemberSearchCondition condition, UnaryOperator<JPAUpdateClause> assignments) {
+        AssignedPaths assigned = new AssignedPaths(em);
+        assignments.apply(assigned);
+        boolean usernameChanged = assigned.paths.contains(member.username);
+        return execute("update", condition, usernameChanged, (from, to, where) -> assignments
+                .apply(queryFactory.update(member))
+                .where(member.id.between(from, to))
+                .where(where)
+                .execute());
+    }
+
+    public MemberBulkResult delete(MemberSearchCondition condition) {
+        return execute("delete", condition, true, (from, to, where) -> queryFactory
+                .delete(member)
+                .where(member.id.between(from, to))
+                .where(where)
+                .execute());
+    }
+
+    /**
+     * reindexUsernames : 구간의 username 검색 색인을 다시 만든다 (username 을 바꾸거나 회원을 지우는 연산)
+     */
+    private MemberBulkResult execute(String operation, MemberSearchCondition condition, boolean reindexUsernames,
+                                     ChunkMutation mutation) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            // 구간마다 다른 스레드에서 커밋하므로 호출한 쪽 트랜잭션에 묶일 수 없다
+            throw new IllegalStateException("member bulk " + operation + " must be called outside a transaction");
+        }
+        long start = System.nanoTime();
+        // 구간 경계는 primary 에서 읽는다. 복제본은 방금 커밋된 회원을 아직 못 봐서 구간에서 빠질 수 있다
+        BooleanExpression[] where = transactionTemplate.execute(status -> where(condition));
+        List<long[]> chunks = transactionTemplate.execute(status -> split(where));
+
+        List<Future<Long>> futures = new ArrayList<>(chunks.size());
+        for (long[] chunk : chunks) {
+            futures.add(executor.submit(() -> transactionTemplate.execute(status -> {
+                long rows = mutation.execute(chunk[0], chunk[1], where);
+                if (reindexUsernames) {
+                    UsernameGramWriter.reindexRange(em, chunk[0], chunk[1]);
+                }
+                // 벌크 연산은 영속성 컨텍스트를 거치지 않으므로 남아 있는 엔티티를 비운다
+                em.clear();
+                return rows;
+            })));
+        }
+
+        long total = 0;
+        int done = 0;
+        try {
+            for (Future<Long> future : futures) {
+                total += future.get();
+                done++;
+                if (done % 10 == 0 || done == futures.size()) {
+                    log.info("member bulk {} progress chunks={}/{} rows={} rows/sec={}", operation, done, futures.size(),
+                            total, (long) MemberBulkResult.of(done, total, System.nanoTime() - start).getRowsPerSecond());
+                }
+            }
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(false));
+            teamStatsService.reconcile();
+            throw new IllegalStateException("member bulk " + operation + " failed after " + done + " of "
+                    + futures.size() + " chunks, " + total + " rows committed", e.getCause());
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(false));
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("member bulk " + operation + " interrupted", e);
+        }
+
+        if (total > 0) {
+            teamStatsService.reconcile();
+        }
+        MemberBulkResult result = MemberBulkResult.of(futures.size(), total, System.nanoTime() - start);
+        log.info("member bulk {} done {}", operation, result);
+        return result;
+    }
+
+    /**
+     * 조건에 맞는 id 를 커서로 읽으면서 chunk-size 건마다 구간을 끊는다. 구간 경계만 메모리에 남는다.
+     */
+    private List<long[]> split(BooleanExpression[] where) {
+        List<long[]> chunks = new ArrayList<>();
+        try (Stream<Long> ids = queryFactory
+                .select(member.id)
+                .from(member)
+                .where(where)
+                .orderBy(member.id.asc())
+                .setHint(QueryHints.FETCH_SIZE, chunkSize)
+                .stream()) {
+            Iterator<Long> iterator = ids.iterator();
+            long from = 0;
+            int count = 0;
+            while (iterator.hasNext()) {
+                long id = iterator.next();
+                if (count == 0) {
+                    from = id;
+                }
+                if (++count == chunkSize || !iterator.hasNext()) {
+                    chunks.add(new long[]{from, id});
+                    count = 0;
+                }
+            }
+        }
+        return chunks;
+    }
+
+    private BooleanExpression[] where(MemberSearchCondition condition) {
+        return new BooleanExpression[]{
+                usernameMatches(condition.getUsername(), condition.getUsernameMatch(), usernameGrams.drivingGram(condition)),
+                teamNameIn(condition.getTeamName()),
+                ageGoe(condition.getAgeGoe()),
+                ageLoe(condition.getAgeLoe())
+        };
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    @FunctionalInterface
+    private interface ChunkMutation {
+        long execute(long from, long to, BooleanExpression[] where);
+    }
+
+    /**
+     * 실행하지 않고 update 의 assignments 가 어떤 속성을 바꾸는지만 모은다
+     */
+    private static final class AssignedPaths extends JPAUpdateClause {
+
+        private final Set<Path<?>> paths = new HashSet<>();
+
+        AssignedPaths(EntityManager em) {
+            super(em, member);
+        }
+
+        @Override
+        public <T> JPAUpdateClause set(Path<T> path, T value) {
+            paths.add(path);
+            return this;
+        }
+
+        @Override
+        public <T> JPAUpdateClause set(Path<T> path, Expression<? extends T> expression) {
+            paths.add(path);
+            return this;
+        }
+
+        @Override
+        public <T> JPAUpdateClause setNull(Path<T> path) {
+            paths.add(path);
+            return this;
+        }
+
+        @Override
+        public JPAUpdateClause set(List<? extends Path<?>> paths, List<?> values) {
+            this.paths.addAll(paths);
+            return this;
+        }
+    }
+}
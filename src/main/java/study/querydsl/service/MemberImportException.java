@@ -0,0 +1,38 @@
+package study.querydsl.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import lombok.Getter;
+import study.querydsl.dto.MemberImportFailure;
+
+/**
+ * MemberImportService 가 중간에 실패했을 때. 앞서 커밋된 chunk 는 되돌리지 않으므로 커밋된 건수와 실패한 줄을 같이 알려준다
+ */
+@Getter
+public class MemberImportException extends RuntimeException {
+
+    private final long committedRows;
+    private final long line;
+
+    public MemberImportException(long committedRows, long line, RuntimeException cause) {
+        super("member import failed at line " + line + " after " + committedRows + " rows committed: " + cause.getMessage(), cause);
+        this.committedRows = committedRows;
+        this.line = line;
+    }
+
+    /**
+     * 입력이 잘못됐으면 true (요청을 고쳐서 다시 보내야 한다)
+     */
+    public boolean isInvalidInput() {
+        for (Throwable cause = getCause(); cause != null; cause = cause.getCause()) {
+            // CSV 줄 파싱 / NDJSON 파싱, 매핑
+            if (cause instanceof IllegalArgumentException || cause instanceof JsonProcessingException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public MemberImportFailure toFailure() {
+        return new MemberImportFailure(committedRows, line, getCause().getMessage());
+    }
+}
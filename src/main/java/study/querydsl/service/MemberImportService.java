@@ -0,0 +1,203 @@
+package study.querydsl.service;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.querydsl.core.Tuple;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberImportResult;
+import study.querydsl.dto.MemberImportRow;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+
+import static org.springframework.util.StringUtils.hasText;
+import static study.querydsl.entity.QTeam.team;
+
+/**
+ * CSV(username,age,teamName) / NDJSON 입력을 스트리밍으로 읽어서 회원을 대량 등록한다.
+ * 1. chunk-size 건마다 트랜잭션을 나눠서 커밋
+ * 2. batch-size 건마다 flush/clear (hibernate.jdbc.batch_size 와 맞춰서 JDBC 배치 insert 로 나감)
+ * 3. 팀은 이름으로 한 번만 찾거나 만들고, 이후에는 getReference 로 id 만 건다
+ * 중간에 실패하면 앞서 커밋된 chunk 는 남는다. MemberImportException 으로 커밋된 건수와 실패한 줄을 알려준다.
+ * CSV 는 따옴표 / 이스케이프를 지원하지 않는다. 따옴표가 있는 줄은 잘못된 입력으로 거절한다 (쉼표가 든 값은 NDJSON 으로).
+ */
+@Slf4j
+@Service
+public class MemberImportService {
+
+    private final EntityManager em;
+    private final JPAQueryFactory queryFactory;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final int chunkSize;
+
+    public MemberImportService(EntityManager em,
+                               JPAQueryFactory queryFactory,
+                               ObjectMapper objectMapper,
+                               PlatformTransactionManager transactionManager,
+                               @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:100}") int batchSize,
+                               @Value("${querydsl.import.chunk-size:10000}") int chunkSize) {
+        this.em = em;
+        this.queryFactory = queryFactory;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.chunkSize = chunkSize;
+    }
+
+    public MemberImportResult importCsv(InputStream in) {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        // 지연 평가라서 iterator 가 돌려준(또는 읽다가 실패한) 행의 줄 번호가 남는다
+        AtomicLong lineNumber = new AtomicLong();
+        Iterator<MemberImportRow> rows = reader.lines()
+                .map(line -> {
+                    lineNumber.incrementAndGet();
+                    return parseCsv(line);
+                })
+                .filter(Objects::nonNull)
+                .iterator();
+        return importRows(rows, lineNumber::get);
+    }
+
+    public MemberImportResult importNdjson(InputStream in) throws IOException {
+        MappingIterator<MemberImportRow> rows = objectMapper.readerFor(MemberImportRow.class).readValues(in);
+        return importRows(rows, () -> rows.getCurrentLocation().getLineNr());
+    }
+
+    /**
+     * line : 마지막으로 읽은(또는 읽다가 실패한) 행의 줄 번호
+     */
+    private MemberImportResult importRows(Iterator<MemberImportRow> rows, LongSupplier line) {
+        long start = System.nanoTime();
+        Map<String, Long> teamIds = new HashMap<>();
+        List<MemberImportRow> chunk = new ArrayList<>(chunkSize);
+        long total = 0;
+        long chunkLine = 0;
+        boolean writing = false;
+
+        try {
+            while (rows.hasNext()) {
+                MemberImportRow row = rows.next();
+                if (chunk.isEmpty()) {
+                    chunkLine = line.getAsLong();
+                }
+                chunk.add(row);
+                if (chunk.size() == chunkSize) {
+                    writing = true;
+                    total += writeChunk(chunk, teamIds);
+                    writing = false;
+                    chunk.clear();
+                    log.info("member import progress rows={} rows/sec={}", total,
+                            (long) MemberImportResult.of(total, System.nanoTime() - start).getRowsPerSecond());
+                }
+            }
+            if (!chunk.isEmpty()) {
+                writing = true;
+                total += writeChunk(chunk, teamIds);
+            }
+        } catch (RuntimeException e) {
+            MemberImportException failure = new MemberImportException(total, writing ? chunkLine : line.getAsLong(), e);
+            log.warn(failure.getMessage());
+            throw failure;
+        }
+
+        MemberImportResult result = MemberImportResult.of(total, System.nanoTime() - start);
+        log.info("member import done {}", result);
+        return result;
+    }
+
+    private int writeChunk(List<MemberImportRow> chunk, Map<String, Long> teamIds) {
+        transactionTemplate.executeWithoutResult(status -> {
+            resolveTeams(chunk, teamIds);
+            int count = 0;
+            for (MemberImportRow row : chunk) {
+                Member member = new Member(row.getUsername(), row.getAge());
+                if (hasText(row.getTeamName())) {
+                    // changeTeam 은 team.members 에 넣으려고 팀 프록시를 초기화하므로 연관관계 주인 쪽만 설정
+                    member.setTeam(em.getReference(Team.class, teamIds.get(row.getTeamName())));
+                }
+                em.persist(member);
+                if (++count % batchSize == 0) {
+                    em.flush();
+                    em.clear();
+                }
+            }
+            em.flush();
+            em.clear();
+        });
+        return chunk.size();
+    }
+
+    private void resolveTeams(List<MemberImportRow> chunk, Map<String, Long> teamIds) {
+        Set<String> missing = chunk.stream()
+                .map(MemberImportRow::getTeamName)
+                .filter(name -> hasText(name) && !teamIds.containsKey(name))
+                .collect(Collectors.toSet());
+        if (missing.isEmpty()) {
+            return;
+        }
+
+        List<Tuple> existing = queryFactory
+                .select(team.name, team.id)
+                .from(team)
+                .where(team.name.in(missing))
+                .fetch();
+        for (Tuple tuple : existing) {
+            teamIds.putIfAbsent(tuple.get(team.name), tuple.get(team.id));
+        }
+
+        for (String name : missing) {
+            if (!teamIds.containsKey(name)) {
+                Team newTeam = new Team(name);
+                em.persist(newTeam);
+                teamIds.put(name, newTeam.getId());
+            }
+        }
+    }
+
+    private MemberImportRow parseCsv(String line) {
+        if (!hasText(line)) {
+            return null;
+        }
+        if (line.indexOf('"') >= 0) {
+            throw new IllegalArgumentException("quoted csv fields are not supported, use application/x-ndjson: " + line);
+        }
+        String[] fields = line.split(",", -1);
+        if (fields.length < 2 || fields.length > 3) {
+            throw new IllegalArgumentException("invalid csv line: " + line);
+        }
+        String age = fields[1].trim();
+        if (age.equalsIgnoreCase("age")) {
+            // 헤더
+            return null;
+        }
+        try {
+            String teamName = fields.length == 3 ? fields[2].trim() : null;
+            return new MemberImportRow(fields[0].trim(), Integer.parseInt(age), teamName);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid csv line: " + line, e);
+        }
+    }
+}
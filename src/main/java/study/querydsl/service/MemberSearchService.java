@@ -0,0 +1,98 @@
+package study.querydsl.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.EqualsAndHashCode;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import study.querydsl.dto.EstimatedSlice;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.repository.MemberJapRepository;
+import study.querydsl.repository.MemberRepository;
+import study.querydsl.repository.support.DataChangeTracker;
+import study.querydsl.repository.support.SingleFlight;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * 컨트롤러가 부르는 회원 검색. 같은 검색을 동시에 부른 요청은 먼저 온 요청의 실행 하나를 같이 기다린다 (SingleFlight).
+ * 트랜잭션을 열지 않는다. 저장소의 읽기 전용 트랜잭션(커넥션) 은 실행하는 요청만 잡고, 기다리는 요청은 커넥션 없이 기다린다.
+ * 기다림은 querydsl.search.single-flight.max-wait 까지이고, 넘으면 직접 실행한다.
+ * 실행 중에 다른 쓰기가 커밋됐으면 그 뒤에 온 요청은 같이 기다리지 않고 새로 실행한다 (키에 DataChangeTracker.version 포함)
+ */
+@Service
+public class MemberSearchService {
+
+    private final MemberJapRepository memberJapRepository;
+    private final MemberRepository memberRepository;
+    private final DataChangeTracker tracker;
+    private final SingleFlight<Flight, Object> singleFlight;
+
+    public MemberSearchService(MemberJapRepository memberJapRepository,
+                               MemberRepository memberRepository,
+                               DataChangeTracker tracker,
+                               MeterRegistry meterRegistry,
+                               @Value("${querydsl.search.single-flight.max-wait:2s}") Duration maxWait) {
+        this.memberJapRepository = memberJapRepository;
+        this.memberRepository = memberRepository;
+        this.tracker = tracker;
+        this.singleFlight = new SingleFlight<>("member.search", maxWait, meterRegistry);
+    }
+
+    public List<MemberTeamDto> search(MemberSearchCondition condition) {
+        return coalesce("search", condition, Pageable.unpaged(), () -> memberJapRepository.search(condition));
+    }
+
+    public Page<MemberTeamDto> searchPageComplex(MemberSearchCondition condition, Pageable pageable) {
+        return coalesce("searchPageComplex", condition, pageable, () -> memberRepository.searchPageComplex(condition, pageable));
+    }
+
+    public Page<MemberTeamDto> searchPageParallel(MemberSearchCondition condition, Pageable pageable) {
+        return coalesce("searchPageParallel", condition, pageable, () -> memberRepository.searchPageParallel(condition, pageable));
+    }
+
+    public Slice<MemberTeamDto> searchSlice(MemberSearchCondition condition, Pageable pageable) {
+        return coalesce("searchSlice", condition, pageable, () -> memberRepository.searchSlice(condition, pageable));
+    }
+
+    public EstimatedSlice<MemberTeamDto> searchSliceEstimated(MemberSearchCondition condition, Pageable pageable) {
+        return coalesce("searchSliceEstimated", condition, pageable, () -> memberRepository.searchSliceEstimated(condition, pageable));
+    }
+
+    /**
+     * 이미 트랜잭션 안이면 묶지 않는다. 기다리는 동안 그 트랜잭션의 커넥션을 붙잡게 되고, 커밋 안 된 변경이 보일 수도 있다
+     */
+    @SuppressWarnings("unchecked")
+    <T> T coalesce(String call, MemberSearchCondition condition, Pageable pageable, Supplier<T> query) {
+        if (TransactionSynchronizationManager.isActualTransactionActive() || tracker.hasPendingChanges()) {
+            return query.get();
+        }
+        return (T) singleFlight.execute(new Flight(call, condition.normalized(), pageable, tracker.version()), query::get);
+    }
+
+    @EqualsAndHashCode
+    private static final class Flight {
+
+        private final String call;
+        private final MemberSearchCondition condition;
+        private final long offset;
+        private final int size;
+        private final String sort;
+        private final long version;
+
+        Flight(String call, MemberSearchCondition condition, Pageable pageable, long version) {
+            this.call = call;
+            this.condition = condition;
+            this.offset = pageable.isPaged() ? pageable.getOffset() : -1;
+            this.size = pageable.isPaged() ? pageable.getPageSize() : -1;
+            this.sort = pageable.getSort().toString();
+            this.version = version;
+        }
+    }
+}
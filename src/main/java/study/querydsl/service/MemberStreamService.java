@@ -0,0 +1,72 @@
+package study.querydsl.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.repository.MemberJapRepository;
+
+import javax.persistence.EntityManager;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * 검색 결과를 NDJSON (한 줄에 MemberTeamDto 하나) 으로 바로 써 내려간다.
+ * 행 수와 상관없이 메모리에는 fetchSize 만큼만 올라온다.
+ */
+@Service
+public class MemberStreamService {
+
+    private final MemberJapRepository memberJapRepository;
+    private final EntityManager em;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate readOnlyTransaction;
+    private final int fetchSize;
+
+    public MemberStreamService(MemberJapRepository memberJapRepository,
+                               EntityManager em,
+                               ObjectMapper objectMapper,
+                               PlatformTransactionManager transactionManager,
+                               @Value("${querydsl.stream.fetch-size:500}") int fetchSize) {
+        this.memberJapRepository = memberJapRepository;
+        this.em = em;
+        this.objectMapper = objectMapper;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.fetchSize = fetchSize;
+    }
+
+    public long writeNdjson(MemberSearchCondition condition, OutputStream out) {
+        Long rows = readOnlyTransaction.execute(status -> {
+            try (Stream<MemberTeamDto> stream = memberJapRepository.searchStream(condition, fetchSize);
+                 JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                // 값 사이에 기본으로 넣는 공백(" ") 대신 줄마다 직접 '\n' 을 쓴다
+                generator.setRootValueSeparator(null);
+                long count = 0;
+                Iterator<MemberTeamDto> iterator = stream.iterator();
+                while (iterator.hasNext()) {
+                    generator.writeObject(iterator.next());
+                    generator.writeRaw('\n');
+                    if (++count % fetchSize == 0) {
+                        // fetchSize 마다 내보내고, 엔티티가 섞여도 영속성 컨텍스트가 커지지 않도록 비운다
+                        generator.flush();
+                        em.clear();
+                    }
+                }
+                generator.flush();
+                return count;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return rows == null ? 0 : rows;
+    }
+}
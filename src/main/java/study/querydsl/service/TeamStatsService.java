@@ -0,0 +1,163 @@
+package study.querydsl.service;
+
+import com.querydsl.core.Tuple;
+import com.querydsl.jpa.impl.JPAQuery;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.QTeamStatsDto;
+import study.querydsl.dto.TeamStatsDto;
+import study.querydsl.entity.TeamStats;
+import study.querydsl.repository.support.TeamStatsWriter;
+
+import javax.persistence.EntityManager;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+import static study.querydsl.entity.QTeamStats.teamStats;
+
+/**
+ * 팀별 회원 나이 집계(count, sum, avg, min, max) 를 member 를 훑지 않고 team_stats 에서 팀당 한 행으로 읽는다.
+ * team_stats 는 TeamStatsListener 가 커밋 때 갱신하므로 같은 트랜잭션의 커밋 전 변경은 보이지 않는다.
+ * 엔티티 이벤트를 거치지 않은 변경(벌크 연산 등) 으로 어긋난 값은 reconcile-interval 마다 reconcile 이 맞춘다.
+ */
+@Slf4j
+@Service
+public class TeamStatsService implements DisposableBean {
+
+    private final EntityManager em;
+    private final JPAQueryFactory queryFactory;
+    private final TransactionTemplate transactionTemplate;
+    private final ScheduledExecutorService scheduler;
+
+    public TeamStatsService(EntityManager em,
+                            JPAQueryFactory queryFactory,
+                            PlatformTransactionManager transactionManager,
+                            @Value("${querydsl.team-stats.reconcile-interval:10m}") Duration reconcileInterval) {
+        this.em = em;
+        this.queryFactory = queryFactory;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+
+        if (reconcileInterval.isZero()) {
+            this.scheduler = null;
+            return;
+        }
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "team-stats-reconcile");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = reconcileInterval.toMillis();
+        scheduler.scheduleWithFixedDelay(this::reconcileQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Transactional(readOnly = true)
+    public List<TeamStatsDto> findAll() {
+        return select().orderBy(team.id.asc()).fetch();
+    }
+
+    @Transactional(readOnly = true)
+    public Optional<TeamStatsDto> findByTeamId(Long teamId) {
+        return Optional.ofNullable(select().where(teamStats.teamId.eq(teamId)).fetchOne());
+    }
+
+    @Transactional(readOnly = true)
+    public List<TeamStatsDto> findByTeamName(String teamName) {
+        return select().where(team.name.eq(teamName)).orderBy(team.id.asc()).fetch();
+    }
+
+    /**
+     * member 를 팀별로 다시 집계해서 team_stats 와 다른 팀만 고친다. 고친 팀 수를 돌려준다.
+     */
+    public int reconcile() {
+        Integer fixed = transactionTemplate.execute(status -> {
+            Map<Long, TeamStats> stored = queryFactory
+                    .selectFrom(teamStats)
+                    .fetch()
+                    .stream()
+                    .collect(Collectors.toMap(TeamStats::getTeamId, Function.identity()));
+
+            List<Tuple> actual = queryFactory
+                    .select(team.id, member.count(), member.age.sum(), member.age.min(), member.age.max())
+                    .from(team)
+                    .leftJoin(team.members, member)
+                    .groupBy(team.id)
+                    .fetch();
+
+            int count = 0;
+            for (Tuple row : actual) {
+                Long teamId = row.get(team.id);
+                if (!matches(stored.remove(teamId), row)) {
+                    // 읽은 뒤에 커밋된 변경도 반영되도록 값을 넘기지 않고 다시 집계해서 쓴다
+                    TeamStatsWriter.rebuild(em, teamId);
+                    count++;
+                }
+            }
+            // 지워진 팀
+            for (Long teamId : stored.keySet()) {
+                TeamStatsWriter.delete(em, teamId);
+                count++;
+            }
+            return count;
+        });
+        if (fixed != null && fixed > 0) {
+            log.warn("team stats drift fixed teams={}", fixed);
+        }
+        return fixed == null ? 0 : fixed;
+    }
+
+    private void reconcileQuietly() {
+        try {
+            reconcile();
+        } catch (RuntimeException e) {
+            log.warn("team stats reconcile failed", e);
+        }
+    }
+
+    private JPAQuery<TeamStatsDto> select() {
+        return queryFactory
+                .select(new QTeamStatsDto(
+                        team.id,
+                        team.name,
+                        teamStats.memberCount,
+                        teamStats.ageSum,
+                        teamStats.minAge,
+                        teamStats.maxAge))
+                .from(teamStats)
+                .join(team).on(team.id.eq(teamStats.teamId));
+    }
+
+    private static boolean matches(TeamStats stored, Tuple row) {
+        if (stored == null) {
+            return false;
+        }
+        // sum(int) 는 Hibernate 가 Long 으로 돌려준다
+        Number ageSum = row.get(2, Number.class);
+        return stored.getMemberCount() == Objects.requireNonNull(row.get(member.count()))
+                && stored.getAgeSum() == (ageSum == null ? 0 : ageSum.longValue())
+                && Objects.equals(stored.getMinAge(), row.get(member.age.min()))
+                && Objects.equals(stored.getMaxAge(), row.get(member.age.max()));
+    }
+
+    @Override
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package study.querydsl.web;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.bind.ServletRequestDataBinder;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import study.querydsl.controller.MemberController;
+import study.querydsl.dto.MemberSearchCondition;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * 회원 API(MemberController) 입장 제한. 커넥션 풀보다 많은 요청이 한꺼번에 DB 로 가지 않게 한다. 자리와 어림은 AdmissionService 가 가진다.
+ * 1. 조건이 하나도 없는 검색은 unfiltered 한도를 같이 받아야 한다 (unfiltered)
+ * 2. API 별 동시 실행 max-concurrent, 넘치면 max-queue 개까지 queue-timeout 동안 기다린다 (queue_full, timeout)
+ *    API 별 자리를 받은 뒤 모든 회원 API 가 나눠 쓰는 global 자리를 API 의 connections 만큼 받는다 (global_queue_full, global_timeout).
+ *    global 은 기본으로 커넥션 풀 크기라서 API 별 한도의 합과 상관없이 DB 로 가는 요청이 풀을 넘지 않는다
+ * 3. max-rows 가 있는 API 는 자리를 받은 뒤 통계로 어림한 결과 건수가 넘으면 받지 않는다 (cost).
+ *    통계가 없는 조건(username 앞부분 / 포함 검색) 은 어림하지 않는다
+ * 조건이 본문에 있는 /v1/members/batch 는 컨트롤러가 바인딩한 뒤 AdmissionService.admitConditions 로 조건마다 1, 3 을 본다.
+ * 받지 않은 요청은 429 + Retry-After. 스트리밍 응답은 비동기 처리가 끝날 때 자리를 돌려준다.
+ * 메트릭: member.admission.active / queued / limit (gauge), member.admission.wait (timer), member.admission.rejected (counter)
+ */
+@Component
+@RequiredArgsConstructor
+public class AdmissionInterceptor implements AsyncHandlerInterceptor {
+
+    private final AdmissionService admissionService;
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws IOException {
+        // 비동기 응답의 두 번째 디스패치는 처음 받은 자리를 그대로 쓴다
+        if (!admissionService.isEnabled() || request.getDispatcherType() == DispatcherType.ASYNC || !isMemberApi(handler)) {
+            return true;
+        }
+        MemberSearchCondition condition = takesCondition((HandlerMethod) handler) ? bind(request) : null;
+        try {
+            admissionService.admit(request, condition);
+            return true;
+        } catch (AdmissionRejectedException e) {
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()));
+            response.setContentType("text/plain;charset=UTF-8");
+            response.getWriter().write(e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        admissionService.release(request);
+    }
+
+    private static boolean isMemberApi(Object handler) {
+        return handler instanceof HandlerMethod && ((HandlerMethod) handler).getBeanType() == MemberController.class;
+    }
+
+    private static boolean takesCondition(HandlerMethod handler) {
+        return Arrays.stream(handler.getMethodParameters())
+                .anyMatch(parameter -> parameter.getParameterType() == MemberSearchCondition.class);
+    }
+
+    /**
+     * 컨트롤러와 같은 방식으로 요청 파라미터를 바인딩한다. 잘못된 값은 무시되고 컨트롤러에서 다시 걸러진다
+     */
+    private static MemberSearchCondition bind(HttpServletRequest request) {
+        ServletRequestDataBinder binder = new ServletRequestDataBinder(new MemberSearchCondition());
+        binder.bind(request);
+        return ((MemberSearchCondition) binder.getTarget()).normalized();
+    }
+}
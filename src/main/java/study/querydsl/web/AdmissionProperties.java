@@ -0,0 +1,55 @@
+package study.querydsl.web;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Data
+@ConfigurationProperties("querydsl.admission")
+public class AdmissionProperties {
+
+    private boolean enabled = true;
+
+    // 동시 실행 자리가 나기를 기다리는 최대 시간
+    private Duration queueTimeout = Duration.ofMillis(500);
+    // 429 응답의 Retry-After
+    private Duration retryAfter = Duration.ofSeconds(1);
+    // 모든 API 의 Pageable size 상한, 더 크게 요청하면 이 값으로 줄인다
+    private int maxPageSize = 1000;
+
+    // endpoints 에 없는 회원 API
+    private Limit defaults = new Limit(4, 16, null);
+    // 모든 회원 API 가 API 별 자리와 함께 받아야 하는 자리. max-concurrent 가 0 이면 spring.datasource.hikari.maximum-pool-size
+    private Limit global = new Limit(0, 32, null);
+    // 조건이 하나도 없는 검색은 테이블 전체를 읽으므로 API 와 상관없이 이 한도를 같이 넘어야 한다. 기다리지 않는다
+    private Limit unfiltered = new Limit(2, 0, null);
+    // 요청 경로 패턴(@GetMapping 값) 별 한도, yml 키는 "[/v1/members]" 처럼 쓴다
+    private Map<String, Limit> endpoints = new LinkedHashMap<>();
+
+    public Limit limitOf(String pattern) {
+        return endpoints.getOrDefault(pattern, defaults);
+    }
+
+    @Data
+    public static class Limit {
+
+        private int maxConcurrent;
+        private int maxQueue;
+        // 통계로 어림한 결과 건수(MemberCountEstimator) 가 이보다 많으면 받지 않는다. 페이지 없이 전부 돌려주는 API 용
+        private Long maxRows;
+        // 요청 하나가 동시에 쓰는 커넥션 수. global 자리를 이만큼 받는다 (/v5/members 는 content 와 count 로 2)
+        private int connections = 1;
+
+        public Limit() {
+        }
+
+        public Limit(int maxConcurrent, int maxQueue, Long maxRows) {
+            this.maxConcurrent = maxConcurrent;
+            this.maxQueue = maxQueue;
+            this.maxRows = maxRows;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package study.querydsl.web;
+
+import lombok.Getter;
+
+/**
+ * 컨트롤러 안에서 입장 제한에 걸렸을 때 (AdmissionService.admitConditions). MemberController 가 429 + Retry-After 로 바꾼다
+ */
+@Getter
+public class AdmissionRejectedException extends RuntimeException {
+
+    private final String reason;
+    private final long retryAfterSeconds;
+
+    public AdmissionRejectedException(String reason, String message, long retryAfterSeconds) {
+        super(message);
+        this.reason = reason;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
@@ -0,0 +1,258 @@
+package study.querydsl.web;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerMapping;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.repository.support.MemberCountEstimator;
+
+import javax.servlet.http.HttpServletRequest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 회원 API 입장 제한의 자리(unfiltered, API 별, global) 와 건수 어림을 가진다.
+ * 파라미터 조건은 AdmissionInterceptor 가 admit 으로, 본문 조건(/v1/members/batch) 은 컨트롤러가 admitConditions 로 본다.
+ * 받은 자리는 요청 속성에 붙여 두고 요청이 끝날 때 release 로 한꺼번에 돌려준다.
+ * 받지 않으면 AdmissionRejectedException (429 + Retry-After)
+ */
+@Slf4j
+@Component
+public class AdmissionService {
+
+    private static final String PERMITS = AdmissionService.class.getName() + ".PERMITS";
+    private static final String UNFILTERED = "unfiltered";
+    private static final String GLOBAL = "global";
+
+    private final AdmissionProperties properties;
+    private final MemberCountEstimator countEstimator;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Limiter> limiters = new ConcurrentHashMap<>();
+    private final Limiter unfiltered;
+    private final Limiter global;
+
+    public AdmissionService(AdmissionProperties properties,
+                            MemberCountEstimator countEstimator,
+                            MeterRegistry meterRegistry,
+                            @Value("${spring.datasource.hikari.maximum-pool-size:10}") int maximumPoolSize) {
+        this.properties = properties;
+        this.countEstimator = countEstimator;
+        this.meterRegistry = meterRegistry;
+        this.unfiltered = new Limiter(UNFILTERED, properties.getUnfiltered());
+        AdmissionProperties.Limit global = properties.getGlobal();
+        this.global = new Limiter(GLOBAL, new AdmissionProperties.Limit(
+                global.getMaxConcurrent() > 0 ? global.getMaxConcurrent() : maximumPoolSize, global.getMaxQueue(), null));
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * AdmissionInterceptor.preHandle 용. condition 은 파라미터로 받는 조건(정규화된 것), 없는 API 면 null.
+     * 하나라도 받지 못하면 그때까지 받은 자리를 돌려주고 던진다
+     */
+    void admit(HttpServletRequest request, MemberSearchCondition condition) {
+        String endpoint = endpointOf(request);
+        AdmissionProperties.Limit limit = properties.limitOf(endpoint);
+
+        List<Permit> permits = new ArrayList<>(3);
+        try {
+            if (condition != null && isUnfiltered(condition)) {
+                if (unfiltered.acquire(1, Duration.ZERO) != null) {
+                    throw rejected(endpoint, UNFILTERED, "too many searches without a condition");
+                }
+                permits.add(new Permit(unfiltered, 1));
+            }
+
+            Limiter limiter = limiters.computeIfAbsent(endpoint, name -> new Limiter(name, limit));
+            String rejection = limiter.acquire(1, properties.getQueueTimeout());
+            if (rejection != null) {
+                throw rejected(endpoint, rejection, "too many concurrent requests");
+            }
+            permits.add(new Permit(limiter, 1));
+
+            // 풀보다 많이 요구하면 영영 받지 못하므로 풀 전체로 줄인다
+            int connections = Math.min(Math.max(1, limit.getConnections()), global.maxConcurrent);
+            rejection = global.acquire(connections, properties.getQueueTimeout());
+            if (rejection != null) {
+                throw rejected(endpoint, GLOBAL + "_" + rejection, "too many concurrent member requests");
+            }
+            permits.add(new Permit(global, connections));
+
+            // 어림도 DB(통계, min/max) 를 읽으므로 자리를 받은 뒤에 한다
+            if (condition != null) {
+                checkCost(endpoint, limit, condition, "about %d members match, narrow the condition (max %d)");
+            }
+        } catch (AdmissionRejectedException e) {
+            permits.forEach(Permit::release);
+            throw e;
+        }
+        permitsOf(request).addAll(permits);
+    }
+
+    /**
+     * 본문으로 조건 목록을 받는 API(/v1/members/batch) 용. 본문은 인터셉터가 읽지 않으므로 컨트롤러가 바인딩한 뒤 부른다.
+     * API 자리는 preHandle 에서 이미 받았다. 조건마다 cost 를 보고, 조건 없는 검색이 하나라도 있으면 unfiltered 자리를 받는다.
+     * 하나라도 걸리면 요청 전체를 받지 않는다. 조건 목록은 검사(MemberSearchBatch.check) 가 끝난 것이어야 한다
+     */
+    public void admitConditions(HttpServletRequest request, List<MemberSearchCondition> conditions) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        String endpoint = endpointOf(request);
+        AdmissionProperties.Limit limit = properties.limitOf(endpoint);
+
+        boolean anyUnfiltered = false;
+        for (MemberSearchCondition condition : conditions) {
+            MemberSearchCondition normalized = condition.normalized();
+            anyUnfiltered |= isUnfiltered(normalized);
+            checkCost(endpoint, limit, normalized, "about %d members match a condition, narrow it (max %d)");
+        }
+
+        if (anyUnfiltered) {
+            if (unfiltered.acquire(1, Duration.ZERO) != null) {
+                throw rejected(endpoint, UNFILTERED, "too many searches without a condition");
+            }
+            permitsOf(request).add(new Permit(unfiltered, 1));
+        }
+    }
+
+    /**
+     * 요청이 받은 자리를 모두 돌려준다. 요청이 끝날 때 한 번 부른다
+     */
+    void release(HttpServletRequest request) {
+        @SuppressWarnings("unchecked")
+        List<Permit> permits = (List<Permit>) request.getAttribute(PERMITS);
+        if (permits != null) {
+            request.removeAttribute(PERMITS);
+            permits.forEach(Permit::release);
+        }
+    }
+
+    private long retryAfterSeconds() {
+        return Math.max(1, properties.getRetryAfter().toSeconds());
+    }
+
+    private void checkCost(String endpoint, AdmissionProperties.Limit limit, MemberSearchCondition condition, String message) {
+        if (limit.getMaxRows() != null && countEstimator.hasStatistics(condition)) {
+            long estimated = countEstimator.estimate(condition);
+            if (estimated > limit.getMaxRows()) {
+                throw rejected(endpoint, "cost", String.format(message, estimated, limit.getMaxRows()));
+            }
+        }
+    }
+
+    private AdmissionRejectedException rejected(String endpoint, String reason, String message) {
+        Counter.builder("member.admission.rejected")
+                .tag("endpoint", endpoint)
+                .tag("reason", reason)
+                .register(meterRegistry)
+                .increment();
+        log.debug("rejected {} reason={}", endpoint, reason);
+        return new AdmissionRejectedException(reason, message, retryAfterSeconds());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Permit> permitsOf(HttpServletRequest request) {
+        List<Permit> permits = (List<Permit>) request.getAttribute(PERMITS);
+        if (permits == null) {
+            permits = new ArrayList<>(3);
+            request.setAttribute(PERMITS, permits);
+        }
+        return permits;
+    }
+
+    private static String endpointOf(HttpServletRequest request) {
+        return String.valueOf(request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE));
+    }
+
+    private static boolean isUnfiltered(MemberSearchCondition condition) {
+        return condition.getUsername() == null
+                && condition.getTeamName() == null
+                && condition.getAgeGoe() == null
+                && condition.getAgeLoe() == null;
+    }
+
+    private final class Limiter {
+
+        private final int maxConcurrent;
+        private final int maxQueue;
+        // 기다리던 요청 순서대로 자리를 준다
+        private final Semaphore permits;
+        private final AtomicInteger queued = new AtomicInteger();
+        private final Timer waitTimer;
+
+        Limiter(String endpoint, AdmissionProperties.Limit limit) {
+            this.maxConcurrent = limit.getMaxConcurrent();
+            this.maxQueue = limit.getMaxQueue();
+            this.permits = new Semaphore(maxConcurrent, true);
+            this.waitTimer = Timer.builder("member.admission.wait").tag("endpoint", endpoint).register(meterRegistry);
+            Gauge.builder("member.admission.active", permits, p -> maxConcurrent - p.availablePermits())
+                    .tag("endpoint", endpoint).register(meterRegistry);
+            Gauge.builder("member.admission.queued", queued, AtomicInteger::get)
+                    .tag("endpoint", endpoint).register(meterRegistry);
+            Gauge.builder("member.admission.limit", () -> maxConcurrent)
+                    .tag("endpoint", endpoint).register(meterRegistry);
+        }
+
+        /**
+         * 자리 count 개를 받으면 null, 아니면 거절 사유
+         */
+        String acquire(int count, Duration timeout) {
+            try {
+                if (permits.tryAcquire(count, 0, TimeUnit.NANOSECONDS)) {
+                    return null;
+                }
+                if (queued.incrementAndGet() > maxQueue) {
+                    queued.decrementAndGet();
+                    return "queue_full";
+                }
+                long start = System.nanoTime();
+                try {
+                    boolean acquired = permits.tryAcquire(count, timeout.toNanos(), TimeUnit.NANOSECONDS);
+                    waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    return acquired ? null : "timeout";
+                } finally {
+                    queued.decrementAndGet();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return "interrupted";
+            }
+        }
+
+        void release(int count) {
+            permits.release(count);
+        }
+    }
+
+    /**
+     * 요청이 받은 자리. 요청이 끝날 때 돌려준다
+     */
+    private static final class Permit {
+
+        private final Limiter limiter;
+        private final int count;
+
+        Permit(Limiter limiter, int count) {
+            this.limiter = limiter;
+            this.count = count;
+        }
+
+        void release() {
+            limiter.release(count);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package study.querydsl.web;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.springframework.core.ResolvableType;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractGenericHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.util.StreamUtils;
+import study.querydsl.dto.EstimatedSlice;
+import study.querydsl.dto.KeysetPage;
+import study.querydsl.dto.MemberTeamDto;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 회원 검색 결과(MemberTeamDto 의 List / Page / Slice / KeysetPage) 를 행마다 필드 이름을 되풀이하지 않고 열 단위 JSON 으로 쓴다.
+ * memberId, username, age, teamId 는 행 순서대로 같은 길이의 배열이고, teamName 은 teamNames 사전의 번호(팀이 없으면 null) 다.
+ * <pre>
+ * {"rows":2,"memberId":[1,2],"username":["a","b"],"age":[10,20],"teamId":[1,1],"teamName":[0,0],"teamNames":["teamA"],
+ *  "page":{"number":0,"size":20,"totalElements":2,"totalPages":1}}
+ * </pre>
+ * Accept: application/vnd.querydsl.columnar 로 요청할 때만 쓴다. application/*+json 은 Jackson 컨버터가 먼저 가져가므로 +json 을 붙이지 않았다.
+ */
+public class MemberColumnarHttpMessageConverter extends AbstractGenericHttpMessageConverter<Object> {
+
+    public static final MediaType COLUMNAR = MediaType.parseMediaType("application/vnd.querydsl.columnar");
+
+    private static final List<Class<?>> CONTAINERS = List.of(List.class, Slice.class, KeysetPage.class);
+
+    private final JsonFactory jsonFactory;
+
+    public MemberColumnarHttpMessageConverter(JsonFactory jsonFactory) {
+        super(COLUMNAR);
+        this.jsonFactory = jsonFactory;
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        // 요소 타입은 canWrite(Type, ...) 에서 본다
+        return CONTAINERS.stream().anyMatch(container -> container.isAssignableFrom(clazz));
+    }
+
+    @Override
+    public boolean canRead(Type type, Class<?> contextClass, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    public boolean canWrite(Type type, Class<?> clazz, MediaType mediaType) {
+        if (type == null || !canWrite(mediaType)) {
+            return false;
+        }
+        ResolvableType resolved = ResolvableType.forType(type);
+        for (Class<?> container : CONTAINERS) {
+            ResolvableType as = resolved.as(container);
+            if (as != ResolvableType.NONE) {
+                return as.getGeneric(0).resolve() == MemberTeamDto.class;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    protected void writeInternal(Object result, Type type, HttpOutputMessage outputMessage) throws IOException {
+        write(jsonFactory, result, outputMessage.getBody());
+    }
+
+    @Override
+    protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("columnar request body is not supported", inputMessage);
+    }
+
+    @Override
+    public Object read(Type type, Class<?> contextClass, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("columnar request body is not supported", inputMessage);
+    }
+
+    /**
+     * List / Page / Slice / KeysetPage 의 MemberTeamDto 를 열 단위로 쓴다. (벤치마크에서도 쓴다)
+     * generator 를 닫을 때 out 은 flush 만 하고 닫지 않는다. 스트림을 닫는 건 넘겨 준 쪽(서블릿 컨테이너) 몫이다
+     */
+    @SuppressWarnings("unchecked")
+    public static void write(JsonFactory jsonFactory, Object result, OutputStream out) throws IOException {
+        try (JsonGenerator generator = jsonFactory.createGenerator(StreamUtils.nonClosing(out), JsonEncoding.UTF8)) {
+            generator.writeStartObject();
+            if (result instanceof Slice) {
+                Slice<MemberTeamDto> slice = (Slice<MemberTeamDto>) result;
+                writeColumns(generator, slice.getContent());
+                writePage(generator, slice);
+            } else if (result instanceof KeysetPage) {
+                KeysetPage<MemberTeamDto> keysetPage = (KeysetPage<MemberTeamDto>) result;
+                writeColumns(generator, keysetPage.getContent());
+                generator.writeStringField("nextCursor", keysetPage.getNextCursor());
+                generator.writeBooleanField("hasNext", keysetPage.isHasNext());
+            } else {
+                writeColumns(generator, (List<MemberTeamDto>) result);
+            }
+            generator.writeEndObject();
+        }
+    }
+
+    private static void writeColumns(JsonGenerator generator, List<MemberTeamDto> rows) throws IOException {
+        int size = rows.size();
+        generator.writeNumberField("rows", size);
+
+        generator.writeArrayFieldStart("memberId");
+        for (MemberTeamDto row : rows) {
+            writeNullable(generator, row.getMemberId());
+        }
+        generator.writeEndArray();
+
+        generator.writeArrayFieldStart("username");
+        for (MemberTeamDto row : rows) {
+            generator.writeString(row.getUsername());
+        }
+        generator.writeEndArray();
+
+        generator.writeArrayFieldStart("age");
+        for (MemberTeamDto row : rows) {
+            generator.writeNumber(row.getAge());
+        }
+        generator.writeEndArray();
+
+        generator.writeArrayFieldStart("teamId");
+        for (MemberTeamDto row : rows) {
+            writeNullable(generator, row.getTeamId());
+        }
+        generator.writeEndArray();
+
+        // 한 페이지에 나오는 팀 이름은 몇 개 되지 않으므로 처음 나온 순서로 번호를 매긴다
+        Map<String, Integer> dictionary = new HashMap<>();
+        String[] names = new String[size];
+        generator.writeArrayFieldStart("teamName");
+        for (MemberTeamDto row : rows) {
+            String teamName = row.getTeamName();
+            if (teamName == null) {
+                generator.writeNull();
+                continue;
+            }
+            Integer index = dictionary.get(teamName);
+            if (index == null) {
+                index = dictionary.size();
+                dictionary.put(teamName, index);
+                names[index] = teamName;
+            }
+            generator.writeNumber(index);
+        }
+        generator.writeEndArray();
+
+        generator.writeArrayFieldStart("teamNames");
+        for (int i = 0; i < dictionary.size(); i++) {
+            generator.writeString(names[i]);
+        }
+        generator.writeEndArray();
+    }
+
+    private static void writePage(JsonGenerator generator, Slice<?> slice) throws IOException {
+        generator.writeObjectFieldStart("page");
+        generator.writeNumberField("number", slice.getNumber());
+        generator.writeNumberField("size", slice.getSize());
+        if (slice instanceof Page) {
+            Page<?> page = (Page<?>) slice;
+            generator.writeNumberField("totalElements", page.getTotalElements());
+            generator.writeNumberField("totalPages", page.getTotalPages());
+        } else {
+            generator.writeBooleanField("hasNext", slice.hasNext());
+            if (slice instanceof EstimatedSlice) {
+                generator.writeNumberField("estimatedTotal", ((EstimatedSlice<?>) slice).getEstimatedTotal());
+            }
+        }
+        generator.writeEndObject();
+    }
+
+    private static void writeNullable(JsonGenerator generator, Long value) throws IOException {
+        if (value == null) {
+            generator.writeNull();
+        } else {
+            generator.writeNumber(value);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package study.querydsl.web;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+import study.querydsl.controller.MemberController;
+import study.querydsl.datasource.ReplicaProperties;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.repository.support.MemberDataVersion;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Arrays;
+
+/**
+ * 회원 검색 GET 응답에 member / team 데이터 버전(MemberDataVersion) 으로 ETag, Last-Modified 를 붙인다.
+ * If-None-Match 가 맞으면 DB 조회도 직렬화도 없이 304 로 끝낸다.
+ * If-Modified-Since 로는 304 를 주지 않는다. 초 단위라서 같은 초 안에 두 번 바뀌면 구분하지 못하고 오래된 본문을 쓰게 된다.
+ * Last-Modified 는 알려 주기만 한다.
+ * 버전은 조회 전에 읽으므로, 조회 중에 커밋된 쓰기는 다음 요청에서 200 으로 받는다 (오래된 값을 새 버전으로 내보내지 않는다).
+ * 복제본으로 읽으면 복제 지연 동안 이전 데이터에 새 버전이 붙을 수 있어서 복제본이 설정돼 있으면 쓰지 않는다.
+ */
+@Slf4j
+@Component
+public class MemberVersionInterceptor implements HandlerInterceptor {
+
+    private final MemberDataVersion dataVersion;
+    private final boolean enabled;
+
+    public MemberVersionInterceptor(MemberDataVersion dataVersion,
+                                    ReplicaProperties replicaProperties,
+                                    @Value("${querydsl.etag.enabled:true}") boolean enabled) {
+        this.dataVersion = dataVersion;
+        this.enabled = enabled && replicaProperties.getReplicas().isEmpty();
+        if (enabled && !this.enabled) {
+            log.info("member etag disabled, reads may go to replicas");
+        }
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (!enabled || request.getDispatcherType() != DispatcherType.REQUEST || !isMemberSearch(handler)) {
+            return true;
+        }
+        MemberDataVersion.Snapshot snapshot = dataVersion.current();
+        // Accept 에 따라 본문 형식이 달라진다
+        response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+        String etag = snapshot.etag(request.getHeader(HttpHeaders.ACCEPT));
+        // 304 면 true. 아니면 ETag 헤더만 붙이고 그대로 진행
+        if (new ServletWebRequest(request, response).checkNotModified(etag)) {
+            return false;
+        }
+        response.setDateHeader(HttpHeaders.LAST_MODIFIED, snapshot.getLastModified());
+        return true;
+    }
+
+    private static boolean isMemberSearch(Object handler) {
+        if (!(handler instanceof HandlerMethod)) {
+            return false;
+        }
+        HandlerMethod method = (HandlerMethod) handler;
+        return method.getBeanType() == MemberController.class
+                && method.hasMethodAnnotation(GetMapping.class)
+                && Arrays.stream(method.getMethodParameters())
+                .anyMatch(parameter -> parameter.getParameterType() == MemberSearchCondition.class);
+    }
+}
@@ -0,0 +1,85 @@
+package study.querydsl.web;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+import org.springframework.web.util.WebUtils;
+import study.querydsl.repository.support.SqlStatementScope;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * HTTP 요청 하나에서 같은 모양의 SQL 이 repeat-threshold 번 넘게 나가면 N+1 로 보고 로그를 남긴다.
+ * mode: fail 이면 예외로 요청을 실패시킨다 (로컬/테스트용).
+ *       검사는 핸들러가 끝난 뒤라서 응답 본문을 ContentCachingResponseWrapper 에 모았다가 걸리지 않았을 때만 보낸다.
+ *       스트리밍(비동기) 응답도 끝날 때까지 메모리에 모으므로 운영에서는 log 로 둔다
+ */
+@Slf4j
+@Component
+public class QueryDetectorFilter extends OncePerRequestFilter {
+
+    private final boolean enabled;
+    private final int repeatThreshold;
+    private final boolean failOnRepeat;
+
+    public QueryDetectorFilter(@Value("${querydsl.query-detector.enabled:true}") boolean enabled,
+                               @Value("${querydsl.query-detector.repeat-threshold:3}") int repeatThreshold,
+                               @Value("${querydsl.query-detector.mode:log}") String mode) {
+        this.enabled = enabled;
+        this.repeatThreshold = repeatThreshold;
+        this.failOnRepeat = "fail".equalsIgnoreCase(mode);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !enabled;
+    }
+
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        // fail 모드는 비동기 응답이 끝나는 디스패치에서 모은 본문을 보낸다
+        return !failOnRepeat;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        ContentCachingResponseWrapper buffered = null;
+        if (failOnRepeat) {
+            // 비동기 디스패치는 처음 디스패치에서 감싼 응답을 그대로 받는다
+            buffered = WebUtils.getNativeResponse(response, ContentCachingResponseWrapper.class);
+            if (buffered == null) {
+                buffered = new ContentCachingResponseWrapper(response);
+            }
+        }
+
+        try (SqlStatementScope scope = SqlStatementScope.open()) {
+            filterChain.doFilter(request, buffered != null ? buffered : response);
+
+            Map<String, Integer> repeated = scope.getRepeatedShapes(repeatThreshold);
+            if (repeated.isEmpty()) {
+                log.debug("{} {} statements={}", request.getMethod(), request.getRequestURI(), scope.getStatements());
+            } else {
+                String message = String.format("%s %s statements=%d, repeated more than %d times: %s",
+                        request.getMethod(), request.getRequestURI(), scope.getStatements(), repeatThreshold, repeated);
+                if (buffered != null) {
+                    // 아직 아무것도 보내지 않았다. 모은 본문과 헤더를 버리고 실패시킨다
+                    buffered.reset();
+                    throw new RepeatedQueryException(message);
+                }
+                log.warn(message);
+            }
+        }
+
+        if (buffered != null && !request.isAsyncStarted()) {
+            buffered.copyBodyToResponse();
+        }
+    }
+}
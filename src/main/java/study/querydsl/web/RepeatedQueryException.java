@@ -0,0 +1,8 @@
+package study.querydsl.web;
+
+public class RepeatedQueryException extends IllegalStateException {
+
+    public RepeatedQueryException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,43 @@
+package study.querydsl.web;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.web.config.PageableHandlerMethodArgumentResolverCustomizer;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+@Configuration
+@RequiredArgsConstructor
+@EnableConfigurationProperties(AdmissionProperties.class)
+public class WebConfig implements WebMvcConfigurer {
+
+    private final MemberVersionInterceptor memberVersionInterceptor;
+    private final AdmissionInterceptor admissionInterceptor;
+    private final AdmissionProperties admissionProperties;
+    private final ObjectMapper objectMapper;
+
+    @Bean
+    public PageableHandlerMethodArgumentResolverCustomizer maxPageSize() {
+        return resolver -> resolver.setMaxPageSize(admissionProperties.getMaxPageSize());
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        // 304 로 끝나는 요청은 입장 제한(동시 실행 자리, 건수 어림 쿼리) 까지 가지 않는다
+        registry.addInterceptor(memberVersionInterceptor);
+        registry.addInterceptor(admissionInterceptor);
+    }
+
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        // Smile(application/x-jackson-smile) 은 jackson-dataformat-smile 이 있으면 기본 컨버터로 들어온다.
+        // 열 단위 JSON 은 Accept 로 콕 집어 요청할 때만 쓰이도록 맨 뒤에 둔다 (Accept: */* 면 지금처럼 application/json)
+        converters.add(new MemberColumnarHttpMessageConverter(objectMapper.getFactory()));
+    }
+}
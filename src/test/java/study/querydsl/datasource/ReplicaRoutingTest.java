@@ -0,0 +1,159 @@
+package study.querydsl.datasource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.repository.MemberJapRepository;
+import study.querydsl.repository.MemberRepository;
+import study.querydsl.repository.support.CountQueryExecutor;
+import study.querydsl.repository.support.MemberCountCache;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * primary(기존 H2 TCP) 와 별개의 인메모리 H2 를 복제본으로 두고
+ * 복제본에만 있는 회원이 보이는지로 어디로 라우팅됐는지 확인한다
+ */
+@SpringBootTest(properties = {
+        "spring.jpa.hibernate.ddl-auto=update",
+        // 같은 조건을 primary / 복제본에서 번갈아 읽으므로 결과 캐시는 끈다
+        "querydsl.cache.search.enabled=false",
+        "querydsl.datasource.max-lag=5s",
+        "querydsl.datasource.health-check-interval=1h",
+        "querydsl.datasource.replicas[0].name=replica1",
+        "querydsl.datasource.replicas[0].url=" + ReplicaRoutingTest.REPLICA_URL,
+        "querydsl.datasource.replicas[0].username=sa",
+        "querydsl.datasource.replicas[0].lag-query=select lag_millis from replica_lag",
+        "querydsl.datasource.replicas[1].name=down",
+        "querydsl.datasource.replicas[1].url=jdbc:h2:tcp://localhost:1/~/down",
+        "querydsl.datasource.replicas[1].username=sa",
+})
+class ReplicaRoutingTest {
+
+    static final String REPLICA_URL = "jdbc:h2:mem:replicaRoutingTest;DB_CLOSE_DELAY=-1";
+
+    @Autowired
+    MemberRepository memberRepository;
+
+    @Autowired
+    MemberJapRepository memberJapRepository;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Autowired
+    ReplicaSelector replicaSelector;
+
+    @Autowired
+    MemberCountCache countCache;
+
+    @Autowired
+    CountQueryExecutor countQueryExecutor;
+
+    JdbcTemplate replica = new JdbcTemplate(new DriverManagerDataSource(REPLICA_URL, "sa", ""));
+
+    @BeforeEach
+    void before() {
+        replica.execute("create table if not exists team (id bigint primary key, name varchar(255))");
+        replica.execute("create table if not exists member (id bigint primary key, age integer not null, username varchar(255), team_id bigint)");
+        replica.execute("create table if not exists replica_lag (lag_millis bigint)");
+        replica.update("insert into team (id, name) values (1, 'replicaTeam')");
+        replica.update("insert into member (id, age, username, team_id) values (1, 10, 'replicaOnly', 1)");
+        replica.update("insert into replica_lag values (0)");
+        replicaSelector.checkReplicas();
+    }
+
+    @AfterEach
+    void cleanup() {
+        replica.execute("delete from member");
+        replica.execute("delete from team");
+        replica.execute("delete from replica_lag");
+    }
+
+    @Test
+    public void readOnlyCallsGoToReplica() throws Exception {
+        assertThat(replicaSelector.availableReplicas()).containsExactly("replica1");
+
+        assertThat(search("replicaOnly")).extracting("teamName").containsExactly("replicaTeam");
+        assertThat(memberRepository.findByUsername("replicaOnly")).hasSize(1);
+        assertThat(memberJapRepository.findByUsername("replicaOnly")).hasSize(1);
+        assertThat(memberRepository.findAll()).extracting("username").containsExactly("replicaOnly");
+    }
+
+    @Test
+    public void readWriteTransactionGoesToPrimary() throws Exception {
+        List<MemberTeamDto> result = transactionTemplate.execute(status -> search("replicaOnly"));
+
+        assertThat(result).isEmpty();
+    }
+
+    @Test
+    public void laggingReplicaFallsBackToPrimary() throws Exception {
+        replica.update("update replica_lag set lag_millis = 60000");
+        replicaSelector.checkReplicas();
+
+        assertThat(replicaSelector.availableReplicas()).isEmpty();
+        assertThat(search("replicaOnly")).isEmpty();
+
+        // 지연이 풀리면 다시 복제본으로 읽는다
+        replica.update("update replica_lag set lag_millis = 100");
+        replicaSelector.checkReplicas();
+
+        assertThat(search("replicaOnly")).hasSize(1);
+    }
+
+    @Test
+    public void countsReadFromReplicaAreNotCached() throws Exception {
+        TransactionTemplate readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsername("countOnReplica");
+
+        Long fromReplica = readOnlyTransaction.execute(status -> {
+            assertThat(ReplicaRouting.isReadingFromReplica()).isTrue();
+            return countCache.get(condition, () -> 1L);
+        });
+        assertThat(fromReplica).isEqualTo(1L);
+        assertThat(ReplicaRouting.isReadingFromReplica()).isFalse();
+
+        // 복제본에서 센 값은 저장되지 않았고, primary 에서 센 값은 저장된다
+        assertThat(transactionTemplate.execute(status -> countCache.get(condition, () -> 2L))).isEqualTo(2L);
+        assertThat(readOnlyTransaction.execute(status -> countCache.get(condition, () -> 3L))).isEqualTo(2L);
+    }
+
+    @Test
+    public void countQueryReadsFromCallersTarget() throws Exception {
+        TransactionTemplate readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+
+        // content 를 복제본에서 읽으면 count 도 같은 복제본에서
+        Long onReplica = readOnlyTransaction.execute(status -> countQueryExecutor
+                .submit(() -> ReplicaRouting.isReadingFromReplica() ? 1 : 0)
+                .join());
+        assertThat(onReplica).isEqualTo(1L);
+
+        // 복제본이 있어도 고정한 곳(primary) 에서 읽는다
+        Boolean pinned = ReplicaRouting.readFrom(ReplicaRoutingDataSource.PRIMARY,
+                () -> readOnlyTransaction.execute(status -> ReplicaRouting.isReadingFromReplica()));
+        assertThat(pinned).isFalse();
+    }
+
+    private List<MemberTeamDto> search(String username) {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsername(username);
+        return memberRepository.search(condition);
+    }
+}
@@ -0,0 +1,122 @@
+package study.querydsl.repository;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * offset 페이징(/v2, /v3) 과 키셋 페이징(/v4) 의 깊은 페이지 지연시간 비교,
+ * count 를 순서대로 실행(/v3) 할 때와 동시에 실행(/v5) 할 때의 지연시간 비교
+ * ./gradlew benchmarkTest -Dbenchmark.members=1000000 -Dbenchmark.page=1000
+ */
+@Tag("benchmark")
+@SpringBootTest(properties = "querydsl.cache.search.enabled=false")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class MemberPagingBenchmarkTest {
+
+    static final int MEMBERS = Integer.getInteger("benchmark.members", 200_000);
+    static final int PAGE = Integer.getInteger("benchmark.page", 1000);
+    static final int SIZE = 20;
+    static final int WARMUP = 5;
+    static final int ROUNDS = 20;
+    static final long BASE_ID = 1_000_000_000L;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    MemberRepository memberRepository;
+
+    @BeforeAll
+    void seed() {
+        jdbcTemplate.update("insert into team (id, name) values (?, ?)", BASE_ID, "benchTeam");
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 1; i <= MEMBERS; i++) {
+            rows.add(new Object[]{BASE_ID + i, "bench" + i, i % 100, BASE_ID});
+            if (rows.size() == 10_000) {
+                jdbcTemplate.batchUpdate("insert into member (id, username, age, team_id) values (?, ?, ?, ?)", rows);
+                rows.clear();
+            }
+        }
+        jdbcTemplate.batchUpdate("insert into member (id, username, age, team_id) values (?, ?, ?, ?)", rows);
+    }
+
+    @AfterAll
+    void cleanup() {
+        jdbcTemplate.update("delete from member where id > ?", BASE_ID);
+        jdbcTemplate.update("delete from team where id = ?", BASE_ID);
+    }
+
+    @Test
+    public void deepPageLatency() throws Exception {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        PageRequest pageRequest = PageRequest.of(PAGE, SIZE);
+
+        // 키셋 커서는 이전 페이지 마지막 행의 id
+        Long lastId = jdbcTemplate.queryForObject(
+                "select id from member order by id limit 1 offset ?", Long.class, PAGE * SIZE - 1);
+        String cursor = MemberKeyset.of(Sort.unsorted())
+                .cursorOf(new MemberTeamDto(lastId, null, 0, null, null));
+
+        double simple = measure(() -> memberRepository.searchPageSimple(condition, pageRequest).getContent());
+        double complex = measure(() -> memberRepository.searchPageComplex(condition, pageRequest).getContent());
+        double keyset = measure(() -> memberRepository.searchKeyset(condition, cursor, pageRequest).getContent());
+
+        System.out.printf("members=%d page=%d size=%d%n", MEMBERS, PAGE, SIZE);
+        System.out.printf("/v2 searchPageSimple  : %8.3f ms%n", simple);
+        System.out.printf("/v3 searchPageComplex : %8.3f ms%n", complex);
+        System.out.printf("/v4 searchKeyset      : %8.3f ms%n", keyset);
+
+        assertThat(memberRepository.searchKeyset(condition, cursor, pageRequest).getContent()).hasSize(SIZE);
+    }
+
+    @Test
+    public void parallelCountLatency() throws Exception {
+        PageRequest pageRequest = PageRequest.of(PAGE, SIZE);
+        // count 캐시에 걸리지 않도록 호출마다 조건 값을 바꾼다 (age 는 0~99 라서 결과는 같다)
+        AtomicInteger ageLoe = new AtomicInteger(1_000);
+
+        double sequential = measure(() -> memberRepository.searchPageComplex(condition(ageLoe), pageRequest).getContent());
+        double parallel = measure(() -> memberRepository.searchPageParallel(condition(ageLoe), pageRequest).getContent());
+
+        System.out.printf("members=%d page=%d size=%d%n", MEMBERS, PAGE, SIZE);
+        System.out.printf("/v3 searchPageComplex  : %8.3f ms%n", sequential);
+        System.out.printf("/v5 searchPageParallel : %8.3f ms%n", parallel);
+
+        assertThat(memberRepository.searchPageParallel(condition(ageLoe), pageRequest).getTotalElements())
+                .isEqualTo(memberRepository.searchPageComplex(condition(ageLoe), pageRequest).getTotalElements());
+    }
+
+    private MemberSearchCondition condition(AtomicInteger ageLoe) {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setAgeLoe(ageLoe.incrementAndGet());
+        return condition;
+    }
+
+    private double measure(Supplier<List<MemberTeamDto>> search) {
+        for (int i = 0; i < WARMUP; i++) {
+            search.get();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            search.get();
+        }
+        return (System.nanoTime() - start) / 1_000_000.0 / ROUNDS;
+    }
+}
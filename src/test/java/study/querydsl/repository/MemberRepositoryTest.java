@@ -5,16 +5,22 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import study.querydsl.dto.EstimatedSlice;
+import study.querydsl.dto.KeysetPage;
 import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.dto.MemberTeamDto;
 import study.querydsl.entity.Member;
 import study.querydsl.entity.Team;
+import study.querydsl.repository.support.SqlStatementScope;
 
 import javax.persistence.EntityManager;
 import javax.transaction.Transactional;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 @SpringBootTest
 @Transactional
@@ -74,6 +80,24 @@ public class MemberRepositoryTest {
         assertThat(result).extracting("username").containsExactly("member4");
     }
 
+    @Test
+    public void searchPageParallelInReadWriteTransaction() throws Exception {
+        // given
+        Team teamA = new Team("teamA");
+        em.persist(teamA);
+        em.persist(new Member("parallelMember", 10, teamA));
+        em.persist(new Member("parallelMember", 20, teamA));
+
+        // when
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsername("parallelMember");
+        Page<MemberTeamDto> result = memberRepository.searchPageParallel(condition, PageRequest.of(0, 1));
+
+        // then : 커밋 전 데이터도 보이도록 같은 트랜잭션에서 순서대로 센다
+        assertThat(result.getContent()).hasSize(1);
+        assertThat(result.getTotalElements()).isEqualTo(2);
+    }
+
     @Test
     public void searchPageSimple() throws Exception {
         // given
@@ -104,5 +128,98 @@ public class MemberRepositoryTest {
         assertThat(result.getContent()).extracting("username").containsExactly("member1", "member2", "member3");
     }
 
+    @Test
+    public void searchKeyset() throws Exception {
+        // given
+        Team team = new Team("keysetTeam");
+        em.persist(team);
+
+        em.persist(new Member("keyset1", 10, team));
+        em.persist(new Member("keyset2", 20, team));
+        em.persist(new Member("keyset3", 20, team));
+        em.persist(new Member("keyset4", 30, team));
+        em.persist(new Member("keyset5", 40, team));
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("keysetTeam");
+        PageRequest pageRequest = PageRequest.of(0, 2, Sort.by(Sort.Direction.DESC, "age"));
+
+        // when
+        KeysetPage<MemberTeamDto> page1 = memberRepository.searchKeyset(condition, null, pageRequest);
+        KeysetPage<MemberTeamDto> page2 = memberRepository.searchKeyset(condition, page1.getNextCursor(), pageRequest);
+        KeysetPage<MemberTeamDto> page3 = memberRepository.searchKeyset(condition, page2.getNextCursor(), pageRequest);
+
+        // then
+        assertThat(page1.getContent()).extracting("username").containsExactly("keyset5", "keyset4");
+        assertThat(page2.getContent()).extracting("username").containsExactly("keyset3", "keyset2");
+        assertThat(page3.getContent()).extracting("username").containsExactly("keyset1");
+        assertThat(page3.isHasNext()).isFalse();
+    }
+
+    @Test
+    public void searchKeysetRejectsCursorOfOtherSort() throws Exception {
+        // given
+        em.persist(new Member("keyset1", 10));
+        em.persist(new Member("keyset2", 20));
 
+        MemberSearchCondition condition = new MemberSearchCondition();
+        String cursor = memberRepository.searchKeyset(condition, null, PageRequest.of(0, 1)).getNextCursor();
+
+        // then
+        assertThatThrownBy(() -> memberRepository.searchKeyset(condition, cursor, PageRequest.of(0, 1, Sort.by("age"))))
+                .hasRootCauseInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void searchSlice() throws Exception {
+        // given
+        Team team = new Team("sliceTeam");
+        em.persist(team);
+        for (int i = 1; i <= 5; i++) {
+            em.persist(new Member("slice" + i, i * 10, team));
+        }
+        em.flush();
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("sliceTeam");
+
+        // when
+        Slice<MemberTeamDto> page1;
+        Slice<MemberTeamDto> page3;
+        try (SqlStatementScope scope = SqlStatementScope.open()) {
+            page1 = memberRepository.searchSlice(condition, PageRequest.of(0, 2));
+            page3 = memberRepository.searchSlice(condition, PageRequest.of(2, 2));
+            assertThat(scope.getCountStatements()).isZero();
+        }
+
+        // then
+        assertThat(page1.getContent()).extracting("username").containsExactly("slice1", "slice2");
+        assertThat(page1.hasNext()).isTrue();
+        assertThat(page3.getContent()).extracting("username").containsExactly("slice5");
+        assertThat(page3.hasNext()).isFalse();
+    }
+
+    @Test
+    public void searchSliceEstimated() throws Exception {
+        // given
+        Team team = new Team("sliceTeam");
+        em.persist(team);
+        for (int i = 1; i <= 5; i++) {
+            em.persist(new Member("slice" + i, i * 10, team));
+        }
+        em.flush();
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("sliceTeam");
+
+        // when
+        EstimatedSlice<MemberTeamDto> first = memberRepository.searchSliceEstimated(condition, PageRequest.of(0, 2));
+        EstimatedSlice<MemberTeamDto> last = memberRepository.searchSliceEstimated(condition, PageRequest.of(2, 2));
+
+        // then
+        // 통계로 어림한 값이라 정확하지 않지만 이미 읽은 건수보다 작지는 않다
+        assertThat(first.getEstimatedTotal()).isGreaterThanOrEqualTo(3);
+        // 마지막 페이지는 정확하다
+        assertThat(last.getEstimatedTotal()).isEqualTo(5);
+    }
 }
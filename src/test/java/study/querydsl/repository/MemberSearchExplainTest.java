@@ -0,0 +1,86 @@
+package study.querydsl.repository;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.UsernameMatch;
+import study.querydsl.repository.support.SqlStatementScope;
+
+import javax.transaction.Transactional;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * MemberRepository.search / count 가 MemberSearchCondition 모양마다 만드는 SQL 의 H2 실행 계획 검사.
+ * 인덱스를 타지 못하고 테이블 스캔으로 떨어지는 모양이 있으면 실패한다.
+ */
+@SpringBootTest
+@Transactional
+class MemberSearchExplainTest {
+
+    @Autowired
+    MemberRepository memberRepository;
+
+    @Autowired
+    MemberSearchTemplates searchTemplates;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    // 0 은 조건이 없는 전체 조회라서 스캔이 맞다. 16, 32 는 username 앞부분 / 포함 검색
+    static IntStream shapes() {
+        return IntStream.concat(IntStream.range(1, 16),
+                IntStream.range(0, 8).flatMap(rest -> IntStream.of(1 | 16 | rest << 1, 1 | 32 | rest << 1)));
+    }
+
+    @ParameterizedTest(name = "shape {0}")
+    @MethodSource("shapes")
+    public void shapeUsesIndex(int shape) throws Exception {
+        List<String> plans = explain(conditionOf(shape));
+
+        // 포함 검색은 조각 건수를 세는 쿼리가 더 있다
+        assertThat(plans).hasSize((shape & 32) != 0 ? 3 : 2);
+        for (String plan : plans) {
+            assertThat(plan).as("shape %d", shape).doesNotContain("tableScan");
+        }
+    }
+
+    @Test
+    public void noConditionScansMember() throws Exception {
+        assertThat(explain(conditionOf(0))).allSatisfy(plan -> assertThat(plan).contains("MEMBER.tableScan"));
+    }
+
+    private List<String> explain(MemberSearchCondition condition) {
+        List<String> statements;
+        try (SqlStatementScope scope = SqlStatementScope.open()) {
+            memberRepository.search(condition);
+            searchTemplates.count(condition);
+            statements = new ArrayList<>(scope.getShapes());
+        }
+
+        List<String> plans = new ArrayList<>();
+        for (String sql : statements) {
+            plans.add(jdbcTemplate.queryForObject("explain " + sql, String.class));
+        }
+        return plans;
+    }
+
+    private MemberSearchCondition conditionOf(int shape) {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsername((shape & 1) != 0 ? "explain" : null);
+        condition.setUsernameMatch((shape & 16) != 0 ? UsernameMatch.PREFIX
+                : (shape & 32) != 0 ? UsernameMatch.CONTAINS : UsernameMatch.EXACT);
+        condition.setTeamName((shape & 2) != 0 ? "explainTeam" : null);
+        condition.setAgeGoe((shape & 4) != 0 ? 20 : null);
+        condition.setAgeLoe((shape & 8) != 0 ? 40 : null);
+        assertThat(MemberSearchTemplates.shapeOf(condition)).isEqualTo(shape);
+        return condition;
+    }
+}
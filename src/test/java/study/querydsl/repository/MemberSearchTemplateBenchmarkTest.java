@@ -0,0 +1,112 @@
+package study.querydsl.repository;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.dto.QMemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import javax.transaction.Transactional;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.util.StringUtils.hasText;
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+/**
+ * 요청마다 Querydsl 식 트리를 만들고 직렬화하던 방식(before) 과 MemberSearchTemplates(after) 의
+ * 호출당 CPU 시간, 할당량 비교. 결과 행이 적은 조건으로 쿼리 조립 비용만 드러나게 한다.
+ */
+@Tag("benchmark")
+@SpringBootTest
+@Transactional
+class MemberSearchTemplateBenchmarkTest {
+
+    static final int WARMUP = 2_000;
+    static final int ROUNDS = 10_000;
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    MemberSearchTemplates searchTemplates;
+
+    @Test
+    public void perRequestCost() throws Exception {
+        Team benchTeam = new Team("templateBenchTeam");
+        em.persist(benchTeam);
+        for (int i = 0; i < 10; i++) {
+            em.persist(new Member("templateBench" + i, i * 10, benchTeam));
+        }
+        em.flush();
+        em.clear();
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("templateBenchTeam");
+        condition.setAgeGoe(30);
+        condition.setAgeLoe(50);
+
+        JPAQueryFactory queryFactory = new JPAQueryFactory(em);
+        Cost before = measure(c -> dynamicSearch(queryFactory, c), condition);
+        Cost after = measure(searchTemplates::fetch, condition);
+
+        System.out.printf("before (dynamic) : %8d ns/op %8d B/op%n", before.cpuNanos, before.allocatedBytes);
+        System.out.printf("after (template) : %8d ns/op %8d B/op%n", after.cpuNanos, after.allocatedBytes);
+
+        assertThat(searchTemplates.fetch(condition)).isEqualTo(dynamicSearch(queryFactory, condition));
+    }
+
+    private Cost measure(Function<MemberSearchCondition, List<MemberTeamDto>> search, MemberSearchCondition condition) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        for (int i = 0; i < WARMUP; i++) {
+            search.apply(condition);
+        }
+        long cpu = threads.getCurrentThreadCpuTime();
+        long allocated = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ROUNDS; i++) {
+            search.apply(condition);
+        }
+        return new Cost((threads.getCurrentThreadCpuTime() - cpu) / ROUNDS,
+                (threads.getThreadAllocatedBytes(threadId) - allocated) / ROUNDS);
+    }
+
+    private List<MemberTeamDto> dynamicSearch(JPAQueryFactory queryFactory, MemberSearchCondition condition) {
+        return queryFactory
+                .select(new QMemberTeamDto(
+                        member.id.as("memberId"),
+                        member.username,
+                        member.age,
+                        team.id.as("teamId"),
+                        team.name.as("teamName")
+                ))
+                .from(member)
+                .leftJoin(member.team, team)
+                .where(
+                        hasText(condition.getUsername()) ? member.username.eq(condition.getUsername()) : null,
+                        hasText(condition.getTeamName()) ? team.name.eq(condition.getTeamName()) : null,
+                        condition.getAgeGoe() != null ? member.age.goe(condition.getAgeGoe()) : null,
+                        condition.getAgeLoe() != null ? member.age.loe(condition.getAgeLoe()) : null
+                )
+                .fetch();
+    }
+
+    static class Cost {
+        final long cpuNanos;
+        final long allocatedBytes;
+
+        Cost(long cpuNanos, long allocatedBytes) {
+            this.cpuNanos = cpuNanos;
+            this.allocatedBytes = allocatedBytes;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package study.querydsl.repository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import javax.transaction.Transactional;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@Transactional
+class MemberSearchTemplatesTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    MemberSearchTemplates searchTemplates;
+
+    @BeforeEach
+    public void before() {
+        Team teamA = new Team("templateTeamA");
+        Team teamB = new Team("templateTeamB");
+        em.persist(teamA);
+        em.persist(teamB);
+
+        for (int i = 0; i < 20; i++) {
+            em.persist(new Member("template" + (i % 5), i * 5, i % 2 == 0 ? teamA : teamB));
+        }
+        em.persist(new Member("template0", 50));
+    }
+
+    @Test
+    public void everyShapeMatchesInMemoryFilter() throws Exception {
+        List<MemberTeamDto> all = searchTemplates.fetch(new MemberSearchCondition()).stream()
+                .filter(dto -> dto.getUsername() != null && dto.getUsername().startsWith("template"))
+                .collect(Collectors.toList());
+        assertThat(all).hasSize(21);
+
+        for (int i = 0; i < 16; i++) {
+            int shape = i;
+            MemberSearchCondition condition = new MemberSearchCondition();
+            condition.setUsername((shape & 1) != 0 ? "template0" : "");
+            condition.setTeamName((shape & 2) != 0 ? "templateTeamA" : null);
+            condition.setAgeGoe((shape & 4) != 0 ? 20 : null);
+            condition.setAgeLoe((shape & 8) != 0 ? 70 : null);
+            assertThat(MemberSearchTemplates.shapeOf(condition)).isEqualTo(shape);
+
+            List<MemberTeamDto> expected = all.stream()
+                    .filter(dto -> (shape & 1) == 0 || dto.getUsername().equals("template0"))
+                    .filter(dto -> (shape & 2) == 0 || "templateTeamA".equals(dto.getTeamName()))
+                    .filter(dto -> (shape & 4) == 0 || dto.getAge() >= 20)
+                    .filter(dto -> (shape & 8) == 0 || dto.getAge() <= 70)
+                    .collect(Collectors.toList());
+
+            List<MemberTeamDto> result = searchTemplates.fetch(condition).stream()
+                    .filter(dto -> dto.getUsername() != null && dto.getUsername().startsWith("template"))
+                    .collect(Collectors.toList());
+
+            assertThat(result).as("shape %d", shape).containsExactlyInAnyOrderElementsOf(expected);
+            if ((shape & 1) != 0) {
+                // username 이 있는 모양은 다른 테스트 데이터가 섞이지 않으니 count 도 같아야 한다
+                assertThat(searchTemplates.count(condition)).isEqualTo(expected.size());
+            }
+        }
+    }
+}
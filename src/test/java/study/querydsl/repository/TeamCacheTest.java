@@ -0,0 +1,133 @@
+package study.querydsl.repository;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.hibernate.Hibernate;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+/**
+ * 2차 캐시는 트랜잭션(영속성 컨텍스트) 을 넘어서 공유되므로 트랜잭션을 나눠서 확인한다
+ */
+@SpringBootTest
+class TeamCacheTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    EntityManagerFactory emf;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    TeamRepository teamRepository;
+
+    Statistics statistics;
+
+    @BeforeEach
+    void before() {
+        statistics = emf.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @AfterEach
+    void cleanup() {
+        transactionTemplate.executeWithoutResult(status -> {
+            JPAQueryFactory queryFactory = new JPAQueryFactory(em);
+            queryFactory.delete(member).where(member.username.startsWith("teamCache")).execute();
+            queryFactory.delete(team).where(team.name.startsWith("teamCache")).execute();
+        });
+    }
+
+    @Test
+    public void teamIsLoadedFromSecondLevelCache() throws Exception {
+        Long memberId = transactionTemplate.execute(status -> {
+            Team teamCacheA = new Team("teamCacheA");
+            em.persist(teamCacheA);
+            Member teamCache1 = new Member("teamCache1", 10, teamCacheA);
+            em.persist(teamCache1);
+            return teamCache1.getId();
+        });
+
+        long hits = statistics.getDomainDataRegionStatistics("team").getHitCount();
+        long statements = statistics.getPrepareStatementCount();
+
+        String teamName = transactionTemplate.execute(status -> em.find(Member.class, memberId).getTeam().getName());
+
+        assertThat(teamName).isEqualTo("teamCacheA");
+        assertThat(statistics.getDomainDataRegionStatistics("team").getHitCount()).isEqualTo(hits + 1);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(statements);
+    }
+
+    @Test
+    public void changeTeamEvictsMembersCollection() throws Exception {
+        Long[] ids = transactionTemplate.execute(status -> {
+            Team teamCacheA = new Team("teamCacheA");
+            Team teamCacheB = new Team("teamCacheB");
+            em.persist(teamCacheA);
+            em.persist(teamCacheB);
+            Member teamCache1 = new Member("teamCache1", 10, teamCacheA);
+            em.persist(teamCache1);
+            em.persist(new Member("teamCache2", 20, teamCacheA));
+            return new Long[]{teamCacheA.getId(), teamCacheB.getId(), teamCache1.getId()};
+        });
+
+        // 컬렉션을 한 번 읽어서 캐시에 올린다
+        assertThat(membersOf(ids[0])).containsExactlyInAnyOrder("teamCache1", "teamCache2");
+        assertThat(membersOf(ids[1])).isEmpty();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            Member teamCache1 = em.find(Member.class, ids[2]);
+            Team teamCacheA = teamCache1.getTeam();
+            teamCache1.changeTeam(em.find(Team.class, ids[1]));
+            // 이전 팀의 컬렉션은 읽지 않는다
+            assertThat(Hibernate.isInitialized(teamCacheA.getMembers())).isFalse();
+        });
+
+        assertThat(membersOf(ids[0])).containsExactly("teamCache2");
+        assertThat(membersOf(ids[1])).containsExactly("teamCache1");
+    }
+
+    @Test
+    public void findByNameUsesQueryCache() throws Exception {
+        transactionTemplate.executeWithoutResult(status -> em.persist(new Team("teamCacheA")));
+
+        // 쿼리 리전은 처음 쓸 때 만들어진다
+        assertThat(teamRepository.findByName("teamCacheA")).hasSize(1);
+        long hits = statistics.getQueryRegionStatistics("team-by-name").getHitCount();
+        assertThat(teamRepository.findByName("teamCacheA")).hasSize(1);
+        assertThat(statistics.getQueryRegionStatistics("team-by-name").getHitCount()).isEqualTo(hits + 1);
+
+        // team 테이블에 쓰기가 커밋되면 캐시된 결과를 쓰지 않는다
+        transactionTemplate.executeWithoutResult(status -> em.persist(new Team("teamCacheA")));
+
+        assertThat(teamRepository.findByName("teamCacheA")).hasSize(2);
+    }
+
+    private List<String> membersOf(Long teamId) {
+        return transactionTemplate.execute(status -> {
+            List<String> usernames = new ArrayList<>();
+            for (Member m : em.find(Team.class, teamId).getMembers()) {
+                usernames.add(m.getUsername());
+            }
+            return usernames;
+        });
+    }
+}
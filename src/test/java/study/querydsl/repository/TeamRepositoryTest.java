@@ -0,0 +1,77 @@
+package study.querydsl.repository;
+
+import org.hibernate.Hibernate;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.repository.support.SqlStatementScope;
+
+import javax.persistence.EntityManager;
+import javax.transaction.Transactional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+@Transactional
+class TeamRepositoryTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    TeamRepository teamRepository;
+
+    @BeforeEach
+    public void before() {
+        // 나중에 만든 팀이 id 가 크다. pageTeam4 는 회원이 없다
+        for (int i = 0; i < 5; i++) {
+            Team team = new Team("pageTeam" + i);
+            em.persist(team);
+            for (int j = 0; i < 4 && j < 3; j++) {
+                em.persist(new Member("page" + i + "_" + j, j, team));
+            }
+        }
+        em.flush();
+        em.clear();
+    }
+
+    @Test
+    public void findAllWithMembers() throws Exception {
+        Sort newestFirst = Sort.by(Sort.Direction.DESC, "id");
+
+        Page<Team> page1;
+        Page<Team> page2;
+        int statements;
+        try (SqlStatementScope scope = SqlStatementScope.open()) {
+            page1 = teamRepository.findAllWithMembers(PageRequest.of(0, 2, newestFirst));
+            // team id 페이지, fetch join, count
+            statements = scope.getStatements();
+        }
+        page2 = teamRepository.findAllWithMembers(PageRequest.of(1, 2, newestFirst));
+
+        assertThat(statements).isEqualTo(3);
+        assertThat(page1.getTotalElements()).isGreaterThanOrEqualTo(5);
+        assertThat(page1.getContent()).extracting(Team::getName).containsExactly("pageTeam4", "pageTeam3");
+        assertThat(page2.getContent()).extracting(Team::getName).containsExactly("pageTeam2", "pageTeam1");
+        for (Team team : page1.getContent()) {
+            assertThat(Hibernate.isInitialized(team.getMembers())).isTrue();
+        }
+        assertThat(page1.getContent().get(0).getMembers()).isEmpty();
+        assertThat(page1.getContent().get(1).getMembers()).extracting(Member::getUsername)
+                .containsExactlyInAnyOrder("page3_0", "page3_1", "page3_2");
+    }
+
+    @Test
+    public void unsupportedSortProperty() throws Exception {
+        assertThatThrownBy(() -> teamRepository.findAllWithMembers(PageRequest.of(0, 2, Sort.by("members"))))
+                .isInstanceOf(InvalidDataAccessApiUsageException.class);
+    }
+}
@@ -0,0 +1,132 @@
+package study.querydsl.repository;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.dto.UsernameMatch;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.service.MemberBulkService;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+/**
+ * member_username_gram 은 커밋할 때 갱신되므로 테스트 트랜잭션 없이 확인한다
+ */
+@SpringBootTest
+class UsernameSearchTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    MemberRepository memberRepository;
+
+    @Autowired
+    MemberBulkService memberBulkService;
+
+    @AfterEach
+    void cleanup() {
+        // 벌크 서비스가 지운 회원의 조각도 같이 지운다
+        memberBulkService.delete(condition("gram", UsernameMatch.PREFIX));
+        // 팀은 엔티티로 지워야 team_stats 도 같이 지워진다
+        transactionTemplate.executeWithoutResult(status -> new JPAQueryFactory(em)
+                .selectFrom(team)
+                .where(team.name.startsWith("gram"))
+                .fetch()
+                .forEach(em::remove));
+    }
+
+    @Test
+    public void containsAndPrefix() throws Exception {
+        save("gramAlice", "gramAlicia", "gramBob", "gram%x_1", "gramXx1");
+
+        assertThat(usernames(condition("Alic", UsernameMatch.CONTAINS))).containsExactlyInAnyOrder("gramAlice", "gramAlicia");
+        assertThat(usernames(condition("gramAli", UsernameMatch.PREFIX))).containsExactlyInAnyOrder("gramAlice", "gramAlicia");
+        assertThat(usernames(condition("gramAlice", UsernameMatch.EXACT))).containsExactly("gramAlice");
+        // % _ 는 글자 그대로
+        assertThat(usernames(condition("%x_", UsernameMatch.CONTAINS))).containsExactly("gram%x_1");
+        assertThat(usernames(condition("gram%", UsernameMatch.PREFIX))).containsExactly("gram%x_1");
+
+        MemberSearchCondition contains = condition("lici", UsernameMatch.CONTAINS);
+        contains.setTeamName("gramTeam");
+        contains.setAgeGoe(1);
+        assertThat(memberRepository.searchKeyset(contains, null, PageRequest.of(0, 10)).getContent())
+                .extracting(MemberTeamDto::getUsername).containsExactly("gramAlicia");
+        assertThat(memberRepository.searchPageComplex(contains, PageRequest.of(0, 10)).getTotalElements()).isEqualTo(1);
+    }
+
+    @Test
+    public void gramsFollowRenameAndDelete() throws Exception {
+        save("gramAlice", "gramBob");
+        Long bobId = transactionTemplate.execute(status -> new JPAQueryFactory(em)
+                .select(member.id).from(member).where(member.username.eq("gramBob")).fetchOne());
+
+        transactionTemplate.executeWithoutResult(status -> em.find(Member.class, bobId).setUsername("gramRobert"));
+        assertThat(usernames(condition("Bob", UsernameMatch.CONTAINS))).isEmpty();
+        assertThat(usernames(condition("ober", UsernameMatch.CONTAINS))).containsExactly("gramRobert");
+
+        transactionTemplate.executeWithoutResult(status -> em.remove(em.find(Member.class, bobId)));
+        assertThat(usernames(condition("ober", UsernameMatch.CONTAINS))).isEmpty();
+        assertThat(gramCount(bobId)).isZero();
+
+        // 벌크 수정도 구간마다 다시 만든다
+        memberBulkService.update(condition("gramAli", UsernameMatch.PREFIX),
+                clause -> clause.set(member.username, member.username.concat("Zed")));
+        assertThat(usernames(condition("ceZe", UsernameMatch.CONTAINS))).containsExactly("gramAliceZed");
+    }
+
+    @Test
+    public void containsNeedsThreeCharacters() throws Exception {
+        assertThatThrownBy(() -> memberRepository.search(condition("ab", UsernameMatch.CONTAINS)))
+                .isInstanceOf(InvalidDataAccessApiUsageException.class)
+                .hasCauseInstanceOf(IllegalArgumentException.class);
+    }
+
+    private void save(String... usernames) {
+        transactionTemplate.executeWithoutResult(status -> {
+            Team team = new Team("gramTeam");
+            em.persist(team);
+            for (int i = 0; i < usernames.length; i++) {
+                em.persist(new Member(usernames[i], i, team));
+            }
+        });
+    }
+
+    private List<String> usernames(MemberSearchCondition condition) {
+        return memberRepository.search(condition).stream()
+                .map(MemberTeamDto::getUsername)
+                .collect(Collectors.toList());
+    }
+
+    private long gramCount(Long memberId) {
+        return transactionTemplate.execute(status -> ((Number) em
+                .createNativeQuery("select count(*) from member_username_gram where member_id = ?1")
+                .setParameter(1, memberId)
+                .getSingleResult()).longValue());
+    }
+
+    private static MemberSearchCondition condition(String username, UsernameMatch match) {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsername(username);
+        condition.setUsernameMatch(match);
+        return condition;
+    }
+}
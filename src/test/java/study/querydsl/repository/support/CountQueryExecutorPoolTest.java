@@ -0,0 +1,96 @@
+package study.querydsl.repository.support;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 커넥션 풀이 하나뿐일 때 count 를 다른 커넥션에서 기다리지 않고 호출한 스레드에서 세는지 본다
+ */
+@SpringBootTest(properties = {
+        // 컨텍스트가 하나 더 뜨므로 스키마를 다시 만들지 않는다
+        "spring.jpa.hibernate.ddl-auto=update",
+        "spring.datasource.hikari.maximum-pool-size=1",
+        "querydsl.count-executor.max-wait=100ms"
+})
+class CountQueryExecutorPoolTest {
+
+    @Autowired
+    CountQueryExecutor countQueryExecutor;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Test
+    public void countsOnCallerConnectionWhenPoolIsShort() throws Exception {
+        TransactionTemplate readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+        double before = callerCounts("pool_short");
+
+        // 유일한 커넥션을 이 트랜잭션이 들고 있다
+        String countedOn = readOnlyTransaction.execute(status -> {
+            String[] thread = new String[1];
+            countQueryExecutor.submit(() -> {
+                thread[0] = Thread.currentThread().getName();
+                return 0;
+            }).join();
+            return thread[0];
+        });
+
+        assertThat(countedOn).isEqualTo(Thread.currentThread().getName());
+        assertThat(callerCounts("pool_short")).isEqualTo(before + 1);
+    }
+
+    @Test
+    public void countsOnCallerWhenWorkerWaitsForConnection() throws Exception {
+        TransactionTemplate readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+        CountDownLatch holding = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        // 다른 요청이 유일한 커넥션을 들고 있다
+        CompletableFuture<Void> other = CompletableFuture.runAsync(() -> readOnlyTransaction.executeWithoutResult(status -> {
+            holding.countDown();
+            await(release);
+        }));
+        assertThat(holding.await(5, TimeUnit.SECONDS)).isTrue();
+        double before = callerCounts("timeout");
+
+        long start = System.nanoTime();
+        try {
+            // 트랜잭션 밖에서 부르면 풀을 미리 보지 않으므로 작업이 커넥션을 기다린다
+            assertThat(countQueryExecutor.submit(() -> 42L).join()).isEqualTo(42L);
+        } finally {
+            release.countDown();
+        }
+
+        assertThat(System.nanoTime() - start).isLessThan(TimeUnit.SECONDS.toNanos(5));
+        assertThat(callerCounts("timeout")).isEqualTo(before + 1);
+        other.get(5, TimeUnit.SECONDS);
+    }
+
+    private double callerCounts(String reason) {
+        return meterRegistry.find("member.count.executor.caller").tag("reason", reason).counters().stream()
+                .mapToDouble(counter -> counter.count())
+                .sum();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
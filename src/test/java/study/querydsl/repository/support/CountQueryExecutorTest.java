@@ -0,0 +1,118 @@
+package study.querydsl.repository.support;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.repository.MemberRepository;
+
+import javax.persistence.EntityManager;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+@SpringBootTest
+class CountQueryExecutorTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    CountQueryExecutor countQueryExecutor;
+
+    @Autowired
+    MemberRepository memberRepository;
+
+    @AfterEach
+    void cleanup() {
+        transactionTemplate.executeWithoutResult(status -> {
+            JPAQueryFactory queryFactory = new JPAQueryFactory(em);
+            queryFactory.delete(member).where(member.username.startsWith("parallelCount")).execute();
+            queryFactory.delete(team).where(team.name.eq("parallelCountTeam")).execute();
+        });
+    }
+
+    @Test
+    public void searchPageParallel() throws Exception {
+        // given
+        transactionTemplate.executeWithoutResult(status -> {
+            Team parallelCountTeam = new Team("parallelCountTeam");
+            em.persist(parallelCountTeam);
+            for (int i = 0; i < 5; i++) {
+                em.persist(new Member("parallelCount" + i, i * 10, parallelCountTeam));
+            }
+        });
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("parallelCountTeam");
+
+        // when
+        Page<MemberTeamDto> first = memberRepository.searchPageParallel(condition, PageRequest.of(0, 2));
+        Page<MemberTeamDto> last = memberRepository.searchPageParallel(condition, PageRequest.of(1, 3));
+
+        // then
+        assertThat(first.getContent()).extracting("username").containsExactly("parallelCount0", "parallelCount1");
+        assertThat(first.getTotalElements()).isEqualTo(5);
+        // 마지막 페이지는 count 없이 전체 건수를 안다
+        assertThat(last.getContent()).hasSize(2);
+        assertThat(last.getTotalElements()).isEqualTo(5);
+    }
+
+    @Test
+    public void countOnWorkerIsRecordedInCallersScope() throws Exception {
+        transactionTemplate.executeWithoutResult(status -> {
+            Team parallelCountTeam = new Team("parallelCountTeam");
+            em.persist(parallelCountTeam);
+            for (int i = 0; i < 5; i++) {
+                em.persist(new Member("parallelCount" + i, i * 10, parallelCountTeam));
+            }
+        });
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("parallelCountTeam");
+
+        try (SqlStatementScope scope = SqlStatementScope.open()) {
+            Page<MemberTeamDto> page = memberRepository.searchPageParallel(condition, PageRequest.of(0, 2));
+
+            assertThat(page.getTotalElements()).isEqualTo(5);
+            // count 는 count-query 스레드에서 실행됐지만 이 요청의 범위에 잡힌다
+            assertThat(scope.getCountStatements()).isEqualTo(1);
+            assertThat(scope.getStatements()).isGreaterThanOrEqualTo(2);
+        }
+    }
+
+    @Test
+    public void cancelStopsRunningCountQuery() throws Exception {
+        CountQueryExecutor.CountQuery slow = countQueryExecutor.submit(() -> ((Number) em
+                .createNativeQuery("select count(*) from system_range(1, 1000000000) where mod(x, 7) = 3")
+                .getSingleResult()).longValue());
+        while (countQueryExecutor.activeCount() == 0) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(200);
+
+        long start = System.nanoTime();
+        slow.cancel();
+        while (countQueryExecutor.activeCount() > 0 && System.nanoTime() - start < 10_000_000_000L) {
+            Thread.sleep(10);
+        }
+
+        assertThat(countQueryExecutor.activeCount()).isZero();
+        assertThat(System.nanoTime() - start).isLessThan(5_000_000_000L);
+    }
+
+    @Test
+    public void joinReturnsCount() throws Exception {
+        assertThat(countQueryExecutor.submit(() -> 42L).join()).isEqualTo(42L);
+    }
+}
@@ -0,0 +1,308 @@
+package study.querydsl.repository.support;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.dto.UsernameMatch;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.repository.MemberRepository;
+import study.querydsl.repository.MemberSearchTemplates;
+import study.querydsl.service.TeamStatsService;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+/**
+ * 스토어는 커밋된 변경만 반영하므로 테스트 트랜잭션 없이 확인한다.
+ * 커밋은 scheduler 스레드에서 다시 읽어 반영하므로 확인 전에 settle() 로 기다린다.
+ * 다시 채우기는 테스트에서 직접 부른다 (예약된 다시 채우기가 검증 중에 돌지 않게 rewarm-delay 를 길게)
+ */
+@SpringBootTest(properties = {
+        "querydsl.column-store.enabled=true",
+        "querydsl.column-store.rewarm-delay=1h",
+        "querydsl.column-store.refresh-interval=0",
+        "querydsl.cache.search.enabled=false"
+})
+class MemberColumnStoreTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    MemberRepository memberRepository;
+
+    @Autowired
+    MemberSearchTemplates searchTemplates;
+
+    @Autowired
+    MemberColumnStore columnStore;
+
+    @Autowired
+    TeamStatsService teamStatsService;
+
+    Long[] ids;
+
+    @BeforeEach
+    void before() {
+        ids = transactionTemplate.execute(status -> {
+            Team columnTeamA = new Team("columnTeamA");
+            Team columnTeamB = new Team("columnTeamB");
+            em.persist(columnTeamA);
+            em.persist(columnTeamB);
+            Member column1 = new Member("column1", 10, columnTeamA);
+            Member column2 = new Member("column2", 20, columnTeamA);
+            em.persist(column1);
+            em.persist(column2);
+            em.persist(new Member("column3", 30, columnTeamB));
+            em.persist(new Member("column3", 40, columnTeamB));
+            em.persist(new Member("column5", 50));
+            return new Long[]{columnTeamA.getId(), columnTeamB.getId(), column1.getId(), column2.getId()};
+        });
+        assertThat(columnStore.warm()).isTrue();
+    }
+
+    @AfterEach
+    void cleanup() {
+        transactionTemplate.executeWithoutResult(status -> {
+            JPAQueryFactory queryFactory = new JPAQueryFactory(em);
+            queryFactory.delete(member).where(member.username.startsWith("column")).execute();
+            queryFactory.delete(team).where(team.name.startsWith("column")).execute();
+        });
+        teamStatsService.reconcile();
+    }
+
+    @Test
+    public void answersSameAsDatabase() throws Exception {
+        assertSameAsDatabase(condition(null, "columnTeamA", null, null));
+        assertSameAsDatabase(condition(null, "columnTeamB", 35, null));
+        assertSameAsDatabase(condition("column3", null, null, null));
+        assertSameAsDatabase(condition("column3", "columnTeamB", 31, 45));
+        assertSameAsDatabase(condition("column5", null, null, null));
+        assertSameAsDatabase(condition(null, null, 15, 45));
+        assertSameAsDatabase(condition(null, "columnTeamA", 30, 20));
+        assertSameAsDatabase(condition(null, "noSuchTeam", null, null));
+    }
+
+    @Test
+    public void searchPageCountsAllMatches() throws Exception {
+        Page<MemberTeamDto> page = columnStore.searchPage(condition(null, "columnTeamB", null, null), PageRequest.of(1, 1));
+
+        assertThat(page.getTotalElements()).isEqualTo(2);
+        assertThat(page.getContent()).extracting(MemberTeamDto::getAge).containsExactly(40);
+        assertThat(memberRepository.searchPageComplex(condition(null, "columnTeamB", null, null), PageRequest.of(1, 1)))
+                .isEqualTo(page);
+    }
+
+    @Test
+    public void followsEntityChanges() throws Exception {
+        // 추가, 나이 변경, 팀 이동, 팀 이름 변경, 삭제
+        transactionTemplate.executeWithoutResult(status -> {
+            em.persist(new Member("column6", 60, em.find(Team.class, ids[0])));
+            em.find(Member.class, ids[2]).setAge(11);
+            em.find(Member.class, ids[3]).changeTeam(em.find(Team.class, ids[1]));
+        });
+        transactionTemplate.executeWithoutResult(status -> em.find(Team.class, ids[0]).setName("columnTeamC"));
+        transactionTemplate.executeWithoutResult(status -> em.remove(em.find(Member.class, ids[2])));
+        settle();
+
+        assertThat(columnStore.search(condition(null, "columnTeamA", null, null))).isEmpty();
+        assertThat(columnStore.search(condition(null, "columnTeamC", null, null)))
+                .extracting(MemberTeamDto::getUsername)
+                .containsExactly("column6");
+        assertThat(columnStore.search(condition("column2", null, null, null)))
+                .extracting(MemberTeamDto::getTeamName)
+                .containsExactly("columnTeamB");
+        assertThat(columnStore.search(condition("column1", null, null, null))).isEmpty();
+        assertSameAsDatabase(condition(null, "columnTeamB", null, null));
+        assertSameAsDatabase(condition(null, null, 55, 65));
+    }
+
+    @Test
+    public void rollbackIsIgnored() throws Exception {
+        transactionTemplate.executeWithoutResult(status -> {
+            em.persist(new Member("column7", 70, em.find(Team.class, ids[0])));
+            em.flush();
+            status.setRollbackOnly();
+        });
+        settle();
+
+        assertThat(columnStore.search(condition("column7", null, null, null))).isEmpty();
+    }
+
+    @Test
+    public void lateOlderCommitIsReread() throws Exception {
+        transactionTemplate.executeWithoutResult(status -> em.find(Member.class, ids[2]).setAge(11));
+        settle();
+
+        // 먼저 커밋됐지만 이벤트가 늦게 온 커밋 (나이 10 으로 바꾼) 을 흉내 낸다. 커밋된 지금 값(11) 을 다시 읽어야 한다
+        MemberColumnStore.Changes late = new MemberColumnStore.Changes();
+        late.member(ids[2]);
+        columnStore.beforeCommit(late);
+        columnStore.onDataChanged(new DataChangedEvent(Set.of("member"), 0));
+        settle();
+
+        assertThat(columnStore.search(condition("column1", null, null, null)))
+                .extracting(MemberTeamDto::getAge)
+                .containsExactly(11);
+    }
+
+    @Test
+    public void concurrentCommitsToSameMemberEndAtLatestValue() throws Exception {
+        CountDownLatch firstFlushed = new CountDownLatch(1);
+        CountDownLatch secondStarted = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            // 첫 번째가 행 잠금을 잡은 채로 두 번째가 같은 행을 바꾸려고 기다리게 하고, 첫 번째 → 두 번째 순서로 커밋한다
+            Future<?> first = executor.submit(() -> transactionTemplate.executeWithoutResult(status -> {
+                em.find(Member.class, ids[2]).setAge(21);
+                em.flush();
+                firstFlushed.countDown();
+                await(secondStarted);
+                sleep(200);
+            }));
+            Future<?> second = executor.submit(() -> transactionTemplate.executeWithoutResult(status -> {
+                await(firstFlushed);
+                Member column1 = em.find(Member.class, ids[2]);
+                secondStarted.countDown();
+                column1.setAge(22);
+            }));
+            first.get(10, TimeUnit.SECONDS);
+            second.get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        settle();
+
+        Integer committed = transactionTemplate.execute(status ->
+                new JPAQueryFactory(em).select(member.age).from(member).where(member.id.eq(ids[2])).fetchOne());
+        assertThat(committed).isEqualTo(22);
+        assertThat(columnStore.search(condition("column1", null, null, null)))
+                .extracting(MemberTeamDto::getAge)
+                .containsExactly(committed);
+    }
+
+    @Test
+    public void bulkUpdateDropsStoreUntilWarmed() throws Exception {
+        // 벌크 연산은 엔티티 이벤트가 없어서 반영할 수 없다
+        transactionTemplate.executeWithoutResult(status -> new JPAQueryFactory(em)
+                .update(member)
+                .set(member.age, member.age.add(1))
+                .where(member.username.eq("column1"))
+                .execute());
+
+        assertThat(columnStore.isWarm()).isFalse();
+        assertThat(columnStore.search(condition("column1", null, null, null))).isNull();
+        // 저장소는 DB 로 조회한다
+        assertThat(memberRepository.search(condition("column1", null, null, null)))
+                .extracting(MemberTeamDto::getAge)
+                .containsExactly(11);
+
+        assertThat(columnStore.warm()).isTrue();
+        assertThat(columnStore.search(condition("column1", null, null, null)))
+                .extracting(MemberTeamDto::getAge)
+                .containsExactly(11);
+    }
+
+    @Test
+    public void usernamePrefixGoesToDatabase() throws Exception {
+        MemberSearchCondition condition = condition("column", null, null, null);
+        condition.setUsernameMatch(UsernameMatch.PREFIX);
+
+        assertThat(columnStore.search(condition)).isNull();
+        assertThat(memberRepository.search(condition)).hasSize(5);
+    }
+
+    @Test
+    public void batchAsksStoreBeforeDatabase() throws Exception {
+        MemberSearchCondition prefix = condition("column", null, null, null);
+        prefix.setUsernameMatch(UsernameMatch.PREFIX);
+        List<MemberSearchCondition> conditions = List.of(
+                condition(null, "columnTeamA", null, null),
+                condition("column3", null, null, null),
+                prefix);
+
+        Map<Integer, List<MemberTeamDto>> results;
+        try (SqlStatementScope scope = SqlStatementScope.open()) {
+            results = memberRepository.searchBatch(conditions);
+            // 스토어가 답하지 못하는 앞부분 검색만 DB 로 간다
+            assertThat(scope.getStatements()).isEqualTo(1);
+        }
+
+        assertThat(results.get(0)).extracting(MemberTeamDto::getUsername).containsExactlyInAnyOrder("column1", "column2");
+        assertThat(results.get(1)).extracting(MemberTeamDto::getAge).containsExactlyInAnyOrder(30, 40);
+        assertThat(results.get(2)).hasSize(5);
+    }
+
+    @Test
+    public void readWriteTransactionGoesToDatabase() throws Exception {
+        List<MemberTeamDto> result = transactionTemplate.execute(status -> {
+            em.persist(new Member("column8", 80));
+            return columnStore.search(condition("column8", null, null, null));
+        });
+
+        assertThat(result).isNull();
+    }
+
+    private void assertSameAsDatabase(MemberSearchCondition condition) {
+        List<MemberTeamDto> fromDatabase = transactionTemplate.execute(status -> searchTemplates.fetch(condition));
+
+        assertThat(columnStore.search(condition)).containsExactlyInAnyOrderElementsOf(fromDatabase);
+        assertThat(memberRepository.search(condition)).containsExactlyInAnyOrderElementsOf(fromDatabase);
+    }
+
+    private void settle() {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!columnStore.isSettled() && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+        assertThat(columnStore.isSettled()).isTrue();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static MemberSearchCondition condition(String username, String teamName, Integer ageGoe, Integer ageLoe) {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsername(username);
+        condition.setTeamName(teamName);
+        condition.setAgeGoe(ageGoe);
+        condition.setAgeLoe(ageLoe);
+        return condition;
+    }
+}
@@ -0,0 +1,100 @@
+package study.querydsl.repository.support;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.repository.MemberRepository;
+
+import javax.persistence.EntityManager;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+@SpringBootTest
+class MemberCountCacheTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    MemberRepository memberRepository;
+
+    @Autowired
+    MemberCountCache countCache;
+
+    @AfterEach
+    void cleanup() {
+        transactionTemplate.executeWithoutResult(status -> {
+            JPAQueryFactory queryFactory = new JPAQueryFactory(em);
+            queryFactory.delete(member).where(member.username.startsWith("countCache")).execute();
+            queryFactory.delete(team).where(team.name.eq("countCacheTeam")).execute();
+        });
+    }
+
+    @Test
+    public void countIsCachedUntilCommittedWrite() throws Exception {
+        // given
+        transactionTemplate.executeWithoutResult(status -> {
+            Team countCacheTeam = new Team("countCacheTeam");
+            em.persist(countCacheTeam);
+            em.persist(new Member("countCache1", 10, countCacheTeam));
+            em.persist(new Member("countCache2", 20, countCacheTeam));
+            em.persist(new Member("countCache3", 30, countCacheTeam));
+        });
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("countCacheTeam");
+        condition.setUsername("");
+        PageRequest pageRequest = PageRequest.of(0, 2);
+
+        // when
+        long hits = countCache.stats().hitCount();
+        long first = memberRepository.searchPageComplex(condition, pageRequest).getTotalElements();
+        long second = memberRepository.searchPageComplex(condition, pageRequest).getTotalElements();
+
+        // then
+        assertThat(first).isEqualTo(3);
+        assertThat(second).isEqualTo(3);
+        assertThat(countCache.stats().hitCount()).isEqualTo(hits + 1);
+
+        // 벌크 삭제가 커밋되면 캐시가 비워진다
+        transactionTemplate.executeWithoutResult(status -> new JPAQueryFactory(em)
+                .delete(member)
+                .where(member.username.eq("countCache1"))
+                .execute());
+
+        assertThat(memberRepository.searchPageComplex(condition, pageRequest).getTotalElements()).isEqualTo(2);
+    }
+
+    @Test
+    public void uncommittedChangesBypassCache() throws Exception {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("countCacheTeam");
+        PageRequest pageRequest = PageRequest.of(0, 1);
+        long requests = countCache.stats().requestCount();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            Team countCacheTeam = new Team("countCacheTeam");
+            em.persist(countCacheTeam);
+            em.persist(new Member("countCache1", 10, countCacheTeam));
+            em.persist(new Member("countCache2", 20, countCacheTeam));
+
+            assertThat(memberRepository.searchPageComplex(condition, pageRequest).getTotalElements()).isEqualTo(2);
+            status.setRollbackOnly();
+        });
+
+        // 롤백된 데이터로 센 값은 캐시에 들어가지 않는다
+        assertThat(countCache.stats().requestCount()).isEqualTo(requests);
+    }
+}
@@ -0,0 +1,104 @@
+package study.querydsl.repository.support;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.repository.MemberJapRepository;
+import study.querydsl.repository.MemberRepository;
+
+import javax.persistence.EntityManager;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+@SpringBootTest
+class MemberSearchCacheTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    MemberRepository memberRepository;
+
+    @Autowired
+    MemberJapRepository memberJapRepository;
+
+    @Autowired
+    MemberSearchCache searchCache;
+
+    MemberSearchCondition condition;
+    Long teamId;
+
+    @BeforeEach
+    void before() {
+        teamId = transactionTemplate.execute(status -> {
+            Team searchCacheTeam = new Team("searchCacheTeam");
+            em.persist(searchCacheTeam);
+            em.persist(new Member("searchCache1", 10, searchCacheTeam));
+            em.persist(new Member("searchCache2", 20, searchCacheTeam));
+            em.persist(new Member("searchCache3", 30, searchCacheTeam));
+            return searchCacheTeam.getId();
+        });
+        condition = new MemberSearchCondition();
+        condition.setTeamName("searchCacheTeam");
+    }
+
+    @AfterEach
+    void cleanup() {
+        transactionTemplate.executeWithoutResult(status -> {
+            JPAQueryFactory queryFactory = new JPAQueryFactory(em);
+            queryFactory.delete(member).where(member.username.startsWith("searchCache")).execute();
+            queryFactory.delete(team).where(team.name.eq("searchCacheTeam")).execute();
+        });
+    }
+
+    @Test
+    public void searchIsCachedUntilEntityChangeCommits() throws Exception {
+        long hits = searchCache.stats().hitCount();
+
+        assertThat(memberJapRepository.search(condition)).hasSize(3);
+        // 빈 문자열 조건은 정규화해서 같은 키
+        condition.setUsername("");
+        assertThat(memberRepository.search(condition)).hasSize(3);
+        assertThat(searchCache.stats().hitCount()).isEqualTo(hits + 1);
+
+        transactionTemplate.executeWithoutResult(status ->
+                em.persist(new Member("searchCache4", 40, em.find(Team.class, teamId))));
+
+        assertThat(memberRepository.search(condition)).hasSize(4);
+    }
+
+    @Test
+    public void pagesAreCachedSeparatelyAndBulkUpdateInvalidates() throws Exception {
+        PageRequest first = PageRequest.of(0, 2);
+        PageRequest second = PageRequest.of(1, 2);
+
+        assertThat(memberRepository.searchPageComplex(condition, first).getContent()).hasSize(2);
+        assertThat(memberRepository.searchPageComplex(condition, second).getContent()).hasSize(1);
+        long hits = searchCache.stats().hitCount();
+        assertThat(memberRepository.searchPageComplex(condition, first).getContent()).hasSize(2);
+        assertThat(searchCache.stats().hitCount()).isEqualTo(hits + 1);
+
+        // 벌크 수정(JPAUpdateClause) 이 커밋되면 캐시가 비워진다
+        transactionTemplate.executeWithoutResult(status -> new JPAQueryFactory(em)
+                .update(member)
+                .set(member.age, 99)
+                .where(member.username.startsWith("searchCache"))
+                .execute());
+
+        assertThat(memberRepository.searchPageComplex(condition, first).getContent())
+                .extracting("age").containsOnly(99);
+    }
+}
@@ -0,0 +1,109 @@
+package study.querydsl.repository.support;
+
+import com.querydsl.core.types.FactoryExpression;
+import com.querydsl.core.types.Projections;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.dto.MemberDto;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.dto.QMemberTeamDto;
+import study.querydsl.dto.UserDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+@SpringBootTest
+@Transactional
+class MethodHandleProjectionsTest {
+
+    @Autowired
+    EntityManager em;
+
+    JPAQueryFactory queryFactory;
+
+    @BeforeEach
+    void before() {
+        queryFactory = new JPAQueryFactory(em);
+        Team handleTeam = new Team("handleTeam");
+        em.persist(handleTeam);
+        em.persist(new Member("handle1", 10, handleTeam));
+        em.persist(new Member("handle2", 20, handleTeam));
+        em.persist(new Member("handle3", 30));
+    }
+
+    @Test
+    public void beanMatchesProjectionsBean() throws Exception {
+        assertThat(fetch(MethodHandleProjections.bean(MemberDto.class, member.username, member.age)))
+                .isEqualTo(fetch(Projections.bean(MemberDto.class, member.username, member.age)));
+    }
+
+    @Test
+    public void fieldsMatchesProjectionsFields() throws Exception {
+        assertThat(fetch(MethodHandleProjections.fields(UserDto.class, member.username.as("name"), member.age)))
+                .isEqualTo(fetch(Projections.fields(UserDto.class, member.username.as("name"), member.age)))
+                .extracting(UserDto::getName)
+                .containsExactly("handle1", "handle2", "handle3");
+    }
+
+    @Test
+    public void constructorMatchesQueryProjection() throws Exception {
+        FactoryExpression<MemberTeamDto> projection = MethodHandleProjections.constructor(MemberTeamDto.class,
+                member.id.as("memberId"), member.username, member.age, team.id.as("teamId"), team.name.as("teamName"));
+
+        List<MemberTeamDto> result = queryFactory
+                .select(projection)
+                .from(member)
+                .leftJoin(member.team, team)
+                .where(member.username.startsWith("handle"))
+                .orderBy(member.username.asc())
+                .fetch();
+
+        assertThat(result).isEqualTo(queryFactory
+                .select(new QMemberTeamDto(member.id, member.username, member.age, team.id, team.name))
+                .from(member)
+                .leftJoin(member.team, team)
+                .where(member.username.startsWith("handle"))
+                .orderBy(member.username.asc())
+                .fetch());
+        assertThat(result.get(2).getTeamName()).isNull();
+    }
+
+    @Test
+    public void beanSkipsNullValues() throws Exception {
+        FactoryExpression<MemberDto> projection = MethodHandleProjections.bean(MemberDto.class, member.username, member.age);
+
+        MemberDto dto = projection.newInstance("handle1", null);
+
+        assertThat(dto.getUsername()).isEqualTo("handle1");
+        assertThat(dto.getAge()).isZero();
+    }
+
+    @Test
+    public void unknownPropertyFailsWhenBuilt() throws Exception {
+        assertThatThrownBy(() -> MethodHandleProjections.bean(UserDto.class, member.username))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("username");
+        assertThatThrownBy(() -> MethodHandleProjections.constructor(MemberDto.class, member.age, member.username))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private <T> List<T> fetch(FactoryExpression<T> projection) {
+        return queryFactory
+                .select(projection)
+                .from(member)
+                .where(member.username.startsWith("handle"))
+                .orderBy(member.username.asc())
+                .fetch();
+    }
+}
@@ -0,0 +1,83 @@
+package study.querydsl.repository.support;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.repository.MemberJapRepository;
+import study.querydsl.repository.MemberRepository;
+
+import javax.persistence.EntityManager;
+import javax.transaction.Transactional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@Transactional
+class RepositoryMetricsAspectTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    MeterRegistry registry;
+
+    @Autowired
+    MemberRepository memberRepository;
+
+    @Autowired
+    MemberJapRepository memberJapRepository;
+
+    @Test
+    public void searchPageComplexRecordsContentAndCount() throws Exception {
+        // given
+        Team team = new Team("metricsTeam");
+        em.persist(team);
+        em.persist(new Member("metrics1", 10, team));
+        em.persist(new Member("metrics2", 20, team));
+        em.persist(new Member("metrics3", 30, team));
+        em.flush();
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("metricsTeam");
+        condition.setAgeGoe(10);
+
+        // when
+        memberRepository.searchPageComplex(condition, PageRequest.of(0, 2));
+
+        // then
+        Timer calls = registry.get("member.repository.calls")
+                .tags("method", "searchPageComplex", "shape", "teamName+ageGoe", "outcome", "success")
+                .timer();
+        assertThat(calls.count()).isGreaterThanOrEqualTo(1);
+
+        DistributionSummary statements = registry.get("member.repository.statements")
+                .tags("method", "searchPageComplex", "shape", "teamName+ageGoe")
+                .summary();
+        assertThat(statements.max()).isEqualTo(2);
+
+        DistributionSummary rows = registry.get("member.repository.rows")
+                .tags("method", "searchPageComplex", "shape", "teamName+ageGoe")
+                .summary();
+        assertThat(rows.max()).isEqualTo(2);
+
+        assertThat(registry.get("member.repository.query")
+                .tags("method", "searchPageComplex", "query", "count").timer().count()).isGreaterThanOrEqualTo(1);
+        assertThat(registry.get("member.repository.query")
+                .tags("method", "searchPageComplex", "query", "content").timer().count()).isGreaterThanOrEqualTo(1);
+    }
+
+    @Test
+    public void methodWithoutConditionIsTaggedNotApplicable() throws Exception {
+        memberJapRepository.findByUsername_Querydsl("metrics1");
+
+        assertThat(registry.get("member.repository.calls")
+                .tags("method", "findByUsername_Querydsl", "shape", "n/a").timer().count()).isGreaterThanOrEqualTo(1);
+    }
+}
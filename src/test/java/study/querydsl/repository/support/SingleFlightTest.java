@@ -0,0 +1,124 @@
+package study.querydsl.repository.support;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SingleFlightTest {
+
+    static final int CALLERS = 8;
+
+    MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    SingleFlight<String, List<String>> singleFlight = new SingleFlight<>("test", Duration.ofSeconds(5), meterRegistry);
+
+    @Test
+    public void concurrentCallsShareOneExecution() throws Exception {
+        AtomicInteger executions = new AtomicInteger();
+        List<List<String>> results = runConcurrently(() -> singleFlight.execute("key", () -> {
+            executions.incrementAndGet();
+            awaitCollapsed(CALLERS - 1);
+            return List.of("result");
+        }));
+
+        assertThat(executions).hasValue(1);
+        // 모두 같은 결과 인스턴스
+        assertThat(results).hasSize(CALLERS).allSatisfy(result -> assertThat(result).isSameAs(results.get(0)));
+        assertThat(calls("executed")).isEqualTo(1);
+        assertThat(calls("collapsed")).isEqualTo(CALLERS - 1);
+
+        // 끝난 실행은 남지 않는다
+        singleFlight.execute("key", () -> {
+            executions.incrementAndGet();
+            return List.of();
+        });
+        assertThat(executions).hasValue(2);
+        assertThat(meterRegistry.get("test.single.flight.in.flight").gauge().value()).isZero();
+    }
+
+    @Test
+    public void failureIsSharedAndNotRemembered() throws Exception {
+        List<Future<List<String>>> futures = submitConcurrently(() -> singleFlight.execute("key", () -> {
+            awaitCollapsed(CALLERS - 1);
+            throw new IllegalStateException("boom");
+        }));
+        for (Future<List<String>> future : futures) {
+            assertThatThrownBy(() -> future.get(5, TimeUnit.SECONDS))
+                    .hasCauseInstanceOf(IllegalStateException.class)
+                    .hasRootCauseMessage("boom");
+        }
+
+        assertThat(singleFlight.execute("key", () -> List.of("retry"))).containsExactly("retry");
+    }
+
+    @Test
+    public void slowLeaderIsNotWaitedForBeyondMaxWait() throws Exception {
+        SingleFlight<String, List<String>> bounded = new SingleFlight<>("bounded", Duration.ofMillis(50), meterRegistry);
+        AtomicInteger executions = new AtomicInteger();
+        List<List<String>> results = runConcurrently(() -> bounded.execute("key", () -> {
+            if (executions.incrementAndGet() == 1) {
+                // leader 는 나머지가 모두 기다리다 포기할 때까지 끝나지 않는다
+                long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+                while (meterRegistry.get("bounded.single.flight.calls").tag("result", "timed-out").counter().count() < CALLERS - 1
+                        && System.nanoTime() < deadline) {
+                    Thread.onSpinWait();
+                }
+                return List.of("leader");
+            }
+            return List.of("own");
+        }));
+
+        assertThat(executions).hasValue(CALLERS);
+        assertThat(results).filteredOn(result -> result.contains("own")).hasSize(CALLERS - 1);
+    }
+
+    @Test
+    public void differentKeysDoNotWait() throws Exception {
+        assertThat(singleFlight.execute("a", () -> singleFlight.execute("b", () -> List.of("b")))).containsExactly("b");
+        assertThat(calls("collapsed")).isZero();
+    }
+
+    private List<List<String>> runConcurrently(Supplier<List<String>> call) throws Exception {
+        List<List<String>> results = new ArrayList<>();
+        for (Future<List<String>> future : submitConcurrently(call)) {
+            results.add(future.get(5, TimeUnit.SECONDS));
+        }
+        return results;
+    }
+
+    private List<Future<List<String>>> submitConcurrently(Supplier<List<String>> call) {
+        ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+        List<Future<List<String>>> futures = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            futures.add(executor.submit(call::get));
+        }
+        executor.shutdown();
+        return futures;
+    }
+
+    /**
+     * 다른 호출이 모두 같이 기다리기 시작할 때까지 leader 를 붙잡아 둔다
+     */
+    private void awaitCollapsed(int count) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (calls("collapsed") < count && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+    }
+
+    private double calls(String result) {
+        return meterRegistry.get("test.single.flight.calls").tag("result", result).counter().count();
+    }
+}
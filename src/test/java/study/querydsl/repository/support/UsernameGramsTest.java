@@ -0,0 +1,23 @@
+package study.querydsl.repository.support;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UsernameGramsTest {
+
+    @Test
+    public void shortTermProbesEveryGram() throws Exception {
+        assertThat(UsernameGrams.probedGrams("alicia")).containsExactly("ali", "lic", "ici", "cia");
+    }
+
+    @Test
+    public void longTermProbesSpreadGrams() throws Exception {
+        // 조각 14개 중 처음과 끝을 포함해 8개
+        assertThat(UsernameGrams.probedGrams("abcdefghijklmnop"))
+                .hasSize(8)
+                .startsWith("abc")
+                .endsWith("nop")
+                .doesNotHaveDuplicates();
+    }
+}
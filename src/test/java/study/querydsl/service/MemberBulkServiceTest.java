@@ -0,0 +1,160 @@
+package study.querydsl.service;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberBulkResult;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+/**
+ * 구간마다 다른 스레드에서 커밋하므로 테스트 트랜잭션 없이 확인한다
+ */
+@SpringBootTest(properties = {
+        // 컨텍스트가 하나 더 뜨므로 스키마를 다시 만들지 않는다
+        "spring.jpa.hibernate.ddl-auto=update",
+        "querydsl.bulk.chunk-size=7"
+})
+class MemberBulkServiceTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    MemberBulkService memberBulkService;
+
+    @AfterEach
+    void cleanup() {
+        transactionTemplate.executeWithoutResult(status -> {
+            JPAQueryFactory queryFactory = new JPAQueryFactory(em);
+            queryFactory.delete(member).where(member.username.startsWith("bulk")).execute();
+            queryFactory.delete(team).where(team.name.startsWith("bulk")).execute();
+        });
+    }
+
+    @Test
+    public void updateInChunks() throws Exception {
+        save(50);
+        Long bulk20 = idOf("bulk20");
+        // 2차 캐시에 올려 둔다
+        transactionTemplate.executeWithoutResult(status -> em.find(Member.class, bulk20));
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("bulkTeamA");
+        condition.setAgeGoe(10);
+
+        MemberBulkResult result = memberBulkService.update(condition,
+                clause -> clause.set(member.age, member.age.add(100)));
+
+        // bulkTeamA(짝수) 중 age >= 10 -> 20건, 7건씩 3구간
+        assertThat(result.getRows()).isEqualTo(20);
+        assertThat(result.getChunks()).isEqualTo(3);
+        assertThat(ages("bulkTeamA")).filteredOn(age -> age >= 100).hasSize(20);
+        assertThat(ages("bulkTeamA")).filteredOn(age -> age < 10).hasSize(5);
+        assertThat(ages("bulkTeamB")).allMatch(age -> age < 50);
+
+        // 벌크 연산이 member 리전을 비우므로 바뀐 값으로 읽힌다
+        Integer age = transactionTemplate.execute(status -> em.find(Member.class, bulk20).getAge());
+        assertThat(age).isEqualTo(120);
+    }
+
+    @Test
+    public void deleteInChunks() throws Exception {
+        save(50);
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("bulkTeamA");
+        condition.setAgeLoe(29);
+
+        MemberBulkResult result = memberBulkService.delete(condition);
+
+        // bulkTeamA(짝수) 중 age <= 29 -> 15건, 7건씩 3구간
+        assertThat(result.getRows()).isEqualTo(15);
+        assertThat(result.getChunks()).isEqualTo(3);
+        assertThat(ages("bulkTeamA")).hasSize(10).allMatch(age -> age >= 30);
+        assertThat(ages("bulkTeamB")).hasSize(25);
+    }
+
+    @Test
+    public void noMatchingRows() throws Exception {
+        save(10);
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("bulkTeamA");
+        condition.setAgeGoe(10);
+
+        MemberBulkResult result = memberBulkService.delete(condition);
+
+        assertThat(result.getRows()).isZero();
+        assertThat(result.getChunks()).isZero();
+    }
+
+    @Test
+    public void deleteByTeamName() throws Exception {
+        save(50);
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("bulkTeamB");
+
+        MemberBulkResult result = memberBulkService.delete(condition);
+
+        assertThat(result.getRows()).isEqualTo(25);
+        assertThat(result.getChunks()).isEqualTo(4);
+        assertThat(ages("bulkTeamB")).isEmpty();
+        assertThat(ages("bulkTeamA")).hasSize(25);
+    }
+
+    @Test
+    public void rejectsCallerTransaction() throws Exception {
+        assertThatThrownBy(() -> transactionTemplate.executeWithoutResult(status ->
+                memberBulkService.delete(new MemberSearchCondition())))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    /**
+     * bulk0 ~ bulk{count-1}, age = i, 짝수는 bulkTeamA 홀수는 bulkTeamB
+     */
+    private void save(int count) {
+        transactionTemplate.executeWithoutResult(status -> {
+            Team teamA = new Team("bulkTeamA");
+            Team teamB = new Team("bulkTeamB");
+            em.persist(teamA);
+            em.persist(teamB);
+            for (int i = 0; i < count; i++) {
+                em.persist(new Member("bulk" + i, i, i % 2 == 0 ? teamA : teamB));
+            }
+        });
+    }
+
+    private Long idOf(String username) {
+        return transactionTemplate.execute(status -> new JPAQueryFactory(em)
+                .select(member.id)
+                .from(member)
+                .where(member.username.eq(username))
+                .fetchOne());
+    }
+
+    private List<Integer> ages(String teamName) {
+        return transactionTemplate.execute(status -> new JPAQueryFactory(em)
+                .select(member.age)
+                .from(member)
+                .join(member.team, team)
+                .where(team.name.eq(teamName), member.username.startsWith("bulk"))
+                .fetch());
+    }
+}
@@ -0,0 +1,176 @@
+package study.querydsl.service;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberImportResult;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+/**
+ * chunk 마다 커밋되는지 보려면 테스트 트랜잭션 없이 돌리고, 결과는 새 트랜잭션에서 읽는다
+ */
+@SpringBootTest(properties = {
+        // 컨텍스트가 하나 더 뜨므로 스키마를 다시 만들지 않는다
+        "spring.jpa.hibernate.ddl-auto=update",
+        "querydsl.import.chunk-size=100"
+})
+class MemberImportServiceTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    MemberImportService memberImportService;
+
+    @Autowired
+    TeamStatsService teamStatsService;
+
+    @AfterEach
+    void cleanup() {
+        transactionTemplate.executeWithoutResult(status -> {
+            JPAQueryFactory queryFactory = new JPAQueryFactory(em);
+            queryFactory.delete(member).where(member.username.startsWith("import")).execute();
+            queryFactory.delete(team).where(team.name.startsWith("importTeam")).execute();
+        });
+        // 벌크 delete 로 지운 팀의 집계를 지운다
+        teamStatsService.reconcile();
+    }
+
+    @Test
+    public void importCsv() throws Exception {
+        // given
+        Long existingId = transactionTemplate.execute(status -> {
+            Team existing = new Team("importTeamA");
+            em.persist(existing);
+            return existing.getId();
+        });
+
+        StringBuilder csv = new StringBuilder("username,age,teamName\n");
+        for (int i = 0; i < 250; i++) {
+            csv.append("import").append(i).append(',').append(i % 60).append(',')
+                    .append(i % 2 == 0 ? "importTeamA" : "importTeamB").append('\n');
+        }
+        csv.append("importNoTeam,7\n");
+
+        // when
+        MemberImportResult result = memberImportService.importCsv(input(csv.toString()));
+
+        // then
+        assertThat(result.getRows()).isEqualTo(251);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            JPAQueryFactory queryFactory = new JPAQueryFactory(em);
+            List<Member> teamA = queryFactory
+                    .selectFrom(member)
+                    .join(member.team, team)
+                    .where(team.id.eq(existingId))
+                    .fetch();
+            assertThat(teamA).hasSize(125);
+            assertThat(queryFactory.selectFrom(team).where(team.name.eq("importTeamB")).fetch()).hasSize(1);
+            assertThat(queryFactory.selectFrom(member).where(member.username.eq("importNoTeam")).fetchOne().getTeam()).isNull();
+        });
+    }
+
+    @Test
+    public void importNdjson() throws Exception {
+        String ndjson = "{\"username\":\"importJson1\",\"age\":10,\"teamName\":\"importTeamC\"}\n"
+                + "{\"username\":\"importJson2\",\"age\":20,\"teamName\":\"importTeamC\"}\n";
+
+        MemberImportResult result = memberImportService.importNdjson(input(ndjson));
+
+        assertThat(result.getRows()).isEqualTo(2);
+        List<Member> members = transactionTemplate.execute(status -> new JPAQueryFactory(em)
+                .selectFrom(member)
+                .join(member.team, team).fetchJoin()
+                .where(member.username.startsWith("importJson"))
+                .fetch());
+        assertThat(members).hasSize(2).extracting(m -> m.getTeam().getName()).containsOnly("importTeamC");
+    }
+
+    @Test
+    public void invalidCsvLine() throws Exception {
+        assertThatThrownBy(() -> memberImportService.importCsv(input("import1,ten,teamA\n")))
+                .isInstanceOfSatisfying(MemberImportException.class, e -> {
+                    assertThat(e.isInvalidInput()).isTrue();
+                    assertThat(e.getLine()).isEqualTo(1);
+                    assertThat(e.getCommittedRows()).isZero();
+                })
+                .hasCauseInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void failureReportsCommittedRowsAndLine() throws Exception {
+        StringBuilder csv = new StringBuilder("username,age,teamName\n");
+        for (int i = 0; i < 150; i++) {
+            csv.append("importPartial").append(i).append(',').append(i % 60).append('\n');
+        }
+        // 152 번째 줄. 앞의 100 건(chunk 하나) 은 커밋됐고 그 뒤 50 건은 쓰지 않았다
+        csv.append("importPartialBad,ten\n");
+
+        assertThatThrownBy(() -> memberImportService.importCsv(input(csv.toString())))
+                .isInstanceOfSatisfying(MemberImportException.class, e -> {
+                    assertThat(e.getCommittedRows()).isEqualTo(100);
+                    assertThat(e.getLine()).isEqualTo(152);
+                });
+        assertThat(countMembers("importPartial")).isEqualTo(100);
+    }
+
+    @Test
+    public void writeFailureKeepsEarlierChunks() throws Exception {
+        StringBuilder csv = new StringBuilder("username,age,teamName\n");
+        for (int i = 0; i < 150; i++) {
+            csv.append("importWrite").append(i).append(',').append(i % 60).append(",importTeamW\n");
+        }
+        // 파싱은 되지만 username 컬럼(255) 보다 길어서 두 번째 chunk(102 번째 줄부터) 를 쓰다가 DB 가 거절한다
+        csv.append("importWrite").append("x".repeat(300)).append(",1,importTeamW\n");
+
+        assertThatThrownBy(() -> memberImportService.importCsv(input(csv.toString())))
+                .isInstanceOfSatisfying(MemberImportException.class, e -> {
+                    assertThat(e.isInvalidInput()).isFalse();
+                    assertThat(e.getCommittedRows()).isEqualTo(100);
+                    assertThat(e.getLine()).isEqualTo(102);
+                });
+        // 첫 chunk(팀 포함) 는 커밋됐고 실패한 chunk 의 51 건은 모두 롤백됐다
+        assertThat(countMembers("importWrite")).isEqualTo(100);
+        assertThat(transactionTemplate.execute(status ->
+                new JPAQueryFactory(em).selectFrom(team).where(team.name.eq("importTeamW")).fetch())).hasSize(1);
+    }
+
+    @Test
+    public void quotedCsvFieldIsRejected() throws Exception {
+        assertThatThrownBy(() -> memberImportService.importCsv(input("username,age\n\"import,1\",1\n")))
+                .isInstanceOfSatisfying(MemberImportException.class, e -> {
+                    assertThat(e.isInvalidInput()).isTrue();
+                    assertThat(e.getLine()).isEqualTo(2);
+                });
+    }
+
+    private long countMembers(String usernamePrefix) {
+        return transactionTemplate.execute(status -> new JPAQueryFactory(em)
+                .select(member.count())
+                .from(member)
+                .where(member.username.startsWith(usernamePrefix))
+                .fetchOne());
+    }
+
+    private ByteArrayInputStream input(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,153 @@
+package study.querydsl.service;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.repository.MemberJapRepository;
+
+import javax.persistence.EntityManager;
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+/**
+ * 기다리는 요청이 커넥션을 잡지 않는지 보려면 트랜잭션 밖에서 불러야 하므로 테스트 트랜잭션 없이 확인한다
+ */
+@SpringBootTest(properties = "querydsl.cache.search.enabled=false")
+class MemberSearchServiceTest {
+
+    static final int CALLERS = 4;
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    MemberSearchService memberSearchService;
+
+    @Autowired
+    MemberJapRepository memberJapRepository;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Autowired
+    DataSource dataSource;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    MemberSearchCondition condition;
+
+    @BeforeEach
+    void before() {
+        transactionTemplate.executeWithoutResult(status -> {
+            Team searchServiceTeam = new Team("searchServiceTeam");
+            em.persist(searchServiceTeam);
+            em.persist(new Member("searchService1", 10, searchServiceTeam));
+            em.persist(new Member("searchService2", 20, searchServiceTeam));
+            em.persist(new Member("searchService3", 30, searchServiceTeam));
+        });
+        condition = new MemberSearchCondition();
+        condition.setTeamName("searchServiceTeam");
+    }
+
+    @AfterEach
+    void cleanup() {
+        transactionTemplate.executeWithoutResult(status -> {
+            JPAQueryFactory queryFactory = new JPAQueryFactory(em);
+            queryFactory.delete(member).where(member.username.startsWith("searchService")).execute();
+            queryFactory.delete(team).where(team.name.eq("searchServiceTeam")).execute();
+        });
+    }
+
+    @Test
+    public void concurrentSearchesRunOneQueryOnOneConnection() throws Exception {
+        HikariDataSource pool = dataSource.unwrap(HikariDataSource.class);
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        int activeBefore = pool.getHikariPoolMXBean().getActiveConnections();
+        AtomicInteger queries = new AtomicInteger();
+        CountDownLatch queryStarted = new CountDownLatch(1);
+        CountDownLatch releaseQuery = new CountDownLatch(1);
+        double collapsed = calls("collapsed");
+        ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+        List<Future<List<MemberTeamDto>>> futures = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            // 실행하는 요청만 읽기 전용 트랜잭션(커넥션) 을 연다 (MemberSearchService.search 와 같은 순서)
+            futures.add(executor.submit(() -> memberSearchService.coalesce("test", condition, Pageable.unpaged(),
+                    () -> readOnly.execute(status -> {
+                        queries.incrementAndGet();
+                        queryStarted.countDown();
+                        await(releaseQuery);
+                        return memberJapRepository.search(condition);
+                    }))));
+        }
+        executor.shutdown();
+
+        // 쿼리 하나가 도는 동안 나머지 셋이 모두 같은 실행을 기다리기 시작하면 커넥션 수를 본다
+        assertThat(queryStarted.await(5, TimeUnit.SECONDS)).isTrue();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (calls("collapsed") < collapsed + CALLERS - 1 && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+        int activeWhileWaiting = pool.getHikariPoolMXBean().getActiveConnections();
+        releaseQuery.countDown();
+
+        List<List<MemberTeamDto>> results = new ArrayList<>();
+        for (Future<List<MemberTeamDto>> future : futures) {
+            results.add(future.get(5, TimeUnit.SECONDS));
+        }
+        assertThat(activeWhileWaiting).isEqualTo(activeBefore + 1);
+        assertThat(queries).hasValue(1);
+        assertThat(results).allSatisfy(result -> assertThat(result).isSameAs(results.get(0)).hasSize(3));
+        assertThatThrownBy(() -> results.get(0).clear()).isInstanceOf(UnsupportedOperationException.class);
+    }
+
+    @Test
+    public void insideTransactionIsNotCoalesced() throws Exception {
+        double executed = calls("executed");
+
+        List<MemberTeamDto> result = transactionTemplate.execute(status -> memberSearchService.search(condition));
+
+        assertThat(result).hasSize(3);
+        assertThat(calls("executed")).isEqualTo(executed);
+    }
+
+    private double calls(String result) {
+        return meterRegistry.get("member.search.single.flight.calls").tag("result", result).counter().count();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package study.querydsl.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import javax.transaction.Transactional;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@Transactional
+class MemberStreamServiceTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    MemberStreamService memberStreamService;
+
+    @Test
+    public void writeNdjson() throws Exception {
+        // given
+        Team team = new Team("streamTeam");
+        em.persist(team);
+        for (int i = 0; i < 1200; i++) {
+            em.persist(new Member("stream" + i, i % 50, team));
+        }
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("streamTeam");
+        condition.setAgeGoe(40);
+
+        // when
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long rows = memberStreamService.writeNdjson(condition, out);
+
+        // then
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertThat(rows).isEqualTo(240);
+        assertThat(lines).hasSize(240);
+        assertThat(lines[0]).startsWith("{\"memberId\":").contains("\"teamName\":\"streamTeam\"");
+    }
+
+    @Test
+    public void linesHaveNoSeparatorBetweenThem() throws Exception {
+        Team team = new Team("streamLineTeam");
+        em.persist(team);
+        Member first = new Member("streamLine1", 1, team);
+        Member second = new Member("streamLine2", 2, team);
+        em.persist(first);
+        em.persist(second);
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("streamLineTeam");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        memberStreamService.writeNdjson(condition, out);
+
+        String ndjson = out.toString(StandardCharsets.UTF_8);
+        String[] lines = ndjson.split("\n");
+        assertThat(ndjson).endsWith("\n");
+        assertThat(lines).hasSize(2);
+        // 순서는 약속하지 않는다
+        assertThat(lines[1]).isIn(
+                "{\"memberId\":" + first.getId() + ",\"username\":\"streamLine1\",\"age\":1,\"teamId\":" + team.getId()
+                        + ",\"teamName\":\"streamLineTeam\"}",
+                "{\"memberId\":" + second.getId() + ",\"username\":\"streamLine2\",\"age\":2,\"teamId\":" + team.getId()
+                        + ",\"teamName\":\"streamLineTeam\"}");
+    }
+}
@@ -0,0 +1,137 @@
+package study.querydsl.service;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.TeamStatsDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+/**
+ * team_stats 는 커밋할 때 갱신되므로 테스트 트랜잭션 없이 확인한다
+ */
+@SpringBootTest
+class TeamStatsServiceTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    TeamStatsService teamStatsService;
+
+    @AfterEach
+    void cleanup() {
+        transactionTemplate.executeWithoutResult(status -> {
+            JPAQueryFactory queryFactory = new JPAQueryFactory(em);
+            queryFactory.delete(member).where(member.username.startsWith("stats")).execute();
+            queryFactory.delete(team).where(team.name.startsWith("stats")).execute();
+        });
+        // 벌크 delete 로 지운 팀의 집계를 지운다
+        teamStatsService.reconcile();
+    }
+
+    @Test
+    public void statsFollowInsertUpdateDeleteAndChangeTeam() throws Exception {
+        Long[] ids = transactionTemplate.execute(status -> {
+            Team statsTeamA = new Team("statsTeamA");
+            Team statsTeamB = new Team("statsTeamB");
+            em.persist(statsTeamA);
+            em.persist(statsTeamB);
+            Member stats1 = new Member("stats1", 10, statsTeamA);
+            Member stats2 = new Member("stats2", 20, statsTeamA);
+            em.persist(stats1);
+            em.persist(stats2);
+            em.persist(new Member("stats3", 30, statsTeamB));
+            return new Long[]{statsTeamA.getId(), statsTeamB.getId(), stats1.getId(), stats2.getId()};
+        });
+
+        assertStats(ids[0], 2, 30, 10, 20);
+        assertThat(teamStatsService.findByTeamId(ids[0]).get().getAgeAvg()).isEqualTo(15.0);
+        assertStats(ids[1], 1, 30, 30, 30);
+
+        // 팀 이동
+        transactionTemplate.executeWithoutResult(status ->
+                em.find(Member.class, ids[2]).changeTeam(em.find(Team.class, ids[1])));
+        assertStats(ids[0], 1, 20, 20, 20);
+        assertStats(ids[1], 2, 40, 10, 30);
+
+        // 나이 변경
+        transactionTemplate.executeWithoutResult(status -> em.find(Member.class, ids[3]).setAge(25));
+        assertStats(ids[0], 1, 25, 25, 25);
+
+        // 최솟값 회원 삭제
+        transactionTemplate.executeWithoutResult(status -> em.remove(em.find(Member.class, ids[2])));
+        assertStats(ids[1], 1, 30, 30, 30);
+
+        // 마지막 회원 삭제
+        transactionTemplate.executeWithoutResult(status -> em.remove(em.find(Member.class, ids[3])));
+        TeamStatsDto empty = teamStatsService.findByTeamId(ids[0]).get();
+        assertThat(empty.getMemberCount()).isZero();
+        assertThat(empty.getAgeAvg()).isNull();
+        assertThat(empty.getAgeMin()).isNull();
+
+        assertThat(teamStatsService.reconcile()).isZero();
+    }
+
+    @Test
+    public void rollbackDoesNotChangeStats() throws Exception {
+        Long teamId = transactionTemplate.execute(status -> {
+            Team statsTeamA = new Team("statsTeamA");
+            em.persist(statsTeamA);
+            em.persist(new Member("stats1", 10, statsTeamA));
+            return statsTeamA.getId();
+        });
+
+        transactionTemplate.executeWithoutResult(status -> {
+            em.persist(new Member("stats2", 20, em.find(Team.class, teamId)));
+            em.flush();
+            status.setRollbackOnly();
+        });
+
+        assertStats(teamId, 1, 10, 10, 10);
+    }
+
+    @Test
+    public void reconcileFixesDriftFromBulkUpdate() throws Exception {
+        Long teamId = transactionTemplate.execute(status -> {
+            Team statsTeamA = new Team("statsTeamA");
+            em.persist(statsTeamA);
+            em.persist(new Member("stats1", 10, statsTeamA));
+            em.persist(new Member("stats2", 20, statsTeamA));
+            return statsTeamA.getId();
+        });
+
+        // 벌크 연산은 엔티티 이벤트가 없어서 집계가 어긋난다
+        transactionTemplate.executeWithoutResult(status -> new JPAQueryFactory(em)
+                .update(member)
+                .set(member.age, member.age.add(1))
+                .where(member.username.startsWith("stats"))
+                .execute());
+        assertStats(teamId, 2, 30, 10, 20);
+
+        assertThat(teamStatsService.reconcile()).isGreaterThanOrEqualTo(1);
+
+        assertStats(teamId, 2, 32, 11, 21);
+        assertThat(teamStatsService.findByTeamName("statsTeamA")).extracting(TeamStatsDto::getTeamId).containsExactly(teamId);
+    }
+
+    private void assertStats(Long teamId, long count, long ageSum, int min, int max) {
+        TeamStatsDto stats = teamStatsService.findByTeamId(teamId).get();
+        assertThat(stats.getMemberCount()).isEqualTo(count);
+        assertThat(stats.getAgeSum()).isEqualTo(ageSum);
+        assertThat(stats.getAgeMin()).isEqualTo(min);
+        assertThat(stats.getAgeMax()).isEqualTo(max);
+    }
+}
@@ -0,0 +1,24 @@
+package study.querydsl.support;
+
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 테스트 메서드 본문에서 실행된 SQL 수 검증 (@BeforeEach 는 포함하지 않음)
+ * 준비 단계에서 persist 한 엔티티는 flush 해 두지 않으면 본문의 첫 쿼리 때 insert 가 같이 세어진다.
+ */
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@ExtendWith(ExpectedQueriesExtension.class)
+public @interface ExpectedQueries {
+
+    // 전체 SQL 수 상한
+    int max() default Integer.MAX_VALUE;
+
+    // 같은 모양의 SQL 반복 허용 횟수 (N+1 검출)
+    int maxRepeats() default Integer.MAX_VALUE;
+}
@@ -0,0 +1,42 @@
+package study.querydsl.support;
+
+import org.junit.jupiter.api.extension.AfterTestExecutionCallback;
+import org.junit.jupiter.api.extension.BeforeTestExecutionCallback;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.junit.platform.commons.support.AnnotationSupport;
+import study.querydsl.repository.support.SqlStatementScope;
+
+import java.util.Map;
+
+public class ExpectedQueriesExtension implements BeforeTestExecutionCallback, AfterTestExecutionCallback {
+
+    private static final ExtensionContext.Namespace NAMESPACE = ExtensionContext.Namespace.create(ExpectedQueriesExtension.class);
+
+    @Override
+    public void beforeTestExecution(ExtensionContext context) {
+        context.getStore(NAMESPACE).put(context.getUniqueId(), SqlStatementScope.open());
+    }
+
+    @Override
+    public void afterTestExecution(ExtensionContext context) {
+        SqlStatementScope scope = context.getStore(NAMESPACE).remove(context.getUniqueId(), SqlStatementScope.class);
+        scope.close();
+        if (context.getExecutionException().isPresent()) {
+            return;
+        }
+
+        ExpectedQueries expected = AnnotationSupport.findAnnotation(context.getRequiredTestMethod(), ExpectedQueries.class)
+                .orElseGet(() -> AnnotationSupport.findAnnotation(context.getRequiredTestClass(), ExpectedQueries.class)
+                        .orElseThrow(IllegalStateException::new));
+
+        if (scope.getStatements() > expected.max()) {
+            throw new AssertionError(String.format("expected at most %d queries but %d were executed",
+                    expected.max(), scope.getStatements()));
+        }
+        Map<String, Integer> repeated = scope.getRepeatedShapes(expected.maxRepeats());
+        if (!repeated.isEmpty()) {
+            throw new AssertionError(String.format("queries repeated more than %d times (N+1?): %s",
+                    expected.maxRepeats(), repeated));
+        }
+    }
+}
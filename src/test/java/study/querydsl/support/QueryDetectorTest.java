@@ -0,0 +1,140 @@
+package study.querydsl.support;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.repository.MemberRepository;
+import study.querydsl.repository.support.SqlStatementScope;
+import study.querydsl.web.QueryDetectorFilter;
+import study.querydsl.web.RepeatedQueryException;
+
+import javax.persistence.EntityManager;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.transaction.Transactional;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+@SpringBootTest
+@Transactional
+class QueryDetectorTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    MemberRepository memberRepository;
+
+    JPAQueryFactory queryFactory;
+
+    @BeforeEach
+    public void before() {
+        queryFactory = new JPAQueryFactory(em);
+        for (int i = 0; i < 3; i++) {
+            Team detectorTeam = new Team("detectorTeam" + i);
+            em.persist(detectorTeam);
+            em.persist(new Member("detector" + i, 10 * i, detectorTeam));
+        }
+        em.flush();
+        em.clear();
+    }
+
+    @Test
+    public void lazyTeamAccessIsDetected() throws Exception {
+        Map<String, Integer> repeated;
+        try (SqlStatementScope scope = SqlStatementScope.open()) {
+            List<Member> members = queryFactory
+                    .selectFrom(member)
+                    .where(member.username.startsWith("detector"))
+                    .fetch();
+            for (Member findMember : members) {
+                findMember.getTeam().getName();
+            }
+            repeated = scope.getRepeatedShapes(2);
+        }
+
+        assertThat(repeated).hasSize(1);
+        assertThat(repeated.values()).containsExactly(3);
+    }
+
+    @Test
+    @ExpectedQueries(max = 1, maxRepeats = 1)
+    public void fetchJoinRunsOneQuery() throws Exception {
+        List<Member> members = queryFactory
+                .selectFrom(member)
+                .join(member.team, team).fetchJoin()
+                .where(member.username.startsWith("detector"))
+                .fetch();
+        for (Member findMember : members) {
+            findMember.getTeam().getName();
+        }
+    }
+
+    @Test
+    @ExpectedQueries(max = 2)
+    public void searchPageComplexRunsContentAndCount() throws Exception {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsername("detector1");
+        memberRepository.searchPageComplex(condition, PageRequest.of(0, 1));
+    }
+
+    @Test
+    public void failModeSendsNothingWhenQueriesRepeat() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        QueryDetectorFilter filter = new QueryDetectorFilter(true, 2, "fail");
+
+        assertThatThrownBy(() -> filter.doFilter(new MockHttpServletRequest("GET", "/members"), response,
+                new MockFilterChain(selectingServlet(3))))
+                .isInstanceOf(RepeatedQueryException.class);
+        assertThat(response.isCommitted()).isFalse();
+        assertThat(response.getContentAsString()).isEmpty();
+    }
+
+    @Test
+    public void failModeSendsBodyWhenQueriesDoNotRepeat() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        QueryDetectorFilter filter = new QueryDetectorFilter(true, 2, "fail");
+
+        filter.doFilter(new MockHttpServletRequest("GET", "/members"), response, new MockFilterChain(selectingServlet(2)));
+
+        assertThat(response.getContentAsString()).isEqualTo("members");
+    }
+
+    @Test
+    public void shapeIgnoresCommentsAndLiterals() throws Exception {
+        assertThat(SqlStatementScope.shapeOf("/* load Team */ select t.id from team t where t.id=12 and t.name='a'"))
+                .isEqualTo(SqlStatementScope.shapeOf("select t.id  from team t\n where t.id=7 and t.name='b'"));
+    }
+
+    /**
+     * 같은 모양의 쿼리를 times 번 실행하고 본문을 쓴다
+     */
+    private HttpServlet selectingServlet(int times) {
+        return new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest request, HttpServletResponse response) throws IOException {
+                response.getWriter().write("members");
+                response.flushBuffer();
+                for (int i = 0; i < times; i++) {
+                    queryFactory.selectFrom(member).where(member.username.eq("detector" + i)).fetch();
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,304 @@
+package study.querydsl.web;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerMapping;
+import study.querydsl.controller.MemberController;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.entity.Member;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static study.querydsl.entity.QMember.member;
+
+@SpringBootTest(properties = {
+        // 컨텍스트가 하나 더 뜨므로 스키마를 다시 만들지 않는다
+        "spring.jpa.hibernate.ddl-auto=update",
+        "querydsl.admission.queue-timeout=200ms",
+        "querydsl.admission.retry-after=3s",
+        "querydsl.admission.endpoints[/v2/members].max-concurrent=1",
+        "querydsl.admission.endpoints[/v2/members].max-queue=1",
+        "querydsl.admission.endpoints[/v1/members].max-concurrent=4",
+        "querydsl.admission.endpoints[/v1/members].max-rows=2",
+        "querydsl.admission.endpoints[/v1/members/batch].max-rows=2",
+        "querydsl.admission.endpoints[/v5/members].max-concurrent=4",
+        "querydsl.admission.endpoints[/v5/members].max-queue=16",
+        "querydsl.admission.endpoints[/v5/members].connections=2",
+        "querydsl.admission.global.max-concurrent=4",
+        "querydsl.admission.global.max-queue=0"
+})
+@AutoConfigureMockMvc
+class AdmissionInterceptorTest {
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Autowired
+    AdmissionInterceptor admissionInterceptor;
+
+    @Autowired
+    MemberController memberController;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @AfterEach
+    void cleanup() {
+        transactionTemplate.executeWithoutResult(status ->
+                new JPAQueryFactory(em).delete(member).where(member.username.startsWith("admission")).execute());
+    }
+
+    @Test
+    public void concurrencyLimitWithBoundedQueue() throws Exception {
+        MockHttpServletRequest first = request("/v2/members", "admission");
+        assertThat(preHandle(first, new MockHttpServletResponse())).isTrue();
+
+        // 자리가 없고 queue-timeout 동안 나지 않는다
+        MockHttpServletResponse timedOut = new MockHttpServletResponse();
+        assertThat(preHandle(request("/v2/members", "admission"), timedOut)).isFalse();
+        assertThat(timedOut.getStatus()).isEqualTo(429);
+        assertThat(timedOut.getHeader("Retry-After")).isEqualTo("3");
+
+        // 기다리는 요청 하나가 queue 를 채우면 다음 요청은 바로 거절된다
+        MockHttpServletRequest second = request("/v2/members", "admission");
+        CompletableFuture<Boolean> waiting = CompletableFuture.supplyAsync(() -> preHandle(second, new MockHttpServletResponse()));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (gauge("member.admission.queued", "/v2/members") < 1 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        MockHttpServletResponse queueFull = new MockHttpServletResponse();
+        assertThat(preHandle(request("/v2/members", "admission"), queueFull)).isFalse();
+        assertThat(queueFull.getStatus()).isEqualTo(429);
+
+        // 앞 요청이 끝나면 기다리던 요청이 들어간다
+        release(first);
+        assertThat(waiting.get(1, TimeUnit.SECONDS)).isTrue();
+        assertThat(gauge("member.admission.active", "/v2/members")).isEqualTo(1);
+        assertThat(rejected("/v2/members", "timeout")).isEqualTo(1);
+        assertThat(rejected("/v2/members", "queue_full")).isEqualTo(1);
+
+        release(second);
+        assertThat(gauge("member.admission.active", "/v2/members")).isZero();
+    }
+
+    @Test
+    public void unfilteredSearchesShareSmallLimit() throws Exception {
+        MockHttpServletRequest first = request("/v3/members", null);
+        MockHttpServletRequest second = request("/v3/members", null);
+        assertThat(preHandle(first, new MockHttpServletResponse())).isTrue();
+        assertThat(preHandle(second, new MockHttpServletResponse())).isTrue();
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        assertThat(preHandle(request("/v3/members", null), response)).isFalse();
+        assertThat(response.getStatus()).isEqualTo(429);
+        // 조건이 있으면 상관없다
+        MockHttpServletRequest filtered = request("/v3/members", "admission");
+        assertThat(preHandle(filtered, new MockHttpServletResponse())).isTrue();
+
+        release(first);
+        release(second);
+        release(filtered);
+        MockHttpServletRequest third = request("/v3/members", null);
+        assertThat(preHandle(third, new MockHttpServletResponse())).isTrue();
+        release(third);
+    }
+
+    @Test
+    public void v5TakesTwoGlobalPermits() throws Exception {
+        MockHttpServletRequest v2 = request("/v2/members", "admission");
+        MockHttpServletRequest v3 = request("/v3/members", "admission");
+        MockHttpServletRequest v4 = request("/v4/members", "admission");
+        assertThat(preHandle(v2, new MockHttpServletResponse())).isTrue();
+        assertThat(preHandle(v3, new MockHttpServletResponse())).isTrue();
+        assertThat(preHandle(v4, new MockHttpServletResponse())).isTrue();
+
+        // 각 API 한도에는 자리가 있지만 global 4 자리 중 하나만 남았다
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        assertThat(preHandle(request("/v5/members", "admission"), response)).isFalse();
+        assertThat(response.getStatus()).isEqualTo(429);
+        assertThat(rejected("/v5/members", "global_queue_full")).isEqualTo(1);
+        assertThat(gauge("member.admission.active", "/v5/members")).isZero();
+        MockHttpServletRequest v6 = request("/v6/members", "admission");
+        assertThat(preHandle(v6, new MockHttpServletResponse())).isTrue();
+        assertThat(gauge("member.admission.active", "global")).isEqualTo(4);
+
+        release(v2);
+        release(v3);
+        MockHttpServletRequest v5 = request("/v5/members", "admission");
+        assertThat(preHandle(v5, new MockHttpServletResponse())).isTrue();
+        assertThat(gauge("member.admission.active", "global")).isEqualTo(4);
+
+        release(v4);
+        release(v5);
+        release(v6);
+        assertThat(gauge("member.admission.active", "global")).isZero();
+    }
+
+    @Test
+    public void concurrentCallsAcrossEndpointsShareGlobalLimit() throws Exception {
+        String[] endpoints = {"/v1/members/stream", "/v2/members", "/v3/members", "/v4/members", "/v5/members", "/v6/members"};
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(endpoints.length * 2);
+        List<MockHttpServletRequest> requests = new ArrayList<>();
+        List<Future<Boolean>> futures = new ArrayList<>();
+        try {
+            // API 별 한도(4) 에는 모두 들어가지만 합치면 global(4) 을 넘는다. global 은 기다리지 않는다(max-queue 0)
+            for (int i = 0; i < endpoints.length * 2; i++) {
+                MockHttpServletRequest request = request(endpoints[i % endpoints.length], "admission");
+                requests.add(request);
+                futures.add(executor.submit(() -> {
+                    start.await(5, TimeUnit.SECONDS);
+                    return preHandle(request, new MockHttpServletResponse());
+                }));
+            }
+            start.countDown();
+
+            int connections = 0;
+            List<MockHttpServletRequest> admitted = new ArrayList<>();
+            for (int i = 0; i < futures.size(); i++) {
+                if (futures.get(i).get(5, TimeUnit.SECONDS)) {
+                    admitted.add(requests.get(i));
+                    connections += "/v5/members".equals(endpoints[i % endpoints.length]) ? 2 : 1;
+                }
+            }
+            // 아무도 돌려주지 않았으므로 거절은 3 자리 이상 찼을 때만 일어난다 (/v5 는 2 자리가 필요하다)
+            assertThat(connections).isBetween(3, 4);
+            assertThat(admitted.size()).isLessThan(requests.size());
+            assertThat(gauge("member.admission.active", "global")).isEqualTo(connections);
+
+            admitted.forEach(this::release);
+            assertThat(gauge("member.admission.active", "global")).isZero();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void costRejectsLargeUnpagedResult() throws Exception {
+        transactionTemplate.executeWithoutResult(status -> {
+            for (int i = 0; i < 3; i++) {
+                em.persist(new Member("admission" + i, i));
+            }
+        });
+
+        mockMvc.perform(get("/v1/members"))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string("Retry-After", "3"));
+        // 나이 범위 밖이면 0건으로 어림한다
+        mockMvc.perform(get("/v1/members").param("ageGoe", "1000"))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    public void costIsNotEstimatedWithoutStatistics() throws Exception {
+        transactionTemplate.executeWithoutResult(status -> {
+            for (int i = 0; i < 3; i++) {
+                em.persist(new Member("admission" + i, i));
+            }
+        });
+
+        // 앞부분 검색은 어림할 통계가 없어서 전체 건수로 어림되지만 거르지 않는다
+        mockMvc.perform(get("/v1/members").param("username", "admission1").param("usernameMatch", "PREFIX"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1));
+    }
+
+    @Test
+    public void batchIsRejectedIfAnyConditionCostsTooMuch() throws Exception {
+        transactionTemplate.executeWithoutResult(status -> {
+            for (int i = 0; i < 3; i++) {
+                em.persist(new Member("admission" + i, i));
+            }
+        });
+
+        mockMvc.perform(post("/v1/members/batch").contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"ageGoe\":1000},{\"ageGoe\":0}]"))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string("Retry-After", "3"));
+        assertThat(rejected("/v1/members/batch", "cost")).isEqualTo(1);
+
+        mockMvc.perform(post("/v1/members/batch").contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"ageGoe\":1000},{\"username\":\"admission\",\"usernameMatch\":\"PREFIX\"}]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$['1'].length()").value(3));
+        // 거절된 요청도 API 자리는 돌려준다
+        assertThat(gauge("member.admission.active", "/v1/members/batch")).isZero();
+    }
+
+    @Test
+    public void pageSizeIsCapped() throws Exception {
+        mockMvc.perform(get("/v2/members").param("username", "admission0").param("size", "100000"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.size").value(1000));
+    }
+
+    private boolean preHandle(MockHttpServletRequest request, MockHttpServletResponse response) {
+        try {
+            return admissionInterceptor.preHandle(request, response, handler());
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void release(MockHttpServletRequest request) {
+        admissionInterceptor.afterCompletion(request, new MockHttpServletResponse(), handler(), null);
+    }
+
+    private MockHttpServletRequest request(String pattern, String username) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", pattern);
+        request.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, pattern);
+        if (username != null) {
+            request.setParameter("username", username);
+        }
+        return request;
+    }
+
+    private HandlerMethod handler() {
+        try {
+            return new HandlerMethod(memberController,
+                    MemberController.class.getMethod("searchMemberV2", MemberSearchCondition.class, Pageable.class));
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private double gauge(String name, String endpoint) {
+        return meterRegistry.get(name).tag("endpoint", endpoint).gauge().value();
+    }
+
+    private double rejected(String endpoint, String reason) {
+        return meterRegistry.get("member.admission.rejected").tag("endpoint", endpoint).tag("reason", reason).counter().count();
+    }
+}
@@ -0,0 +1,171 @@
+package study.querydsl.web;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.dto.UsernameMatch;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.repository.MemberRepository;
+import study.querydsl.repository.support.SqlStatementScope;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+@SpringBootTest(properties = {
+        // 컨텍스트가 하나 더 뜨므로 스키마를 다시 만들지 않는다
+        "spring.jpa.hibernate.ddl-auto=update"
+})
+@AutoConfigureMockMvc
+class MemberBatchSearchTest {
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    MemberRepository memberRepository;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @BeforeEach
+    void setup() {
+        transactionTemplate.executeWithoutResult(status -> {
+            Team[] teams = {new Team("batchTeamA"), new Team("batchTeamB"), new Team("batchTeamC")};
+            for (Team team : teams) {
+                em.persist(team);
+            }
+            for (int i = 0; i < 9; i++) {
+                em.persist(new Member("batch" + i, i, teams[i % 3]));
+            }
+            em.persist(new Member("batchLoner", 40));
+        });
+    }
+
+    @AfterEach
+    void cleanup() {
+        transactionTemplate.executeWithoutResult(status -> {
+            new JPAQueryFactory(em).delete(member).where(member.username.startsWith("batch")).execute();
+            // 팀은 엔티티로 지워야 team_stats 도 같이 지워진다
+            new JPAQueryFactory(em).selectFrom(team).where(team.name.startsWith("batchTeam")).fetch().forEach(em::remove);
+        });
+    }
+
+    @Test
+    public void sameResultsAsSingleSearchesInFewQueries() throws Exception {
+        List<MemberSearchCondition> conditions = List.of(
+                condition(null, "batchTeamA", null),
+                condition(null, "batchTeamB", null),
+                // 같은 조건
+                condition(null, "batchTeamA", null),
+                condition("batch1", null, null),
+                // 팀 없는 회원
+                condition("batchLoner", null, null),
+                condition(null, "batchTeamC", 5),
+                prefix("batch"));
+
+        Map<Integer, List<MemberTeamDto>> results;
+        try (SqlStatementScope scope = SqlStatementScope.open()) {
+            results = memberRepository.searchBatch(conditions);
+            // team.name in (A, B) / username in (batch1, batchLoner) / C + ageGoe / prefix
+            assertThat(scope.getStatements()).isEqualTo(4);
+        }
+
+        assertThat(results).containsOnlyKeys(0, 1, 2, 3, 4, 5, 6);
+        for (int i = 0; i < conditions.size(); i++) {
+            assertThat(results.get(i)).as("condition %d", i)
+                    .containsExactlyInAnyOrderElementsOf(memberRepository.search(conditions.get(i)));
+        }
+        assertThat(usernames(results.get(0))).containsExactlyInAnyOrder("batch0", "batch3", "batch6");
+        assertThat(usernames(results.get(4))).containsExactly("batchLoner");
+        assertThat(usernames(results.get(5))).containsExactlyInAnyOrder("batch5", "batch8");
+        assertThat(results.get(6)).hasSize(10);
+
+        // 두 번째는 캐시에서
+        try (SqlStatementScope scope = SqlStatementScope.open()) {
+            assertThat(memberRepository.searchBatch(conditions)).isEqualTo(results);
+            assertThat(scope.getStatements()).isZero();
+        }
+    }
+
+    @Test
+    public void endpointKeysResultsByRequestIndex() throws Exception {
+        String body = objectMapper.writeValueAsString(List.of(
+                condition(null, "batchTeamB", null),
+                condition("batchNobody", null, null),
+                condition("batch2", null, null)));
+
+        byte[] response = mockMvc.perform(post("/v1/members/batch").contentType(MediaType.APPLICATION_JSON).content(body))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsByteArray();
+
+        JsonNode results = objectMapper.readTree(response);
+        assertThat(results.get("0")).hasSize(3);
+        assertThat(results.get("1")).isEmpty();
+        assertThat(results.get("2").get(0).get("username").asText()).isEqualTo("batch2");
+        assertThat(results.get("2").get(0).get("teamName").asText()).isEqualTo("batchTeamC");
+    }
+
+    @Test
+    public void tooManyConditions() throws Exception {
+        List<MemberSearchCondition> conditions = new ArrayList<>(Collections.nCopies(101, condition("batch1", null, null)));
+        mockMvc.perform(post("/v1/members/batch").contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(conditions)))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void nullConditionIsBadRequest() throws Exception {
+        mockMvc.perform(post("/v1/members/batch").contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"username\":\"batch1\"},null]"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(post("/v1/members/batch").contentType(MediaType.APPLICATION_JSON).content("null"))
+                .andExpect(status().isBadRequest());
+    }
+
+    private static List<String> usernames(List<MemberTeamDto> rows) {
+        List<String> usernames = new ArrayList<>();
+        rows.forEach(row -> usernames.add(row.getUsername()));
+        return usernames;
+    }
+
+    private static MemberSearchCondition condition(String username, String teamName, Integer ageGoe) {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsername(username);
+        condition.setTeamName(teamName);
+        condition.setAgeGoe(ageGoe);
+        return condition;
+    }
+
+    private static MemberSearchCondition prefix(String username) {
+        MemberSearchCondition condition = condition(username, null, null);
+        condition.setUsernameMatch(UsernameMatch.PREFIX);
+        return condition;
+    }
+}
@@ -0,0 +1,177 @@
+package study.querydsl.web;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+@SpringBootTest(properties = {
+        // 컨텍스트가 하나 더 뜨므로 스키마를 다시 만들지 않는다
+        "spring.jpa.hibernate.ddl-auto=update"
+})
+@AutoConfigureMockMvc
+class MemberResponseFormatTest {
+
+    static final MediaType SMILE = MediaType.parseMediaType("application/x-jackson-smile");
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @BeforeEach
+    void setup() {
+        transactionTemplate.executeWithoutResult(status -> {
+            Team formatTeamA = new Team("formatTeamA");
+            Team formatTeamB = new Team("formatTeamB");
+            em.persist(formatTeamA);
+            em.persist(formatTeamB);
+            for (int i = 0; i < 30; i++) {
+                em.persist(new Member("format" + i, i, i % 3 == 0 ? formatTeamB : formatTeamA));
+            }
+        });
+    }
+
+    @AfterEach
+    void cleanup() {
+        transactionTemplate.executeWithoutResult(status -> {
+            new JPAQueryFactory(em).delete(member).where(member.username.startsWith("format")).execute();
+            // 팀은 엔티티로 지워야 team_stats 도 같이 지워진다
+            new JPAQueryFactory(em).selectFrom(team).where(team.name.startsWith("formatTeam")).fetch().forEach(em::remove);
+        });
+    }
+
+    @Test
+    public void columnarPage() throws Exception {
+        MvcResult result = mockMvc.perform(get("/v3/members")
+                        .param("username", "format")
+                        .param("usernameMatch", "PREFIX")
+                        .param("size", "4")
+                        .accept(MemberColumnarHttpMessageConverter.COLUMNAR))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MemberColumnarHttpMessageConverter.COLUMNAR))
+                .andReturn();
+
+        JsonNode columns = objectMapper.readTree(result.getResponse().getContentAsByteArray());
+        assertThat(columns.get("rows").asInt()).isEqualTo(4);
+        assertThat(columns.get("memberId")).hasSize(4);
+        assertThat(columns.get("username")).hasSize(4);
+        assertThat(columns.get("teamId")).hasSize(4);
+        // 팀 이름은 사전 번호. 같은 행의 열끼리 맞는지 본다
+        assertThat(columns.get("teamNames")).extracting(JsonNode::asText).containsExactlyInAnyOrder("formatTeamA", "formatTeamB");
+        for (int i = 0; i < 4; i++) {
+            int age = columns.get("age").get(i).asInt();
+            assertThat(columns.get("username").get(i).asText()).isEqualTo("format" + age);
+            String teamName = columns.get("teamNames").get(columns.get("teamName").get(i).asInt()).asText();
+            assertThat(teamName).isEqualTo(age % 3 == 0 ? "formatTeamB" : "formatTeamA");
+        }
+        assertThat(columns.get("page").get("totalElements").asLong()).isEqualTo(30);
+        assertThat(columns.get("page").get("totalPages").asInt()).isEqualTo(8);
+    }
+
+    @Test
+    public void columnarListAndKeyset() throws Exception {
+        byte[] list = mockMvc.perform(get("/v1/members").param("teamName", "formatTeamB")
+                        .accept(MemberColumnarHttpMessageConverter.COLUMNAR))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsByteArray();
+        JsonNode columns = objectMapper.readTree(list);
+        assertThat(columns.get("rows").asInt()).isEqualTo(10);
+        assertThat(columns.get("teamNames")).extracting(JsonNode::asText).containsExactly("formatTeamB");
+        assertThat(columns.has("page")).isFalse();
+
+        byte[] keyset = mockMvc.perform(get("/v4/members").param("teamName", "formatTeamB").param("size", "3")
+                        .accept(MemberColumnarHttpMessageConverter.COLUMNAR))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsByteArray();
+        columns = objectMapper.readTree(keyset);
+        assertThat(columns.get("rows").asInt()).isEqualTo(3);
+        assertThat(columns.get("hasNext").asBoolean()).isTrue();
+        assertThat(columns.get("nextCursor").asText()).isNotEmpty();
+    }
+
+    @Test
+    public void smileHasSameContentAsJson() throws Exception {
+        MvcResult json = mockMvc.perform(get("/v2/members").param("teamName", "formatTeamA"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+                .andReturn();
+        MvcResult smile = mockMvc.perform(get("/v2/members").param("teamName", "formatTeamA").accept(SMILE))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(SMILE))
+                .andReturn();
+
+        byte[] jsonBody = json.getResponse().getContentAsByteArray();
+        byte[] smileBody = smile.getResponse().getContentAsByteArray();
+        assertThat(new SmileMapper().readTree(smileBody)).isEqualTo(objectMapper.readTree(jsonBody));
+        assertThat(smileBody.length).isLessThan(jsonBody.length);
+
+        // 표현마다 ETag 가 다르다
+        assertThat(smile.getResponse().getHeader(HttpHeaders.ETAG)).isNotEqualTo(json.getResponse().getHeader(HttpHeaders.ETAG));
+        assertThat(smile.getResponse().getHeaders(HttpHeaders.VARY)).contains(HttpHeaders.ACCEPT);
+    }
+
+    @Test
+    public void columnarIsSmallerThanJson() throws Exception {
+        byte[] json = mockMvc.perform(get("/v1/members").param("username", "format").param("usernameMatch", "PREFIX"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsByteArray();
+        byte[] columnar = mockMvc.perform(get("/v1/members").param("username", "format").param("usernameMatch", "PREFIX")
+                        .accept(MemberColumnarHttpMessageConverter.COLUMNAR))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsByteArray();
+
+        assertThat(objectMapper.readTree(json)).hasSize(30);
+        assertThat(columnar.length).isLessThan(json.length / 2);
+    }
+
+    @Test
+    public void columnarWriteLeavesStreamOpen() throws Exception {
+        AtomicBoolean closed = new AtomicBoolean();
+        ByteArrayOutputStream out = new ByteArrayOutputStream() {
+            @Override
+            public void close() {
+                closed.set(true);
+            }
+        };
+
+        MemberColumnarHttpMessageConverter.write(objectMapper.getFactory(),
+                List.of(new MemberTeamDto(1L, "format0", 0, 1L, "formatTeamA")), out);
+
+        assertThat(closed).isFalse();
+        assertThat(objectMapper.readTree(out.toByteArray()).get("rows").asInt()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,117 @@
+package study.querydsl.web;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.repository.support.SqlStatementScope;
+
+import javax.persistence.EntityManager;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+@SpringBootTest(properties = {
+        // 컨텍스트가 하나 더 뜨므로 스키마를 다시 만들지 않는다
+        "spring.jpa.hibernate.ddl-auto=update"
+})
+@AutoConfigureMockMvc
+class MemberVersionInterceptorTest {
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @AfterEach
+    void cleanup() {
+        transactionTemplate.executeWithoutResult(status -> {
+            JPAQueryFactory queryFactory = new JPAQueryFactory(em);
+            queryFactory.delete(member).where(member.username.startsWith("etag")).execute();
+            queryFactory.delete(team).where(team.name.eq("etagTeam")).execute();
+        });
+    }
+
+    @Test
+    public void notModifiedUntilMemberOrTeamChanges() throws Exception {
+        Long teamId = transactionTemplate.execute(status -> {
+            Team etagTeam = new Team("etagTeam");
+            em.persist(etagTeam);
+            em.persist(new Member("etag1", 10, etagTeam));
+            return etagTeam.getId();
+        });
+
+        MvcResult first = mockMvc.perform(get("/v3/members").param("teamName", "etagTeam"))
+                .andExpect(status().isOk())
+                .andReturn();
+        String etag = first.getResponse().getHeader(HttpHeaders.ETAG);
+        assertThat(etag).isNotNull();
+        assertThat(first.getResponse().getHeader(HttpHeaders.LAST_MODIFIED)).isNotNull();
+
+        // 쿼리 없이 304
+        try (SqlStatementScope scope = SqlStatementScope.open()) {
+            mockMvc.perform(get("/v3/members").param("teamName", "etagTeam").header(HttpHeaders.IF_NONE_MATCH, etag))
+                    .andExpect(status().isNotModified())
+                    .andExpect(content().string(""));
+            assertThat(scope.getStatements()).isZero();
+        }
+
+        // 엔티티 변경
+        transactionTemplate.executeWithoutResult(status -> em.persist(new Member("etag2", 20, em.find(Team.class, teamId))));
+        String changed = mockMvc.perform(get("/v3/members").param("teamName", "etagTeam").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertThat(changed).isNotEqualTo(etag);
+
+        // 벌크 수정
+        transactionTemplate.executeWithoutResult(status -> new JPAQueryFactory(em)
+                .update(member)
+                .set(member.age, member.age.add(1))
+                .where(member.username.startsWith("etag"))
+                .execute());
+        mockMvc.perform(get("/v1/members").param("teamName", "etagTeam").header(HttpHeaders.IF_NONE_MATCH, changed))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    public void ifModifiedSinceAloneIsNotTrusted() throws Exception {
+        String lastModified = mockMvc.perform(get("/v2/members").param("username", "etagNobody"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.LAST_MODIFIED);
+        assertThat(lastModified).isNotNull();
+
+        // 같은 초 안의 변경은 초 단위 날짜로 구분할 수 없으므로 If-Modified-Since 만으로는 304 를 주지 않는다
+        transactionTemplate.executeWithoutResult(status -> em.persist(new Member("etag3", 30)));
+        mockMvc.perform(get("/v2/members").param("username", "etag3").header(HttpHeaders.IF_MODIFIED_SINCE, lastModified))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    public void otherTablesDoNotChangeVersion() throws Exception {
+        String etag = mockMvc.perform(get("/v2/members").param("username", "etagNobody"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        transactionTemplate.executeWithoutResult(status ->
+                em.createNativeQuery("update hello set id = id where 1 = 0").executeUpdate());
+
+        mockMvc.perform(get("/v2/members").param("username", "etagNobody").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+    }
+}